@@ -0,0 +1,51 @@
+package ru.mrak.iCard.benchmark;
+
+import ru.mrak.iCard.FProperties;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Временные папки и свойства для бенчмарков
+ */
+class BenchmarkFiles {
+    private BenchmarkFiles() {}
+
+    /**
+     * Создает свойства из файла properties.ini с указанными строками во временной папке
+     * @param dir - папка для properties.ini
+     * @param lines - строки ключ=значение
+     * @return свойства
+     */
+    static FProperties properties(Path dir, String... lines) throws IOException {
+        Files.write(dir.resolve("properties.ini"), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return new FProperties(dir.toString());
+    }
+
+    /**
+     * Удаляет временную папку со всем содержимым
+     * @param dir - папка
+     */
+    static void delete(Path dir) throws IOException {
+        if(dir == null || !Files.exists(dir)) return;
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
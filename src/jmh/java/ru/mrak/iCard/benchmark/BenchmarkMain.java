@@ -0,0 +1,25 @@
+package ru.mrak.iCard.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запускает бенчмарки с профилировщиком выделения памяти gc, если профилировщики не заданы в командной строке
+ * Принимает те же параметры, что и org.openjdk.jmh.Main, например: -p entries=1000 WorkBookBenchmark
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if(options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if(options.getProfilers().isEmpty()) builder.addProfiler(GCProfiler.class);
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,102 @@
+package ru.mrak.iCard.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mrak.iCard.util.DigestAlgorithm;
+import ru.mrak.iCard.util.DigestCopier;
+import ru.mrak.iCard.util.TreeHash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подсчет контрольных сумм и копирование файла, как их выполняет FilesReplace, по размерам файла и буфера
+ * Файл после первого чтения лежит в кеше ОС, поэтому измеряется работа процессора и копирование в памяти,
+ * а не скорость диска
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DigestCopierBenchmark {
+    @Param({"65536", "1048576", "33554432"})
+    public int fileSize;
+
+    @Param({"65536", "262144", "1048576", "4194304"})
+    public int bufferSize;
+
+    private static final Set<DigestAlgorithm> MD5 = EnumSet.of(DigestAlgorithm.MD5);
+    private static final Set<DigestAlgorithm> MD5_SHA_256 = EnumSet.of(DigestAlgorithm.MD5, DigestAlgorithm.SHA_256);
+    private static final List<DigestAlgorithm> NONE = Collections.emptyList();
+
+    private Path dir;
+    private Path file;
+    private Path copy;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("icard-digest");
+        file = dir.resolve("source.dwg");
+        copy = dir.resolve("copy.dwg");
+        byte[] data = new byte[fileSize];
+        new Random(fileSize).nextBytes(data);
+        Files.write(file, data);
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public Map<DigestAlgorithm, String> md5() throws IOException {
+        return DigestCopier.transfer(file, null, MD5, buffer);
+    }
+
+    @Benchmark
+    public Map<DigestAlgorithm, String> md5Sha256() throws IOException {
+        return DigestCopier.transfer(file, null, MD5_SHA_256, buffer);
+    }
+
+    @Benchmark
+    public Map<DigestAlgorithm, String> copy() throws IOException {
+        return DigestCopier.transfer(file, copy, NONE, buffer);
+    }
+
+    @Benchmark
+    public Map<DigestAlgorithm, String> copyMd5() throws IOException {
+        return DigestCopier.transfer(file, copy, MD5, buffer);
+    }
+
+    /**
+     * Древовидная сумма читает файл своим буфером, от bufferSize не зависит
+     */
+    @Benchmark
+    public String treeSha256() throws IOException {
+        return TreeHash.compute(file);
+    }
+}
@@ -0,0 +1,211 @@
+package ru.mrak.iCard.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Сквозной бенчмарк: создает синтетическую папку выпуска и запускает Main в отдельной JVM с ключами -rc, -rcd, -rca
+ * на локальном диске и на tmpfs. По каждому запуску выводит файлы/с, МБ/с, пиковый RSS, время процессора
+ * и разбивку времени по этапам: запуск JVM, чтение свойств, поиск файлов, обработка файлов, создание листа
+ * Если на tmpfs скорость заметно выше, чем на диске, запуск упирается в ввод-вывод, если нет - в процессор
+ * Папка выпуска создается заново перед каждым запуском и в время запуска не входит
+ *
+ * MacroBenchmark [--disk папка] [--tmpfs папка|none] [--files 2000] [--median-kb 256] [--sigma 1.0]
+ *                [--max-mb 64] [--noise 0.2] [--seed 1] [--runs 3] [--configs -rc,-rcd,-rca]
+ *                [--properties properties.ini] [--drop-caches]
+ */
+public class MacroBenchmark {
+    private static final String[] PHASES = {"main", "walk", "files", "sheet", "done"};
+    private static final String[] PHASE_TITLES = {"запуск", "свойства", "поиск", "файлы", "лист"};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("disk", "target/macro");
+        options.put("tmpfs", Files.isDirectory(Paths.get("/dev/shm")) ? "/dev/shm/icard-macro" : "none");
+        options.put("files", "2000");
+        options.put("median-kb", "256");
+        options.put("sigma", "1.0");
+        options.put("max-mb", "64");
+        options.put("noise", "0.2");
+        options.put("seed", "1");
+        options.put("runs", "3");
+        options.put("configs", "-rc,-rcd,-rca");
+        for(int i = 0; i < args.length; i++) {
+            if(!args[i].startsWith("--")) throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+            String key = args[i].substring(2);
+            if(key.equals("drop-caches")) {
+                options.put(key, "true");
+            } else {
+                options.put(key, args[++i]);
+            }
+        }
+        ReleaseGenerator generator = new ReleaseGenerator(Long.parseLong(options.get("seed")),
+                Integer.parseInt(options.get("files")), Long.parseLong(options.get("median-kb")) * 1024,
+                Double.parseDouble(options.get("sigma")), Long.parseLong(options.get("max-mb")) * 1024 * 1024,
+                Double.parseDouble(options.get("noise")));
+        List<String> locations = new ArrayList<>();
+        locations.add(options.get("disk"));
+        if(!options.get("tmpfs").equals("none")) locations.add(options.get("tmpfs"));
+        int runs = Integer.parseInt(options.get("runs"));
+        Path properties = options.containsKey("properties") ? Paths.get(options.get("properties")) : null;
+
+        System.out.println(String.format(Locale.ROOT, "%-26s %-5s %3s %7s %9s %8s %9s %8s %8s %8s  %s",
+                "папка", "ключи", "#", "файлов", "МБ", "сек", "файлов/с", "МБ/с", "RSS МБ", "CPU с",
+                String.join("/", PHASE_TITLES) + ", мс"));
+        for(String location : locations) {
+            Path base = Paths.get(location).toAbsolutePath();
+            for(String config : options.get("configs").split(",")) {
+                List<Run> results = new ArrayList<>();
+                for(int run = 1; run <= runs; run++) {
+                    BenchmarkFiles.delete(base);
+                    Path source = base.resolve("source");
+                    Path result = base.resolve("result");
+                    generator.generate(source);
+                    Files.createDirectories(result);
+                    if(properties != null) Files.copy(properties, source.resolve("properties.ini"));
+                    if(options.containsKey("drop-caches")) dropCaches();
+                    Run measured = run(base, config, result, source);
+                    results.add(measured);
+                    print(location, config, Integer.toString(run), measured);
+                }
+                print(location, config, "мед", median(results));
+            }
+            BenchmarkFiles.delete(base);
+        }
+    }
+
+    /**
+     * Результат одного запуска, время в миллисекундах
+     */
+    private static class Run {
+        private int files;
+        private long bytes;
+        private long wall;
+        private long peakRssKb;
+        private long cpu;
+        private final long[] phases = new long[PHASES.length];
+    }
+
+    /**
+     * Запускает Main в отдельной JVM с тем же classpath
+     */
+    private static Run run(Path base, String config, Path result, Path source) throws IOException, InterruptedException {
+        Path reportFile = base.resolve("report.properties");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-Dfile.encoding=UTF-8", "-Dsun.jnu.encoding=UTF-8",
+                "-cp", System.getProperty("java.class.path"), MainProbe.class.getName(),
+                reportFile.toString(), config, result.toString(), source.toString());
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(base.resolve("main.log").toFile());
+        long launch = System.currentTimeMillis();
+        Process process = builder.start();
+        int exit = process.waitFor();
+        long end = System.currentTimeMillis();
+        if(exit != 0 || !Files.exists(reportFile)) {
+            throw new IllegalStateException("Main завершился с ошибкой, журнал: " + base.resolve("main.log"));
+        }
+        Properties report = new Properties();
+        try (Reader reader = new InputStreamReader(Files.newInputStream(reportFile), StandardCharsets.UTF_8)) {
+            report.load(reader);
+        }
+        Run measured = new Run();
+        measured.files = Integer.parseInt(report.getProperty("fileCount"));
+        measured.bytes = Long.parseLong(report.getProperty("bytes"));
+        measured.peakRssKb = Long.parseLong(report.getProperty("peakRssKb"));
+        measured.cpu = Long.parseLong(report.getProperty("cpuMillis"));
+        measured.wall = end - launch;
+        //Этап длится от своей отметки до следующей имеющейся, запуск JVM - от старта процесса до main
+        long previous = launch;
+        for(int i = 0; i < PHASES.length; i++) {
+            long next = end;
+            for(int j = i; j < PHASES.length; j++) {
+                if(report.containsKey(PHASES[j])) {
+                    next = Long.parseLong(report.getProperty(PHASES[j]));
+                    break;
+                }
+            }
+            measured.phases[i] = Math.max(0, next - previous);
+            previous = Math.max(previous, next);
+        }
+        return measured;
+    }
+
+    /**
+     * @return запуск из медиан каждого показателя
+     */
+    private static Run median(List<Run> runs) {
+        int n = runs.size();
+        long[] files = new long[n];
+        long[] bytes = new long[n];
+        long[] wall = new long[n];
+        long[] peakRssKb = new long[n];
+        long[] cpu = new long[n];
+        long[][] phases = new long[PHASES.length][n];
+        for(int i = 0; i < n; i++) {
+            Run run = runs.get(i);
+            files[i] = run.files;
+            bytes[i] = run.bytes;
+            wall[i] = run.wall;
+            peakRssKb[i] = run.peakRssKb;
+            cpu[i] = run.cpu;
+            for(int phase = 0; phase < PHASES.length; phase++) {
+                phases[phase][i] = run.phases[phase];
+            }
+        }
+        Run median = new Run();
+        median.files = (int) median(files);
+        median.bytes = median(bytes);
+        median.wall = median(wall);
+        median.peakRssKb = median(peakRssKb);
+        median.cpu = median(cpu);
+        for(int phase = 0; phase < PHASES.length; phase++) {
+            median.phases[phase] = median(phases[phase]);
+        }
+        return median;
+    }
+
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    private static void print(String location, String config, String run, Run measured) {
+        double seconds = Math.max(measured.wall, 1) / 1000.0;
+        double megabytes = measured.bytes / (1024.0 * 1024.0);
+        StringBuilder phases = new StringBuilder();
+        for(long phase : measured.phases) {
+            if(phases.length() > 0) phases.append('/');
+            phases.append(phase);
+        }
+        System.out.println(String.format(Locale.ROOT, "%-26s %-5s %3s %7d %9.1f %8.2f %9.1f %8.1f %8s %8s  %s",
+                location, config, run, measured.files, megabytes, seconds, measured.files / seconds,
+                megabytes / seconds, measured.peakRssKb < 0 ? "-" : Long.toString(measured.peakRssKb / 1024),
+                measured.cpu < 0 ? "-" : String.format(Locale.ROOT, "%.2f", measured.cpu / 1000.0), phases));
+    }
+
+    /**
+     * Сбрасывает страничный кеш Linux, чтобы запуск на диске читал файлы с диска; нужны права root
+     */
+    private static void dropCaches() throws IOException, InterruptedException {
+        new ProcessBuilder("sync").inheritIO().start().waitFor();
+        File dropCaches = new File("/proc/sys/vm/drop_caches");
+        try {
+            Files.write(dropCaches.toPath(), Arrays.asList("3"), StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            System.out.println("Не удалось сбросить страничный кеш: " + e.getMessage());
+        }
+    }
+}
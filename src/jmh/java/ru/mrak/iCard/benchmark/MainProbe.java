@@ -0,0 +1,132 @@
+package ru.mrak.iCard.benchmark;
+
+import ru.mrak.iCard.Main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Запускает Main в отдельной JVM макробенчмарка и при завершении JVM записывает отчет о запуске
+ * Границы этапов берутся из сообщений Main на консоли: поиск файлов, обработка первого файла,
+ * создание листа, "Выполнено". Количество и размер обработанных файлов считаются по записям документов
+ * MainProbe [файл отчета] [аргументы Main]
+ */
+public class MainProbe {
+    private static final String WALK = "Поиск файлов по:";
+    private static final String FILE = "Файл: ";
+    private static final String SHEET = "Создание информационно-удостоверяющего листа";
+    private static final String DONE = "Выполнено";
+    private static final String SIZE = "Размер файла: ";
+
+    private static final Properties report = new Properties();
+    private static int files;
+    private static long bytes;
+
+    public static void main(String[] args) {
+        mark("main");
+        final Path reportFile = Paths.get(args[0]);
+        System.setOut(new MarkingStream(System.out));
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                writeReport(reportFile);
+            }
+        });
+        Main.main(Arrays.copyOfRange(args, 1, args.length));
+    }
+
+    private static synchronized void mark(String phase) {
+        if(!report.containsKey(phase)) report.setProperty(phase, Long.toString(System.currentTimeMillis()));
+    }
+
+    private static synchronized void scan(String line) {
+        if(line.startsWith(WALK)) mark("walk");
+        if(line.startsWith(FILE)) {
+            mark("files");
+            files++;
+        }
+        if(line.startsWith(SHEET)) mark("sheet");
+        if(line.equals(DONE)) mark("done");
+        for(String part : line.split("\n")) {
+            if(part.startsWith(SIZE)) {
+                try {
+                    bytes += Long.parseLong(part.substring(SIZE.length()).trim());
+                } catch (NumberFormatException e) {
+                    //Размер не указан
+                }
+            }
+        }
+    }
+
+    /**
+     * Записывает отчет: отметки этапов в миллисекундах от эпохи, счетчики, пиковый RSS и время процессора
+     */
+    private static synchronized void writeReport(Path reportFile) {
+        mark("exit");
+        report.setProperty("jvmStart", Long.toString(ManagementFactory.getRuntimeMXBean().getStartTime()));
+        report.setProperty("fileCount", Integer.toString(files));
+        report.setProperty("bytes", Long.toString(bytes));
+        report.setProperty("peakRssKb", Long.toString(peakRssKb()));
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        long cpu = -1;
+        if(os instanceof com.sun.management.OperatingSystemMXBean) {
+            cpu = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() / 1000000;
+        }
+        report.setProperty("cpuMillis", Long.toString(cpu));
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(reportFile), StandardCharsets.UTF_8)) {
+            report.store(writer, null);
+        } catch (IOException e) {
+            System.err.println("Не удалось записать отчет: " + reportFile);
+        }
+    }
+
+    /**
+     * @return пиковый размер резидентной памяти процесса в КБ по /proc/self/status, -1 вне Linux
+     */
+    private static long peakRssKb() {
+        Path status = Paths.get("/proc/self/status");
+        if(!Files.exists(status)) return -1;
+        try {
+            List<String> lines = Files.readAllLines(status, StandardCharsets.UTF_8);
+            for(String line : lines) {
+                if(line.startsWith("VmHWM:")) return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Консоль, которая передает вывод дальше и отмечает сообщения Main
+     */
+    private static class MarkingStream extends PrintStream {
+        private MarkingStream(OutputStream out) {
+            super(out, true);
+        }
+
+        @Override
+        public void println(String x) {
+            if(x != null) scan(x);
+            super.println(x);
+        }
+
+        @Override
+        public void println(Object x) {
+            if(x != null) scan(String.valueOf(x));
+            super.println(x);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ru.mrak.iCard.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mrak.iCard.FProperties;
+import ru.mrak.iCard.util.NameParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор имен файлов: сканер для выражения по умолчанию и регулярное выражение из nameRegexp
+ * Набор имен смешивает подходящие имена всех видов и посторонние файлы, как в папке выпуска
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameParserBenchmark {
+    private static final String[] NAMES = {
+            "ИГУЛ.123456.001 СБ Деталь 1.dwg",
+            "ИГУЛ.123456.002-01 СБ_2 Корпус.dwg",
+            "IGUL654321001-01_sb_2.tdd",
+            "IGUL.654321.003_МЭ.pdf",
+            "ИГУЛ123456004 ТУ Технические условия на изделие.docx",
+            "noise12.txt",
+            "Thumbs.db",
+            "ИГУЛ.12345.001 СБ.dwg"
+    };
+
+    /**
+     * default - выражение по умолчанию, разбирается сканером, custom - то же выражение, заданное в nameRegexp
+     */
+    @Param({"default", "custom"})
+    public String grammar;
+
+    private Path dir;
+    private FProperties properties;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("icard-name");
+        if(grammar.equals("custom")) {
+            //Незахватывающая группа не меняет номера блоков, но отключает сканер
+            properties = BenchmarkFiles.properties(dir, "nameRegexp=(?:" + NameParser.getEgexp().replace("\\", "\\\\") + ")");
+        } else {
+            properties = BenchmarkFiles.properties(dir);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for(String name : NAMES) {
+            blackhole.consume(NameParser.parser(name, properties));
+        }
+    }
+}
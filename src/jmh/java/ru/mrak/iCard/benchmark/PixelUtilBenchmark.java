@@ -0,0 +1,57 @@
+package ru.mrak.iCard.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mrak.iCard.util.PixelUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Перевод единиц Excel на ширинах столбцов и высотах строк форматки
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelUtilBenchmark {
+    private final int[] pixels = {19, 26, 26, 29, 9, 86, 57, 38, 19, 246, 19, 19, 19, 36, 20, 36, 40};
+    private final short[] widthUnits = new short[pixels.length];
+    private final short[] heightUnits = {900, 510, 300, 315, 360, 390, 420, 450, 480, 600};
+
+    public PixelUtilBenchmark() {
+        for(int i = 0; i < pixels.length; i++) {
+            widthUnits[i] = PixelUtil.pixel2WidthUnits(pixels[i]);
+        }
+    }
+
+    @Benchmark
+    public void pixel2WidthUnits(Blackhole blackhole) {
+        for(int pixel : pixels) {
+            blackhole.consume(PixelUtil.pixel2WidthUnits(pixel));
+        }
+    }
+
+    @Benchmark
+    public void widthUnits2Pixel(Blackhole blackhole) {
+        for(short units : widthUnits) {
+            blackhole.consume(PixelUtil.widthUnits2Pixel(units));
+        }
+    }
+
+    @Benchmark
+    public void heightUnits2Pixel(Blackhole blackhole) {
+        for(short units : heightUnits) {
+            blackhole.consume(PixelUtil.heightUnits2Pixel(units));
+        }
+    }
+}
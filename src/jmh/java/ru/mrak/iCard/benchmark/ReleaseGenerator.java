@@ -0,0 +1,158 @@
+package ru.mrak.iCard.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Создает синтетическую папку выпуска: документы с именами вида "ИГУЛ.XXXXXX.XXX-NN СБ_V Наименование.dwg"
+ * и "IGULXXXXXXXXX-NN_sb_V.tdd", документы pdf, которые проходят проверку расширения ключа a,
+ * и посторонние файлы, которые не соответствуют шаблону имени
+ * Размеры документов распределены логнормально вокруг медианы, при одинаковом seed папка повторяется
+ */
+public class ReleaseGenerator {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final String[] NAMES = {"Деталь", "Корпус", "Крышка", "Плата", "Кронштейн", "Сборочный чертеж"};
+
+    private final long seed;
+    private final int count;
+    private final long medianBytes;
+    private final double sigma;
+    private final long maxBytes;
+    private final double noise;
+
+    /**
+     * @param seed - начальное значение генератора
+     * @param count - количество документов
+     * @param medianBytes - медиана размера документа
+     * @param sigma - разброс логарифма размера, 0 - все документы одного размера
+     * @param maxBytes - наибольший размер документа
+     * @param noise - доля посторонних файлов от количества документов
+     */
+    public ReleaseGenerator(long seed, int count, long medianBytes, double sigma, long maxBytes, double noise) {
+        this.seed = seed;
+        this.count = count;
+        this.medianBytes = medianBytes;
+        this.sigma = sigma;
+        this.maxBytes = maxBytes;
+        this.noise = noise;
+    }
+
+    /**
+     * Состав созданной папки
+     */
+    public static class Release {
+        //Документы dwg и tdd
+        public int drawings;
+        public long drawingBytes;
+        //Документы pdf
+        public int others;
+        public long otherBytes;
+        public int noiseFiles;
+    }
+
+    /**
+     * Создает папку выпуска
+     * @param dir - папка, создается при необходимости
+     * @return состав папки
+     */
+    public Release generate(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(seed);
+        byte[] block = new byte[BLOCK_SIZE];
+        random.nextBytes(block);
+        Release release = new Release();
+        for(int i = 0; i < count; i++) {
+            int characteristic = 100000 + i / 1000;
+            int registration = i % 1000;
+            int species = random.nextInt(100);
+            int version = 1 + random.nextInt(9);
+            String name = NAMES[random.nextInt(NAMES.length)] + " " + (i + 1);
+            String fileName;
+            int kind = random.nextInt(20);
+            if(kind < 12) {
+                fileName = String.format("ИГУЛ.%06d.%03d-%02d СБ_%d %s.dwg", characteristic, registration, species, version, name);
+            } else if(kind < 17) {
+                fileName = String.format("IGUL%06d%03d-%02d_sb_%d.tdd", characteristic, registration, species, version);
+            } else {
+                fileName = String.format("ИГУЛ.%06d.%03d МЭ %s.pdf", characteristic, registration, name);
+            }
+            long size = size(random);
+            write(dir.resolve(fileName), size, i, block);
+            if(kind < 17) {
+                release.drawings++;
+                release.drawingBytes += size;
+            } else {
+                release.others++;
+                release.otherBytes += size;
+            }
+        }
+        int noiseFiles = (int) Math.round(count * noise);
+        for(int i = 0; i < noiseFiles; i++) {
+            String fileName;
+            switch (i % 4) {
+                case 0:
+                    fileName = "noise" + i + ".txt";
+                    break;
+                case 1:
+                    fileName = "~$Деталь " + i + ".dwg";
+                    break;
+                case 2:
+                    fileName = String.format("Копия ИГУЛ.%05d.%03d СБ.dwg", i, i % 1000);
+                    break;
+                default:
+                    fileName = "Thumbs" + i + ".db";
+            }
+            write(dir.resolve(fileName), Math.min(size(random), 64 * 1024), count + i, block);
+            release.noiseFiles++;
+        }
+        return release;
+    }
+
+    /**
+     * @return размер документа по логнормальному распределению
+     */
+    private long size(Random random) {
+        long size = Math.round(medianBytes * Math.exp(sigma * random.nextGaussian()));
+        return Math.max(1, Math.min(size, maxBytes));
+    }
+
+    /**
+     * Пишет файл из общего случайного блока, номер файла в начале делает содержимое файлов разным
+     */
+    private static void write(Path file, long size, int index, byte[] block) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            long written = 0;
+            int offset = index % BLOCK_SIZE;
+            byte[] header = {(byte) index, (byte) (index >> 8), (byte) (index >> 16), (byte) (index >> 24)};
+            out.write(header, 0, (int) Math.min(size, header.length));
+            written += Math.min(size, header.length);
+            while (written < size) {
+                int length = (int) Math.min(size - written, BLOCK_SIZE - offset);
+                out.write(block, offset, length);
+                written += length;
+                offset = 0;
+            }
+        }
+    }
+
+    /**
+     * Создает папку выпуска из командной строки
+     * ReleaseGenerator [папка] [количество документов] [медиана, КБ]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0) {
+            System.out.println("использование: ReleaseGenerator [папка] [количество документов] [медиана размера, КБ]");
+            return;
+        }
+        int count = args.length >= 2 ? Integer.parseInt(args[1]) : 1000;
+        long median = args.length >= 3 ? Long.parseLong(args[2]) * 1024 : 256 * 1024;
+        Release release = new ReleaseGenerator(1, count, median, 1.0, 64L * 1024 * 1024, 0.2).generate(Paths.get(args[0]));
+        System.out.println("Документов dwg и tdd: " + release.drawings + ", " + release.drawingBytes + " байт");
+        System.out.println("Документов pdf: " + release.others + ", " + release.otherBytes + " байт");
+        System.out.println("Посторонних файлов: " + release.noiseFiles);
+    }
+}
@@ -0,0 +1,82 @@
+package ru.mrak.iCard.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mrak.iCard.EntryDoc;
+import ru.mrak.iCard.FProperties;
+import ru.mrak.iCard.WorkBook;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Формирование информационно-удостоверяющего листа по количеству записей и способу записи
+ * sheet: xls - книга POI, xls-biff - прямая запись BIFF8, xlsx - потоковая книга POI
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class WorkBookBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int entries;
+
+    @Param({"xls", "xls-biff", "xlsx"})
+    public String sheet;
+
+    private Path dir;
+    private String path;
+    private FProperties properties;
+    private List<EntryDoc> entryDocs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("icard-sheet");
+        String format = sheet.startsWith("xlsx") ? "xlsx" : "xls";
+        properties = BenchmarkFiles.properties(dir, "outputFormat=" + format,
+                "xlsWriter=" + (sheet.endsWith("-biff") ? "biff" : "poi"), "sheetDigests=MD5");
+        path = dir.resolve("sheet." + format).toString();
+        entryDocs = new ArrayList<>(entries);
+        for(int i = 0; i < entries; i++) {
+            EntryDoc entryDoc = new EntryDoc();
+            entryDoc.setDesignation(String.format("ИГУЛ.%06d.%03d СБ", 100000 + i / 1000, i % 1000));
+            entryDoc.setName("Деталь " + i);
+            entryDoc.setFileName(String.format("ИГУЛ.%06d.%03d СБ Деталь %d.dwg", 100000 + i / 1000, i % 1000, i));
+            entryDoc.setMd5(String.format("%032x", i));
+            entryDoc.setSize(10000 + i * 37);
+            //17.10.2026
+            entryDoc.setModified(1792238400000L);
+            entryDoc.setVersion("-");
+            entryDoc.setReleaseNumber("-");
+            entryDoc.setAuthor("");
+            entryDocs.add(entryDoc);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public void writeBook() {
+        WorkBook.writeBook("Уд. лист", path, entryDocs, properties);
+    }
+}
@@ -0,0 +1,10 @@
+package ru.mrak.iCard;
+
+/**
+ * Выравнивания
+ */
+enum Align {
+    LEFT,
+    CENTER,
+    ROTATION
+}
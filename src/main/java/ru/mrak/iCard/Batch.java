@@ -0,0 +1,237 @@
+package ru.mrak.iCard;
+
+import ru.mrak.iCard.util.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Пакетный режим: обрабатывает несколько проектов из списка за один запуск приложения
+ * Список - текстовый файл, в строке папка для результатов и папка с исходными файлами через ";",
+ * пустые строки и строки с # пропускаются, относительные пути считаются от папки списка
+ * Проекты обрабатываются одновременно по batchProjects, файлы всех проектов читаются и пишутся в общем пуле
+ * из batchIoThreads потоков с общим лимитом bytesInFlight, глобальные свойства, выражения имени и буферы
+ * копирования тоже общие. Для каждого проекта создается свой лист, по всем проектам пишется сводка icard-batch.csv
+ * в папку списка. Ошибка проекта не прерывает остальные проекты, она попадает в сводку
+ */
+public class Batch {
+    private static final String SUMMARY_FILE = "icard-batch.csv";
+    private static final String METRICS_FILE = "icard-metrics.json";
+
+    private final Config config;
+    private final Path listPath;
+    private final List<Project> projects;
+
+    private Batch(Config config, Path listPath, List<Project> projects) {
+        this.config = config;
+        this.listPath = listPath;
+        this.projects = projects;
+    }
+
+    /**
+     * Проект из списка и итоги его обработки
+     */
+    private static class Project {
+        private final String result;
+        private final String source;
+        private int documents;
+        private int failed;
+        private long bytes;
+        private long millis;
+        private String sheet = "";
+        //Ошибка, прервавшая обработку проекта, пустая строка - проект выполнен
+        private String error = "";
+
+        private Project(String result, String source) {
+            this.result = result;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Обрабатывает все проекты из списка
+     * @param list - файл списка проектов
+     * @param config - конфигурация запуска, общая для всех проектов
+     * @return код завершения: Main.RUN_FAILED_STATUS, если обработка хотя бы одного проекта прервана ошибкой,
+     * Main.FAILED_FILES_STATUS, если при ключе k часть файлов не обработана, иначе 0
+     */
+    public static int run(String list, Config config) {
+        Path listPath = Paths.get(list).toAbsolutePath().normalize();
+        Batch batch = new Batch(config, listPath, readList(listPath));
+        FProperties properties = new FProperties(listPath.getParent().toString());
+        batch.process(properties);
+        batch.writeSummary();
+        if(config.isMetrics()) {
+            Map<String, String> run = new LinkedHashMap<>();
+            run.put("config", config.createConfig());
+            run.put("batch", listPath.toString());
+            run.put("projects", Integer.toString(batch.projects.size()));
+            int documents = 0;
+            for(Project project : batch.projects) {
+                documents += project.documents;
+            }
+            Metrics.writeSummary(listPath.resolveSibling(METRICS_FILE), run, documents);
+        }
+        int failed = 0;
+        int failedProjects = 0;
+        for(Project project : batch.projects) {
+            failed += project.failed;
+            if(!project.error.isEmpty()) failedProjects++;
+        }
+        if(failedProjects > 0) {
+            System.out.println("Проектов с ошибкой: " + failedProjects);
+            return Main.RUN_FAILED_STATUS;
+        }
+        return failed > 0 ? Main.FAILED_FILES_STATUS : 0;
+    }
+
+    /**
+     * Читает список проектов
+     * @param listPath - файл списка
+     * @return проекты в порядке списка
+     */
+    private static List<Project> readList(Path listPath) {
+        List<String> lines = null;
+        try {
+            lines = Files.readAllLines(listPath, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось прочитать список проектов: " + listPath);
+        }
+        Path base = listPath.getParent();
+        List<Project> projects = new ArrayList<>();
+        for(int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if(line.startsWith("\uFEFF")) line = line.substring(1).trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            int separator = line.indexOf(';');
+            if(separator < 0) {
+                throw new RunFailure("Строка " + (i + 1) + " списка проектов должна содержать папку для результатов и папку"
+                        + " с исходными файлами через ';': " + line);
+            }
+            String result = base.resolve(line.substring(0, separator).trim()).normalize().toString();
+            String source = base.resolve(line.substring(separator + 1).trim()).normalize().toString();
+            projects.add(new Project(result, source));
+        }
+        if(projects.isEmpty()) {
+            throw new RunFailure("Список проектов пуст: " + listPath);
+        }
+        return projects;
+    }
+
+    /**
+     * Обрабатывает проекты в пуле проектов, файлы проектов - в общем пуле ввода-вывода
+     * @param properties - свойства пакета из папки списка
+     */
+    private void process(FProperties properties) {
+        int ioThreads = properties.getBatchIoThreads();
+        ExecutorService projectPool = Executors.newFixedThreadPool(Math.min(properties.getBatchProjects(), projects.size()));
+        final WorkerPools pools = WorkerPools.create(ioThreads, properties.getBytesInFlight());
+        System.out.println("Проектов: " + projects.size() + ", одновременно: " + properties.getBatchProjects()
+                + ", потоков ввода-вывода: " + ioThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for(final Project project : projects) {
+                futures.add(projectPool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        processProject(project, pools);
+                        return null;
+                    }
+                }));
+            }
+            for(int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    //Ошибки проекта отмечаются в processProject, здесь остаются только Error
+                    projects.get(i).error = String.valueOf(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RunFailure("Обработка проектов прервана");
+        } finally {
+            projectPool.shutdownNow();
+            pools.shutdown();
+        }
+    }
+
+    /**
+     * Обрабатывает один проект и создает его лист
+     * Ошибка проекта записывается в его итоги, остальные проекты продолжают обрабатываться
+     */
+    private void processProject(Project project, WorkerPools pools) {
+        long start = System.nanoTime();
+        System.out.println("Проект: " + project.source + " -> " + project.result);
+        try {
+            FProperties properties = new FProperties(project.source);
+            FilesReplace filesReplace = FilesReplace.open(project.source, project.result, config, properties);
+            filesReplace.share(pools);
+            List<EntryDoc> entryDocs = filesReplace.replaceFiles();
+            project.documents = entryDocs.size();
+            project.failed = Main.countFailed(entryDocs) + filesReplace.getFailedFolders();
+            for(EntryDoc entryDoc : entryDocs) {
+                if(entryDoc.getSize() != EntryDoc.UNKNOWN) project.bytes += entryDoc.getSize();
+            }
+            if(config.isCreateWB()) {
+                String sheet = Main.sheetPath(project.result, properties);
+                WorkBook.writeBook("Уд. лист", sheet, entryDocs, properties);
+                project.sheet = sheet;
+            }
+            System.out.println("Проект выполнен: " + project.source + ", документов: " + project.documents);
+        } catch (RuntimeException e) {
+            project.error = e instanceof RunFailure ? e.getMessage() : e.toString();
+            System.out.println("Не удалось обработать проект " + project.source + ": " + project.error);
+        } finally {
+            project.millis = (System.nanoTime() - start) / 1000000;
+        }
+    }
+
+    /**
+     * Выводит итоги проектов в консоль и записывает сводку icard-batch.csv в папку списка
+     */
+    private void writeSummary() {
+        Path file = listPath.resolveSibling(SUMMARY_FILE);
+        StringBuilder csv = new StringBuilder("result,source,documents,failed,bytes,seconds,sheet,error\r\n");
+        int documents = 0;
+        long bytes = 0;
+        System.out.println("\nСводка по проектам:");
+        for(Project project : projects) {
+            String seconds = String.format(Locale.ROOT, "%.1f", project.millis / 1000.0);
+            csv.append(ManifestWriter.csvField(project.result)).append(',')
+                    .append(ManifestWriter.csvField(project.source)).append(',')
+                    .append(project.documents).append(',')
+                    .append(project.failed).append(',')
+                    .append(project.bytes).append(',')
+                    .append(seconds).append(',')
+                    .append(ManifestWriter.csvField(project.sheet)).append(',')
+                    .append(ManifestWriter.csvField(project.error)).append("\r\n");
+            System.out.println(project.source + ": " + (project.error.isEmpty() ? "" : "ошибка: " + project.error + ", ")
+                    + "документов " + project.documents
+                    + (project.failed > 0 ? ", с ошибками " + project.failed : "") + ", " + seconds + " с");
+            documents += project.documents;
+            bytes += project.bytes;
+        }
+        System.out.println("Всего проектов: " + projects.size() + ", документов: " + documents + ", байт: " + bytes);
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(csv.toString());
+            System.out.println("Сводка по проектам: " + file);
+        } catch (IOException e) {
+            System.out.println("Не удалось записать сводку по проектам: " + file);
+        }
+    }
+}
@@ -0,0 +1,814 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.WorkbookUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static ru.mrak.iCard.WorkBook.FIRST_PAGE_CAPACITY;
+import static ru.mrak.iCard.WorkBook.FIRST_PAGE_HEIGHT;
+import static ru.mrak.iCard.WorkBook.FOLLOW_PAGE_CAPACITY;
+import static ru.mrak.iCard.WorkBook.FOLLOW_PAGE_HEIGHT;
+import static ru.mrak.iCard.util.PixelUtil.pixel2WidthUnits;
+
+/**
+ * Записывает информационно-удостоверяющий лист xls напрямую записями BIFF8, без объектной модели POI
+ * Разметка листа постоянна, поэтому шрифты и таблица стилей известны заранее: стили всех ячеек, которые может дать
+ * разметка, собираются один раз пробным выводом страниц. Книга пишется в файл по мере вывода страниц,
+ * в памяти держится только текущая страница. Записи и их значения совпадают с тем, что пишет HSSF для этого листа,
+ * текст пишется записями LABEL вместо общей таблицы строк, чтобы не держать строки до конца листа
+ * Книга BIFF8 хранится в составном документе OLE2 потоком Workbook: поток пишется с сектора 0,
+ * таблица размещения и каталог - после потока, заголовок документа - в конце записи, когда известен размер потока
+ */
+class Biff8SheetWriter implements SheetWriter {
+    //Предел длины текста записи LABEL
+    static final int MAX_LABEL_LENGTH = 255;
+    //Предел количества строк листа xls, номер строки в записях - два байта
+    static final int MAX_ROWS = 65536;
+    private static final int COLUMNS = PageLayout.COLUMN_WIDTHS.length;
+    //Предел данных одной записи BIFF8
+    private static final int MAX_RECORD_DATA = 8224;
+    //Excel хранит не больше 1026 разрывов страниц
+    private static final int MAX_ROW_BREAKS = 1026;
+    //Строк в блоке строк: записи ROW блока, затем его ячейки
+    private static final int ROW_BLOCK = 32;
+
+    //Записи BIFF8
+    private static final int BOF = 0x0809;
+    private static final int EOF = 0x000A;
+    private static final int FONT = 0x0031;
+    private static final int XF = 0x00E0;
+    private static final int STYLE = 0x0293;
+    private static final int BOUNDSHEET = 0x0085;
+    private static final int NAME = 0x0018;
+    private static final int HORIZONTAL_PAGE_BREAKS = 0x001B;
+    private static final int SETUP = 0x00A1;
+    private static final int COLINFO = 0x007D;
+    private static final int DIMENSIONS = 0x0200;
+    private static final int ROW = 0x0208;
+    private static final int BLANK = 0x0201;
+    private static final int LABEL = 0x0204;
+    private static final int FORMULA = 0x0006;
+    private static final int WINDOW2 = 0x023E;
+    private static final int MERGED_CELLS = 0x00E5;
+
+    //Упакованный стиль ячейки: рамки, выравнивание, поворот, перенос, шрифт
+    private static final int BOTTOM_SHIFT = 0;
+    private static final int TOP_SHIFT = 4;
+    private static final int LEFT_SHIFT = 8;
+    private static final int RIGHT_SHIFT = 12;
+    private static final int ALIGN_SHIFT = 16;
+    private static final int VERTICAL_SHIFT = 19;
+    private static final int ROTATION_BIT = 1 << 22;
+    private static final int WRAP_BIT = 1 << 23;
+    private static final int FONT_SHIFT = 24;
+    private static final int ALIGNMENT_MASK = 0x3F << ALIGN_SHIFT;
+    private static final int FONT_MASK = 0xF << FONT_SHIFT;
+    //Выравнивания BIFF8
+    private static final int ALIGN_GENERAL = 0;
+    private static final int ALIGN_LEFT = 1;
+    private static final int ALIGN_CENTER = 2;
+    private static final int VERTICAL_CENTER = 1;
+    private static final int VERTICAL_BOTTOM = 2;
+    //Стиль новой ячейки: без рамок, выравнивание и шрифт по умолчанию
+    private static final int DEFAULT_STYLE = VERTICAL_BOTTOM << VERTICAL_SHIFT;
+
+    //Размеры шрифтов оформления, шрифт размера FONT_SIZES[i] имеет индекс 5 + i, индекс 4 в BIFF8 не используется
+    private static final int[] FONT_SIZES = {8, 9, 10, 11, 16, 20};
+    //Первый XF ячеек после стилевых XF и XF ячейки по умолчанию
+    private static final int FIRST_CELL_XF = 16;
+    //Таблица стилей: упакованный стиль - номер XF
+    private static final int[] STYLES;
+    private static final Map<Integer, Integer> XF_INDEXES = new HashMap<>();
+    static {
+        Set<Integer> styles = new LinkedHashSet<>();
+        collectStyles(PageLayout.FIRST_PAGE, FIRST_PAGE_CAPACITY, styles,
+                PageLayout.AUTHOR, PageLayout.CHECKED, PageLayout.APPROVED, PageLayout.PAGE_NUMBER, PageLayout.PAGE_COUNT);
+        collectStyles(PageLayout.FOLLOW_PAGE, FOLLOW_PAGE_CAPACITY, styles, PageLayout.FOLLOW_PAGE_NUMBER);
+        STYLES = new int[styles.size()];
+        int i = 0;
+        for(int style : styles) {
+            STYLES[i] = style;
+            XF_INDEXES.put(style, FIRST_CELL_XF + i);
+            i++;
+        }
+    }
+
+    private static final Pattern CELL_REFERENCE = Pattern.compile("^[A-Z]{1,3}[0-9]{1,7}$");
+
+    private final String sheetName;
+    private final String path;
+    private final FileChannel channel;
+    private final OutputStream stream;
+    //Размер потока Workbook
+    private long streamSize;
+    private final ByteBuffer record = ByteBuffer.allocate(4 + MAX_RECORD_DATA).order(ByteOrder.LITTLE_ENDIAN);
+    //Объединения всех страниц записями Ref8
+    private final ByteArrayOutputStream mergedCells = new ByteArrayOutputStream();
+    private int mergedCellCount;
+    //Разрывы страниц, которые записаны в заголовок листа
+    private final List<Integer> rowBreaks = new ArrayList<>();
+    private int nextRowBreak;
+    //Текущая страница
+    private final Page page = new Page();
+
+    private Biff8SheetWriter(String sheetName, String path, FileChannel channel) {
+        this.sheetName = sheetName;
+        this.path = path;
+        this.channel = channel;
+        this.stream = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+    }
+
+    /**
+     * Создает файл книги
+     * @param sheetName - наименование листа
+     * @param path - путь по которому необходимо сохранить книгу
+     * @return запись листа без страниц
+     */
+    static Biff8SheetWriter create(String sheetName, String path) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            //Место под заголовок составного документа, поток Workbook начинается с сектора 0
+            channel.position(CompoundFile.SECTOR_SIZE);
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось записать информационно-удостоверяющий лист");
+        }
+        return new Biff8SheetWriter(WorkbookUtil.createSafeSheetName(sheetName), path, channel);
+    }
+
+    /**
+     * Записывает глобальные записи книги и заголовок листа: печать, разрывы страниц, ширину столбцов, размеры
+     * @param numberOfPage - количество страниц листа
+     */
+    @Override
+    public void setupPrint(int numberOfPage) {
+        int rows = FIRST_PAGE_HEIGHT + FOLLOW_PAGE_HEIGHT * (numberOfPage - 1);
+        if(rows > MAX_ROWS) {
+            throw new RunFailure("Лист из " + numberOfPage + " страниц не помещается в xls: строк " + rows
+                    + ", допустимо " + MAX_ROWS);
+        }
+        for(int i = 2; i <= numberOfPage && rowBreaks.size() < MAX_ROW_BREAKS; i++) {
+            rowBreaks.add(FIRST_PAGE_HEIGHT - 1 + FOLLOW_PAGE_HEIGHT * (i - 2));
+        }
+        try {
+            writeGlobals(rows);
+            writeSheetHeader(rows);
+        } catch (IOException e) {
+            failWrite();
+        }
+    }
+
+    @Override
+    public void createFirstFrame() {
+        startPage(PageLayout.FIRST_PAGE, 0);
+    }
+
+    @Override
+    public void createFollowFrame(int rowOffset) {
+        startPage(PageLayout.FOLLOW_PAGE, rowOffset);
+    }
+
+    @Override
+    public void writeText(String text, PageLayout.Place place, int rowOffset) {
+        page.write(place.row + rowOffset - page.firstRow, place.column, text, false, place.align, place.fontSize);
+    }
+
+    @Override
+    public void writeFormula(String formula, PageLayout.Place place, int rowOffset) {
+        page.write(place.row + rowOffset - page.firstRow, place.column, formula, true, place.align, place.fontSize);
+    }
+
+    /**
+     * Разрывы страниц записываются в заголовок листа по количеству страниц, здесь только сверяется порядок вывода
+     * @param row - последняя строка страницы
+     */
+    @Override
+    public void setRowBreak(int row) {
+        if(nextRowBreak >= rowBreaks.size()) return;
+        if(rowBreaks.get(nextRowBreak) != row) throw new RuntimeException("Неожиданный разрыв страницы после строки " + row);
+        nextRowBreak++;
+    }
+
+    /**
+     * Записывает последнюю страницу, окно листа, объединения и завершает составной документ
+     */
+    @Override
+    public void save() {
+        try {
+            flushPage();
+            begin(WINDOW2);
+            record.putShort((short) 0x06B6).putShort((short) 0).putShort((short) 0).putShort((short) 0x40)
+                    .putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0);
+            end(stream);
+            byte[] ranges = mergedCells.toByteArray();
+            int perRecord = (MAX_RECORD_DATA - 2) / 8;
+            for(int first = 0; first < mergedCellCount; first += perRecord) {
+                int count = Math.min(perRecord, mergedCellCount - first);
+                begin(MERGED_CELLS);
+                record.putShort((short) count).put(ranges, first * 8, count * 8);
+                end(stream);
+            }
+            begin(EOF);
+            end(stream);
+            CompoundFile.finish(channel, stream, streamSize);
+        } catch (IOException e) {
+            failWrite();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //Ошибка записи уже выведена
+            }
+        }
+    }
+
+    /**
+     * Закрывает файл и удаляет недописанную книгу
+     */
+    @Override
+    public void discard() {
+        try {
+            channel.close();
+            Files.deleteIfExists(Paths.get(path));
+        } catch (IOException e) {
+            System.out.println("Не удалось удалить недописанный информационно-удостоверяющий лист: " + path);
+        }
+    }
+
+    /**
+     * Записывает предыдущую страницу и начинает новую
+     * @param layout - разметка страницы
+     * @param rowOffset - первая строка страницы на листе
+     */
+    private void startPage(PageLayout layout, int rowOffset) {
+        try {
+            flushPage();
+        } catch (IOException e) {
+            failWrite();
+        }
+        page.render(layout, rowOffset);
+        for(PageLayout.Op merge : layout.getMerges()) {
+            ByteBuffer range = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            range.putShort((short) (merge.firstRow + rowOffset)).putShort((short) (merge.lastRow + rowOffset))
+                    .putShort((short) merge.firstColumn).putShort((short) merge.lastColumn);
+            mergedCells.write(range.array(), 0, 8);
+            mergedCellCount++;
+        }
+    }
+
+    /**
+     * Записывает строки и ячейки текущей страницы блоками по ROW_BLOCK строк
+     */
+    private void flushPage() throws IOException {
+        if(page.height == 0) return;
+        for(int blockStart = 0; blockStart < page.height; blockStart += ROW_BLOCK) {
+            int blockEnd = Math.min(blockStart + ROW_BLOCK, page.height);
+            for(int row = blockStart; row < blockEnd; row++) {
+                int firstColumn = 0;
+                int lastColumn = 0;
+                for(int column = COLUMNS - 1; column >= 0; column--) {
+                    if(page.styles[row][column] < 0) continue;
+                    if(lastColumn == 0) lastColumn = column + 1;
+                    firstColumn = column;
+                }
+                begin(ROW);
+                record.putShort((short) (page.firstRow + row)).putShort((short) firstColumn).putShort((short) lastColumn)
+                        .putShort(page.rowHeights[row]).putShort((short) 0).putShort((short) 0)
+                        .putShort((short) 0x0140).putShort((short) 0x000F);
+                end(stream);
+            }
+            for(int row = blockStart; row < blockEnd; row++) {
+                for(int column = 0; column < COLUMNS; column++) {
+                    if(page.styles[row][column] < 0) continue;
+                    writeCell(page.firstRow + row, column, xf(page.styles[row][column]),
+                            page.values[row][column], page.formulas[row][column]);
+                }
+            }
+        }
+        page.height = 0;
+    }
+
+    /**
+     * Записывает одну ячейку: BLANK, LABEL или FORMULA
+     */
+    private void writeCell(int row, int column, int xf, String value, boolean formula) throws IOException {
+        if(formula) {
+            //Поддерживаются формулы разметки - ссылки на ячейку, результат вычисляется при открытии
+            if(!CELL_REFERENCE.matcher(value).matches()) throw new RuntimeException("Формула не поддерживается прямой записью BIFF8: " + value);
+            CellAddress reference = new CellAddress(value);
+            begin(FORMULA);
+            record.putShort((short) row).putShort((short) column).putShort((short) xf).putDouble(0)
+                    .putShort((short) 0x0002).putInt(0).putShort((short) 5)
+                    .put((byte) 0x44).putShort((short) reference.getRow()).putShort((short) (0xC000 | reference.getColumn()));
+        } else if(value != null) {
+            begin(LABEL);
+            record.putShort((short) row).putShort((short) column).putShort((short) xf);
+            putString(value, 2);
+        } else {
+            begin(BLANK);
+            record.putShort((short) row).putShort((short) column).putShort((short) xf);
+        }
+        end(stream);
+    }
+
+    /**
+     * Записывает глобальные записи книги, смещение листа в BOUNDSHEET известно только после всех записей
+     * @param rows - количество строк листа
+     */
+    private void writeGlobals(int rows) throws IOException {
+        ByteArrayOutputStream globals = new ByteArrayOutputStream();
+        begin(BOF);
+        record.putShort((short) 0x0600).putShort((short) 0x0005).putShort((short) 0x10D3).putShort((short) 1996)
+                .putInt(0x41).putInt(0x06);
+        end(globals);
+        shortRecord(globals, 0x00E1, 0x04B0);
+        shortRecord(globals, 0x00C1, 0);
+        begin(0x00E2);
+        end(globals);
+        //CODEPAGE UTF-16, DSF, TABID, FNGROUPCOUNT, защита книги
+        shortRecord(globals, 0x0042, 0x04B0);
+        shortRecord(globals, 0x0161, 0);
+        shortRecord(globals, 0x013D, 0);
+        shortRecord(globals, 0x009C, 0x0E);
+        shortRecord(globals, 0x0019, 0);
+        shortRecord(globals, 0x0012, 0);
+        shortRecord(globals, 0x0013, 0);
+        shortRecord(globals, 0x01AF, 0);
+        shortRecord(globals, 0x01BC, 0);
+        begin(0x003D);
+        record.putShort((short) 0x168).putShort((short) 0x10E).putShort((short) 0x3A5C).putShort((short) 0x23BE)
+                .putShort((short) 0x38).putShort((short) 0).putShort((short) 0).putShort((short) 1).putShort((short) 0x258);
+        end(globals);
+        //BACKUP, HIDEOBJ, 1904, PRECISION, REFRESHALL, BOOKBOOL
+        shortRecord(globals, 0x0040, 0);
+        shortRecord(globals, 0x008D, 0);
+        shortRecord(globals, 0x0022, 0);
+        shortRecord(globals, 0x000E, 1);
+        shortRecord(globals, 0x01B7, 0);
+        shortRecord(globals, 0x00DA, 0);
+        //Четыре шрифта по умолчанию и шрифты оформления
+        for(int i = 0; i < 4; i++) {
+            writeFont(globals, 10, false);
+        }
+        for(int size : FONT_SIZES) {
+            writeFont(globals, size, true);
+        }
+        //Стилевые XF и XF ячейки по умолчанию, затем стили ячеек листа
+        for(int i = 0; i < FIRST_CELL_XF - 1; i++) {
+            int font = i == 1 || i == 2 ? 1 : i == 3 || i == 4 ? 2 : 0;
+            begin(XF);
+            record.putShort((short) font).putShort((short) 0).putShort((short) 0xFFF5).putShort((short) 0x20)
+                    .putShort((short) (i == 0 ? 0 : 0xF400)).putShort((short) 0).putShort((short) 0).putInt(0)
+                    .putShort((short) 0x20C0);
+            end(globals);
+        }
+        begin(XF);
+        record.putShort((short) 0).putShort((short) 0).putShort((short) 0x0001).putShort((short) 0x20)
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0).putShort((short) 0x20C0);
+        end(globals);
+        for(int style : STYLES) {
+            writeXf(globals, style);
+        }
+        begin(STYLE);
+        record.putShort((short) 0x8000).put((byte) 0).put((byte) 0xFF);
+        end(globals);
+        shortRecord(globals, 0x0160, 0);
+        int boundSheet = globals.size();
+        begin(BOUNDSHEET);
+        record.putInt(0).putShort((short) 0);
+        putString(sheetName, 1);
+        end(globals);
+        //COUNTRY, ссылка книги на себя для области печати
+        begin(0x008C);
+        record.putShort((short) 1).putShort((short) 1);
+        end(globals);
+        begin(0x01AE);
+        record.putShort((short) 1).putShort((short) 0x0401);
+        end(globals);
+        begin(0x0017);
+        record.putShort((short) 1).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        end(globals);
+        //Встроенное имя Print_Area листа
+        begin(NAME);
+        record.putShort((short) 0x0020).put((byte) 0).put((byte) 1).putShort((short) 11).putShort((short) 0)
+                .putShort((short) 1).putInt(0).put((byte) 0).put((byte) 0x06)
+                .put((byte) 0x3B).putShort((short) 0).putShort((short) 0).putShort((short) (rows - 1))
+                .putShort((short) 0xC000).putShort((short) (0xC000 | (COLUMNS - 1)));
+        end(globals);
+        begin(EOF);
+        end(globals);
+        byte[] bytes = globals.toByteArray();
+        ByteBuffer.wrap(bytes, boundSheet + 4, 4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length);
+        stream.write(bytes);
+        streamSize += bytes.length;
+    }
+
+    /**
+     * Записывает начало листа до строк: расчет, печать, разрывы страниц, ширину столбцов и размеры листа
+     * @param rows - количество строк листа
+     */
+    private void writeSheetHeader(int rows) throws IOException {
+        begin(BOF);
+        record.putShort((short) 0x0600).putShort((short) 0x0010).putShort((short) 0x0DBB).putShort((short) 1996)
+                .putInt(0xC1).putInt(0x06);
+        end(stream);
+        //CALCMODE, CALCCOUNT, REFMODE, ITERATION, DELTA, SAVERECALC
+        shortRecord(stream, 0x000D, 1);
+        shortRecord(stream, 0x000C, 100);
+        shortRecord(stream, 0x000F, 1);
+        shortRecord(stream, 0x0011, 0);
+        begin(0x0010);
+        record.putDouble(0.001);
+        end(stream);
+        shortRecord(stream, 0x005F, 1);
+        //PRINTHEADERS, PRINTGRIDLINES, GRIDSET, GUTS, DEFAULTROWHEIGHT, WSBOOL с размещением на странице
+        shortRecord(stream, 0x002A, 0);
+        shortRecord(stream, 0x002B, 0);
+        shortRecord(stream, 0x0082, 1);
+        begin(0x0080);
+        record.putLong(0);
+        end(stream);
+        begin(0x0225);
+        record.putShort((short) 0).putShort((short) 0xFF);
+        end(stream);
+        shortRecord(stream, 0x0081, 0x04C1);
+        if(!rowBreaks.isEmpty()) {
+            begin(HORIZONTAL_PAGE_BREAKS);
+            record.putShort((short) rowBreaks.size());
+            for(int row : rowBreaks) {
+                record.putShort((short) (row + 1)).putShort((short) 0).putShort((short) 0xFF);
+            }
+            end(stream);
+        }
+        //HEADER, FOOTER, центрирование и нулевые поля
+        begin(0x0014);
+        end(stream);
+        begin(0x0015);
+        end(stream);
+        shortRecord(stream, 0x0083, 1);
+        shortRecord(stream, 0x0084, 1);
+        for(int margin = 0x0026; margin <= 0x0029; margin++) {
+            begin(margin);
+            record.putDouble(0);
+            end(stream);
+        }
+        begin(SETUP);
+        record.putShort((short) 9).putShort((short) 93).putShort((short) 1).putShort((short) 1).putShort((short) 1)
+                .putShort((short) 0x0002).putShort((short) 300).putShort((short) 300).putDouble(0).putDouble(0)
+                .putShort((short) 1);
+        end(stream);
+        shortRecord(stream, 0x0055, 8);
+        for(int i = 0; i < COLUMNS; i++) {
+            begin(COLINFO);
+            record.putShort((short) i).putShort((short) i).putShort(pixel2WidthUnits(PageLayout.COLUMN_WIDTHS[i]))
+                    .putShort((short) 0x0F).putShort((short) 0x0002).putShort((short) 0x0002);
+            end(stream);
+        }
+        begin(DIMENSIONS);
+        record.putInt(0).putInt(rows).putShort((short) 0).putShort((short) COLUMNS).putShort((short) 0);
+        end(stream);
+    }
+
+    /**
+     * Записывает шрифт Arial
+     * @param size - размер в пунктах
+     * @param italic - курсив
+     */
+    private void writeFont(OutputStream out, int size, boolean italic) throws IOException {
+        begin(FONT);
+        record.putShort((short) (size * 20)).putShort((short) (italic ? 0x0002 : 0)).putShort((short) 0x7FFF)
+                .putShort((short) 400).putShort((short) 0).put((byte) 0).put((byte) 0).put((byte) 0).put((byte) 0);
+        putString("Arial", 1);
+        end(out);
+    }
+
+    /**
+     * Записывает XF ячейки по упакованному стилю, цвет рамок - черный
+     * @param style - упакованный стиль
+     */
+    private void writeXf(OutputStream out, int style) throws IOException {
+        int alignment = (style >> ALIGN_SHIFT & 0x7) | (style & WRAP_BIT) >> 20 | (style >> VERTICAL_SHIFT & 0x7) << 4;
+        int borders = (style >> LEFT_SHIFT & 0xF) | (style >> RIGHT_SHIFT & 0xF) << 4
+                | (style >> TOP_SHIFT & 0xF) << 8 | (style >> BOTTOM_SHIFT & 0xF) << 12;
+        begin(XF);
+        record.putShort((short) (style >> FONT_SHIFT & 0xF)).putShort((short) 0).putShort((short) 0x0001)
+                .put((byte) alignment).put((byte) ((style & ROTATION_BIT) != 0 ? 90 : 0)).putShort((short) 0x3800)
+                .putShort((short) borders).putShort((short) (8 | 8 << 7)).putInt(8 | 8 << 7).putShort((short) 0x20C0);
+        end(out);
+    }
+
+    /**
+     * Записывает запись с одним двухбайтовым значением
+     */
+    private void shortRecord(OutputStream out, int sid, int value) throws IOException {
+        begin(sid);
+        record.putShort((short) value);
+        end(out);
+    }
+
+    /**
+     * Записывает строку: длина, флаг кодировки, символы в Latin-1, если возможно, иначе в UTF-16
+     * @param text - строка
+     * @param lengthBytes - размер поля длины: 1 или 2 байта
+     */
+    private void putString(String text, int lengthBytes) {
+        if(lengthBytes == 1) {
+            record.put((byte) text.length());
+        } else {
+            record.putShort((short) text.length());
+        }
+        boolean compressed = true;
+        for(int i = 0; i < text.length() && compressed; i++) {
+            compressed = text.charAt(i) <= 0xFF;
+        }
+        record.put((byte) (compressed ? 0 : 1));
+        record.put(text.getBytes(compressed ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_16LE));
+    }
+
+    private void begin(int sid) {
+        ((Buffer) record).clear();
+        record.putShort((short) sid).putShort((short) 0);
+    }
+
+    private void end(OutputStream out) throws IOException {
+        int size = record.position();
+        record.putShort(2, (short) (size - 4));
+        out.write(record.array(), 0, size);
+        if(out == stream) streamSize += size;
+    }
+
+    private void failWrite() {
+        throw new RunFailure("Не удалось записать информационно-удостоверяющий лист: " + path);
+    }
+
+    /**
+     * @param style - упакованный стиль
+     * @return номер XF стиля
+     */
+    private static int xf(int style) {
+        Integer xf = XF_INDEXES.get(style);
+        if(xf == null) throw new RuntimeException("Стиль ячейки не входит в таблицу стилей BIFF8: " + Integer.toHexString(style));
+        return xf;
+    }
+
+    /**
+     * @param style - стиль ячейки
+     * @param align - выравнивание надписи
+     * @param fontSize - размер шрифта надписи
+     * @param wrap - многострочный текст
+     * @return стиль ячейки с надписью, как его составляет PoiSheetWriter
+     */
+    private static int labelStyle(int style, Align align, int fontSize, boolean wrap) {
+        int horizontal = align == Align.LEFT ? ALIGN_LEFT : ALIGN_CENTER;
+        style = (style & ~(ALIGNMENT_MASK | FONT_MASK)) | (style & ROTATION_BIT)
+                | horizontal << ALIGN_SHIFT | VERTICAL_CENTER << VERTICAL_SHIFT | fontIndex(fontSize) << FONT_SHIFT;
+        if(align == Align.ROTATION) style |= ROTATION_BIT;
+        if(wrap) style |= WRAP_BIT;
+        return style;
+    }
+
+    /**
+     * @param size - размер шрифта в пунктах
+     * @return индекс шрифта оформления
+     */
+    private static int fontIndex(int size) {
+        for(int i = 0; i < FONT_SIZES.length; i++) {
+            if(FONT_SIZES[i] == size) return 5 + i;
+        }
+        throw new RuntimeException("Нет шрифта размером " + size);
+    }
+
+    /**
+     * @param border - рамка
+     * @return код рамки BIFF8
+     */
+    private static int border(BorderStyle border) {
+        return border.getCode();
+    }
+
+    /**
+     * Собирает стили ячеек страницы после вывода разметки и стили полей с однострочным и многострочным текстом
+     * @param layout - разметка страницы
+     * @param capacity - количество записей на странице
+     * @param styles - собранные стили
+     * @param places - поля страницы кроме полей записей
+     */
+    private static void collectStyles(PageLayout layout, int capacity, Set<Integer> styles, PageLayout.Place... places) {
+        Page page = new Page();
+        page.render(layout, 0);
+        List<PageLayout.Place> placed = new ArrayList<>(Arrays.asList(places));
+        List<Integer> offsets = new ArrayList<>();
+        for(int i = 0; i < places.length; i++) {
+            offsets.add(0);
+        }
+        for(int slot = 0; slot < capacity; slot++) {
+            for(PageLayout.Place place : PageLayout.ENTRY_PLACES) {
+                placed.add(place);
+                offsets.add(PageLayout.FIRST_ENTRY_ROW + PageLayout.ENTRY_HEIGHT * slot);
+            }
+        }
+        for(int row = 0; row < page.height; row++) {
+            for(int column = 0; column < COLUMNS; column++) {
+                if(page.styles[row][column] >= 0) styles.add(page.styles[row][column]);
+            }
+        }
+        for(int i = 0; i < placed.size(); i++) {
+            PageLayout.Place place = placed.get(i);
+            int style = page.styles[place.row + offsets.get(i)][place.column];
+            if(style < 0) style = DEFAULT_STYLE;
+            styles.add(labelStyle(style, place.align, place.fontSize, false));
+            styles.add(labelStyle(style, place.align, place.fontSize, true));
+        }
+    }
+
+    /**
+     * Строки и ячейки одной страницы до записи в файл
+     */
+    private static final class Page {
+        private static final int MAX_HEIGHT = Math.max(FIRST_PAGE_HEIGHT, FOLLOW_PAGE_HEIGHT);
+
+        private int firstRow;
+        private int height;
+        private final short[] rowHeights = new short[MAX_HEIGHT];
+        //Упакованный стиль ячейки, -1 - ячейки нет
+        private final int[][] styles = new int[MAX_HEIGHT][COLUMNS];
+        private final String[][] values = new String[MAX_HEIGHT][COLUMNS];
+        private final boolean[][] formulas = new boolean[MAX_HEIGHT][COLUMNS];
+
+        /**
+         * Выводит на страницу рамки и надписи разметки
+         * @param layout - разметка
+         * @param rowOffset - первая строка страницы на листе
+         */
+        private void render(PageLayout layout, int rowOffset) {
+            firstRow = rowOffset;
+            height = layout.getHeight();
+            for(int row = 0; row < height; row++) {
+                rowHeights[row] = (short) (layout.getRowHeight(row) * 20);
+                Arrays.fill(styles[row], -1);
+                Arrays.fill(values[row], null);
+                Arrays.fill(formulas[row], false);
+            }
+            for(PageLayout.Frame frame : layout.getFrames()) {
+                styles[frame.row][frame.column] = DEFAULT_STYLE
+                        | border(frame.borderBottom) << BOTTOM_SHIFT | border(frame.borderTop) << TOP_SHIFT
+                        | border(frame.borderLeft) << LEFT_SHIFT | border(frame.borderRight) << RIGHT_SHIFT;
+            }
+            for(PageLayout.Op op : layout.getLabels()) {
+                write(op.firstRow, op.firstColumn, op.text, op.kind == PageLayout.Kind.FORMULA, op.align, op.fontSize);
+            }
+        }
+
+        /**
+         * Пишет текст или формулу в ячейку страницы и составляет ее стиль
+         * @param row - строка относительно начала страницы
+         * @param column - столбец
+         * @param value - текст или формула
+         * @param formula - значение является формулой
+         * @param align - выравнивание
+         * @param fontSize - размер шрифта
+         */
+        private void write(int row, int column, String value, boolean formula, Align align, int fontSize) {
+            if(row < 0 || row >= height) throw new RuntimeException("Запись вне текущей страницы: строка " + (firstRow + row));
+            int style = styles[row][column] < 0 ? DEFAULT_STYLE : styles[row][column];
+            styles[row][column] = labelStyle(style, align, fontSize, !formula && value.contains("\n"));
+            values[row][column] = value;
+            formulas[row][column] = formula;
+        }
+    }
+
+    /**
+     * Составной документ OLE2 с единственным потоком Workbook
+     * Сектора: поток Workbook, каталог, таблица размещения, дополнительная таблица размещения при большом потоке
+     */
+    private static final class CompoundFile {
+        private static final int SECTOR_SIZE = 512;
+        private static final int MINI_STREAM_CUTOFF = 4096;
+        private static final int ENTRIES_PER_SECTOR = SECTOR_SIZE / 4;
+        private static final int HEADER_FAT_ENTRIES = 109;
+        private static final int FREE = -1;
+        private static final int END_OF_CHAIN = -2;
+        private static final int FAT_SECTOR = -3;
+        private static final int DIFAT_SECTOR = -4;
+
+        /**
+         * Дописывает каталог и таблицы размещения после потока и записывает заголовок документа
+         * @param channel - файл документа
+         * @param stream - поток записи после заголовка
+         * @param streamSize - размер потока Workbook
+         */
+        private static void finish(FileChannel channel, OutputStream stream, long streamSize) throws IOException {
+            //Поток меньше MINI_STREAM_CUTOFF хранился бы в мини-потоке, лист из одной страницы всегда больше
+            if(streamSize < MINI_STREAM_CUTOFF) throw new RuntimeException("Поток Workbook меньше " + MINI_STREAM_CUTOFF + " байт");
+            int streamSectors = (int) ((streamSize + SECTOR_SIZE - 1) / SECTOR_SIZE);
+            stream.write(new byte[(int) (streamSectors * (long) SECTOR_SIZE - streamSize)]);
+            int fatSectors = 0;
+            int difatSectors = 0;
+            while (true) {
+                int sectors = streamSectors + 1 + fatSectors + difatSectors;
+                int needFat = (sectors + ENTRIES_PER_SECTOR - 1) / ENTRIES_PER_SECTOR;
+                int needDifat = needFat > HEADER_FAT_ENTRIES ? (needFat - HEADER_FAT_ENTRIES + ENTRIES_PER_SECTOR - 2) / (ENTRIES_PER_SECTOR - 1) : 0;
+                if(needFat == fatSectors && needDifat == difatSectors) break;
+                fatSectors = needFat;
+                difatSectors = needDifat;
+            }
+            int directorySector = streamSectors;
+            int firstFatSector = directorySector + 1;
+            int firstDifatSector = firstFatSector + fatSectors;
+
+            ByteBuffer sector = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            //Каталог: корень и поток Workbook
+            directoryEntry(sector, "Root Entry", 5, 1, END_OF_CHAIN, 0);
+            directoryEntry(sector, "Workbook", 2, FREE, 0, streamSize);
+            directoryEntry(sector, "", 0, FREE, FREE, 0);
+            directoryEntry(sector, "", 0, FREE, FREE, 0);
+            stream.write(sector.array());
+            ((Buffer) sector).clear();
+            //Таблица размещения
+            int entries = fatSectors * ENTRIES_PER_SECTOR;
+            for(int i = 0; i < entries; i++) {
+                int next;
+                if(i < streamSectors - 1) next = i + 1;
+                else if(i == streamSectors - 1 || i == directorySector) next = END_OF_CHAIN;
+                else if(i < firstDifatSector) next = FAT_SECTOR;
+                else if(i < firstDifatSector + difatSectors) next = DIFAT_SECTOR;
+                else next = FREE;
+                sector.putInt(next);
+                if(!sector.hasRemaining()) {
+                    stream.write(sector.array());
+                    ((Buffer) sector).clear();
+                }
+            }
+            //Номера секторов таблицы размещения, не поместившиеся в заголовок
+            int fatIndex = HEADER_FAT_ENTRIES;
+            for(int i = 0; i < difatSectors; i++) {
+                for(int j = 0; j < ENTRIES_PER_SECTOR - 1; j++) {
+                    sector.putInt(fatIndex < fatSectors ? firstFatSector + fatIndex : FREE);
+                    fatIndex++;
+                }
+                sector.putInt(i < difatSectors - 1 ? firstDifatSector + i + 1 : END_OF_CHAIN);
+                stream.write(sector.array());
+                ((Buffer) sector).clear();
+            }
+            stream.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(0xE11AB1A1E011CFD0L).put(new byte[16]).putShort((short) 0x003E).putShort((short) 0x0003)
+                    .putShort((short) 0xFFFE).putShort((short) 9).putShort((short) 6).put(new byte[6])
+                    .putInt(0).putInt(fatSectors).putInt(directorySector).putInt(0).putInt(MINI_STREAM_CUTOFF)
+                    .putInt(END_OF_CHAIN).putInt(0).putInt(difatSectors > 0 ? firstDifatSector : END_OF_CHAIN)
+                    .putInt(difatSectors);
+            for(int i = 0; i < HEADER_FAT_ENTRIES; i++) {
+                header.putInt(i < fatSectors ? firstFatSector + i : FREE);
+            }
+            ((Buffer) header).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+        }
+
+        /**
+         * Добавляет в сектор каталога запись длиной 128 байт
+         * @param sector - сектор каталога
+         * @param name - имя
+         * @param type - тип: 0 - пусто, 2 - поток, 5 - корень
+         * @param child - номер дочерней записи
+         * @param start - первый сектор
+         * @param size - размер
+         */
+        private static void directoryEntry(ByteBuffer sector, String name, int type, int child, int start, long size) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_16LE);
+            sector.put(nameBytes).put(new byte[64 - nameBytes.length])
+                    .putShort((short) (name.isEmpty() ? 0 : nameBytes.length + 2))
+                    .put((byte) type).put((byte) (type == 0 ? 0 : 1))
+                    .putInt(FREE).putInt(FREE).putInt(child)
+                    .put(new byte[16]).putInt(0).putLong(0).putLong(0)
+                    .putInt(type == 0 ? 0 : start).putLong(size);
+        }
+    }
+}
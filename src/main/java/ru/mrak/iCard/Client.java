@@ -0,0 +1,107 @@
+package ru.mrak.iCard;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Клиент сервера: принимает те же параметры, что и Main, передает запуск серверу и выводит его ответ
+ * Папки передаются абсолютными путями от текущей папки клиента, перед параметрами передается ключ сервера из
+ * домашней папки пользователя. Если сервер не запущен или ключа нет, запуск выполняется в процессе клиента
+ * java -cp iCard.jar ru.mrak.iCard.Client -config [result path] [source path]
+ */
+public class Client {
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    public static void main(String[] args) {
+        if(args == null || args.length == 0 || args[0].equals("server")) {
+            Main.main(args);
+            return;
+        }
+        String[] request = args.clone();
+        //Папка для результатов или файл списка
+        request = resolve(request, 1);
+        //Папка с исходными файлами, в пакетном режиме ее нет
+        if(!args[0].contains("b")) request = resolve(request, 2);
+        String token;
+        Path tokenPath = Server.tokenPath();
+        try {
+            token = new String(Files.readAllBytes(tokenPath), StandardCharsets.UTF_8).trim();
+        } catch (NoSuchFileException e) {
+            System.out.println("Сервер не запущен, запуск выполняется без сервера");
+            Main.main(args);
+            return;
+        } catch (IOException e) {
+            System.out.println("Не удалось прочитать ключ сервера " + tokenPath + ": " + e.getMessage());
+            Main.main(args);
+            return;
+        }
+        int port = FProperties.globalServerPort();
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+        } catch (ConnectException e) {
+            System.out.println("Сервер не запущен, запуск выполняется без сервера");
+            Main.main(args);
+            return;
+        } catch (IOException e) {
+            System.out.println("Не удалось подключиться к серверу на порту " + port + ": " + e.getMessage());
+            Main.main(args);
+            return;
+        }
+        int status = 1;
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write((token + "\n" + String.join("\t", request) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if(line.startsWith(Server.EXIT_MARKER)) {
+                    status = Integer.parseInt(line.substring(Server.EXIT_MARKER.length()).trim());
+                    break;
+                }
+                System.out.println(line);
+            }
+            if(line == null) System.out.println("Сервер разорвал соединение");
+        } catch (IOException e) {
+            System.out.println("Соединение с сервером прервано: " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //Соединение уже закрыто
+            }
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Заменяет путь в параметрах абсолютным путем от текущей папки, недостающий путь - текущей папкой
+     * @param args - параметры
+     * @param index - номер параметра с путем
+     * @return параметры с абсолютным путем
+     */
+    private static String[] resolve(String[] args, int index) {
+        String[] resolved = args;
+        if(resolved.length <= index) {
+            resolved = new String[index + 1];
+            System.arraycopy(args, 0, resolved, 0, args.length);
+            for(int i = args.length; i <= index; i++) {
+                resolved[i] = "";
+            }
+        }
+        resolved[index] = Paths.get("").toAbsolutePath().resolve(resolved[index]).toString();
+        return resolved;
+    }
+}
@@ -9,7 +9,16 @@ import java.util.*;
  *  delete - удаление исходных фалов;
  *  createWB - создание документа "Информационно-удостовверяющий лист";
  *  assayFilenameExtension - сравнение расширения файлов из рабочей папки со списком допустимых расширений для выбора с
- *  какими файлами работать
+ *  какими файлами работать;
+ *  rehash - пересчет контрольных сумм всех файлов без использования кеша;
+ *  recursive - обход вложенных папок;
+ *  watch - наблюдение за папкой с исходными файлами и обновление листа при изменениях;
+ *  metrics - запись сводки замеров этапов в папку с результатами;
+ *  progress - вывод хода обработки вместо параметров каждого файла;
+ *  manifest - запись перечня документов в CSV или JSON Lines в папку с результатами;
+ *  batch - обработка проектов из списка за один запуск;
+ *  resume - продолжение прерванного запуска по журналу в папке с результатами;
+ *  keepGoing - продолжение обработки остальных файлов при ошибке файла с отчетом об ошибках в конце
  *
  * При неправильно заданной конфигурации на консоль выводится предупреждение и приложение завершается
  */
@@ -18,8 +27,17 @@ public class Config {
     private boolean delete;
     private boolean createWB;
     private boolean assayFilenameExtension;
-
-    private static Character[] configChars = {'r', 'd', 'c', 'a'};
+    private boolean rehash;
+    private boolean recursive;
+    private boolean watch;
+    private boolean metrics;
+    private boolean progress;
+    private boolean manifest;
+    private boolean batch;
+    private boolean resume;
+    private boolean keepGoing;
+
+    private static Character[] configChars = {'r', 'd', 'c', 'a', 'f', 's', 'w', 'm', 'p', 'l', 'b', 'u', 'k'};
 
     private Config() {}
 
@@ -28,7 +46,16 @@ public class Config {
      * r(ename) - переименование файлов в формат IGUL123456789;
      * d(elete) - удаляет исходные файлы;
      * c(reate) - создает информационно-удостоверяющий лист;
-     * a(ssay) - работает с файлами имеющими расширение из файла свойств.
+     * a(ssay) - работает с файлами имеющими расширение из файла свойств;
+     * f(orce) - пересчитывает контрольные суммы всех файлов, не используя кеш;
+     * s(ubfolders) - обрабатывает файлы во вложенных папках;
+     * w(atch) - следит за папкой с исходными файлами и обрабатывает новые и измененные файлы;
+     * m(etrics) - записывает сводку замеров этапов в папку с результатами;
+     * p(rogress) - выводит ход обработки вместо параметров каждого файла;
+     * l(ist) - записывает перечень документов в папку с результатами;
+     * b(atch) - обрабатывает проекты из списка, вместо папок передается файл списка;
+     * u(nfinished) - продолжает прерванный запуск, завершенные файлы берутся из журнала;
+     * k(eep) - при ошибке файла продолжает обработку остальных файлов, ошибки выводятся в конце.
      * ключь может повторятся
      * При неправильно заданной конфигурации на консоль выводится предупреждение и приложение завершается
      * @param config строка конфигурации
@@ -45,14 +72,22 @@ public class Config {
         }
         Set<Character> configCharsSet = new HashSet<Character>(Arrays.asList(configChars));
         if(!configCharsSet.containsAll(configSet)) {
-            System.out.println("Конфигурация задана неправильно");
-            System.exit(0);
+            throw new RunFailure("Конфигурация задана неправильно");
         }
         Config conf = new Config();
         if(configSet.contains(configChars[0])) conf.rename = true;
         if(configSet.contains(configChars[1])) conf.delete = true;
         if(configSet.contains(configChars[2])) conf.createWB = true;
         if(configSet.contains(configChars[3])) conf.assayFilenameExtension = true;
+        if(configSet.contains(configChars[4])) conf.rehash = true;
+        if(configSet.contains(configChars[5])) conf.recursive = true;
+        if(configSet.contains(configChars[6])) conf.watch = true;
+        if(configSet.contains(configChars[7])) conf.metrics = true;
+        if(configSet.contains(configChars[8])) conf.progress = true;
+        if(configSet.contains(configChars[9])) conf.manifest = true;
+        if(configSet.contains(configChars[10])) conf.batch = true;
+        if(configSet.contains(configChars[11])) conf.resume = true;
+        if(configSet.contains(configChars[12])) conf.keepGoing = true;
 
         return conf;
     }
@@ -63,6 +98,15 @@ public class Config {
         if(delete) string.append('d');
         if(createWB) string.append('c');
         if(assayFilenameExtension) string.append('a');
+        if(rehash) string.append('f');
+        if(recursive) string.append('s');
+        if(watch) string.append('w');
+        if(metrics) string.append('m');
+        if(progress) string.append('p');
+        if(manifest) string.append('l');
+        if(batch) string.append('b');
+        if(resume) string.append('u');
+        if(keepGoing) string.append('k');
         return string.toString();
     }
 
@@ -98,6 +142,78 @@ public class Config {
         this.assayFilenameExtension = assayFilenameExtension;
     }
 
+    public boolean isRehash() {
+        return rehash;
+    }
+
+    public void setRehash(boolean rehash) {
+        this.rehash = rehash;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isProgress() {
+        return progress;
+    }
+
+    public void setProgress(boolean progress) {
+        this.progress = progress;
+    }
+
+    public boolean isManifest() {
+        return manifest;
+    }
+
+    public void setManifest(boolean manifest) {
+        this.manifest = manifest;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public boolean isKeepGoing() {
+        return keepGoing;
+    }
+
+    public void setKeepGoing(boolean keepGoing) {
+        this.keepGoing = keepGoing;
+    }
+
     @Override
     public String toString() {
         return "Config{" +
@@ -105,6 +221,15 @@ public class Config {
                 ", delete=" + delete +
                 ", createWB=" + createWB +
                 ", assayFilenameExtension=" + assayFilenameExtension +
+                ", rehash=" + rehash +
+                ", recursive=" + recursive +
+                ", watch=" + watch +
+                ", metrics=" + metrics +
+                ", progress=" + progress +
+                ", manifest=" + manifest +
+                ", batch=" + batch +
+                ", resume=" + resume +
+                ", keepGoing=" + keepGoing +
                 '}';
     }
 
@@ -1,27 +1,53 @@
 package ru.mrak.iCard;
 
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import ru.mrak.iCard.util.DigestAlgorithm;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * Хранит параметры документа
  * designation - обозначение документа
  * name - наименование документа
- * md5 - контрольная сумма
+ * digests - контрольные суммы по алгоритмам, md5 - одна из них
  * fileName - имя файла
  * size - размер файла
- * date - дата последнего редактирования
+ * modified - дата последнего редактирования в миллисекундах
  * version - версия
  * releaseNumber - номер релиза
  * author - автор
+ * error - ошибка обработки файла, null если файл обработан
+ *
+ * Документов в архиве сотни тысяч, поэтому параметры хранятся компактно: размер и дата - числами,
+ * контрольные суммы - байтами. Повторяющиеся строки (версия, номер релиза) FilesReplace берет из общей
+ * для запуска карты. В текст размер, дата и суммы переводятся только при выводе в лист, перечень и консоль
  */
 public class EntryDoc {
+    //Размер или дата не заданы
+    public static final long UNKNOWN = Long.MIN_VALUE;
+    //В отличие от SimpleDateFormat можно использовать из нескольких потоков, тома листа формируются параллельно
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final DigestAlgorithm[] ALGORITHMS = DigestAlgorithm.values();
+
     private String designation;
     private String name;
-    private String md5;
+    //Контрольные суммы одним массивом в порядке алгоритмов: длина суммы байтом, затем ее байты,
+    //в digestMask взведены биты алгоритмов, суммы которых есть в массиве
+    private byte[] digests;
+    private int digestMask;
     private String fileName;
-    private String size;
-    private String date;
+    private long size = UNKNOWN;
+    private long modified = UNKNOWN;
     private String version;
     private String releaseNumber;
     private String author;
+    private String error;
 
     public String getDesignation() {
         return designation;
@@ -40,11 +66,78 @@ public class EntryDoc {
     }
 
     public String getMd5() {
-        return md5;
+        return getDigest(DigestAlgorithm.MD5);
     }
 
     public void setMd5(String md5) {
-        this.md5 = md5;
+        setDigest(DigestAlgorithm.MD5, md5);
+    }
+
+    /**
+     * @param algorithm - алгоритм контрольной суммы
+     * @return контрольная сумма в шестнадцатеричном виде или null если ее нет
+     */
+    public String getDigest(DigestAlgorithm algorithm) {
+        if((digestMask & bit(algorithm)) == 0) return null;
+        int offset = offset(algorithm);
+        return Hex.encodeHexString(Arrays.copyOfRange(digests, offset + 1, offset + 1 + (digests[offset] & 0xFF)));
+    }
+
+    /**
+     * @param algorithm - алгоритм контрольной суммы
+     * @param digest - контрольная сумма в шестнадцатеричном виде, null или не шестнадцатеричная строка удаляет сумму
+     */
+    public void setDigest(DigestAlgorithm algorithm, String digest) {
+        byte[] bytes = null;
+        if(digest != null) {
+            try {
+                bytes = Hex.decodeHex(digest.toCharArray());
+            } catch (DecoderException e) {
+                //Сумма из поврежденного кеша или журнала не сохраняется
+            }
+            if(bytes != null && bytes.length > 0xFF) bytes = null;
+        }
+        int offset = offset(algorithm);
+        int oldLength = (digestMask & bit(algorithm)) != 0 ? 1 + (digests[offset] & 0xFF) : 0;
+        int newLength = bytes != null ? 1 + bytes.length : 0;
+        int total = digests != null ? digests.length : 0;
+        byte[] updated = new byte[total - oldLength + newLength];
+        if(offset > 0) System.arraycopy(digests, 0, updated, 0, offset);
+        if(bytes != null) {
+            updated[offset] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, updated, offset + 1, bytes.length);
+        }
+        if(total > offset + oldLength) {
+            System.arraycopy(digests, offset + oldLength, updated, offset + newLength, total - offset - oldLength);
+        }
+        digests = updated.length > 0 ? updated : null;
+        digestMask = bytes != null ? digestMask | bit(algorithm) : digestMask & ~bit(algorithm);
+    }
+
+    private static int bit(DigestAlgorithm algorithm) {
+        return 1 << algorithm.ordinal();
+    }
+
+    /**
+     * @return начало суммы алгоритма в массиве: суммы предыдущих алгоритмов идут раньше
+     */
+    private int offset(DigestAlgorithm algorithm) {
+        int offset = 0;
+        for(int i = 0; i < algorithm.ordinal(); i++) {
+            if((digestMask & (1 << i)) != 0) offset += 1 + (digests[offset] & 0xFF);
+        }
+        return offset;
+    }
+
+    /**
+     * @return контрольные суммы по алгоритмам в шестнадцатеричном виде, новая карта при каждом вызове
+     */
+    public Map<DigestAlgorithm, String> getDigests() {
+        Map<DigestAlgorithm, String> map = new EnumMap<>(DigestAlgorithm.class);
+        for(DigestAlgorithm algorithm : ALGORITHMS) {
+            if((digestMask & bit(algorithm)) != 0) map.put(algorithm, getDigest(algorithm));
+        }
+        return map;
     }
 
     public String getFileName() {
@@ -55,20 +148,41 @@ public class EntryDoc {
         this.fileName = fileName;
     }
 
-    public String getSize() {
+    /**
+     * @return размер файла в байтах или UNKNOWN
+     */
+    public long getSize() {
         return size;
     }
 
-    public void setSize(String size) {
+    public void setSize(long size) {
         this.size = size;
     }
 
-    public String getDate() {
-        return date;
+    /**
+     * @return размер файла для вывода или null если размер не задан
+     */
+    public String formatSize() {
+        return size != UNKNOWN ? Long.toString(size) : null;
     }
 
-    public void setDate(String date) {
-        this.date = date;
+    /**
+     * @return дата последнего редактирования в миллисекундах или UNKNOWN
+     */
+    public long getModified() {
+        return modified;
+    }
+
+    public void setModified(long modified) {
+        this.modified = modified;
+    }
+
+    /**
+     * @return дата последнего редактирования в виде dd.MM.yyyy или null если дата не задана
+     */
+    public String getDate() {
+        if(modified == UNKNOWN) return null;
+        return DATE_FORMAT.format(Instant.ofEpochMilli(modified).atZone(ZoneId.systemDefault()));
     }
 
     public String getVersion() {
@@ -95,17 +209,34 @@ public class EntryDoc {
         this.author = author;
     }
 
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
     @Override
     public String toString() {
+        StringBuilder digestLines = new StringBuilder();
+        Map<DigestAlgorithm, String> digestMap = getDigests();
+        if(digestMap.isEmpty()) digestLines.append("MD5: \n");
+        for(Map.Entry<DigestAlgorithm, String> digest : digestMap.entrySet()) {
+            digestLines.append(digest.getKey().getTitle()).append(": ").append(digest.getValue()).append('\n');
+        }
+        String size = formatSize();
+        String date = getDate();
         return  "Обозначение: " + (designation != null ? designation : "") + '\n' +
                 "Наименование: " + (name != null ? name : "")+ '\n' +
-                "MD5: " + (md5 != null ? md5 : "")+ '\n' +
+                digestLines +
                 "Новое имя файла: " + (fileName != null ? fileName : "")+ '\n' +
                 "Размер файла: " + (size != null ? size : "")+ '\n' +
                 "Дата последнего редактирования: " + (date != null ? date : "")+ '\n' +
                 "Версия: " + (version != null ? version : "")+ '\n' +
                 "Номер релиза: " + (releaseNumber != null ? releaseNumber : "")+ '\n' +
                 "Автор: " + (author != null ? author : "")+ '\n' +
+                (error != null ? "Ошибка: " + error + '\n' : "") +
                 "-----------------------\n";
     }
 }
@@ -1,5 +1,7 @@
 package ru.mrak.iCard;
 
+import ru.mrak.iCard.util.DigestAlgorithm;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -8,7 +10,14 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Считывает конфигурацию из папки с приложением и из рабочей папки
@@ -19,6 +28,23 @@ import java.util.Properties;
  * author - автор информационно-удостоверяющего листа
  * checked - проверяющий информационно-удостоверяющего листа
  * approved - утверждающий информационно-удостоверяющий лист
+ * threads - количество потоков для обработки файлов
+ * bytesInFlight - предельный суммарный размер одновременно обрабатываемых файлов в мегабайтах
+ * digestCacheFingerprint - сверять ли начало и конец файла при использовании кеша контрольных сумм
+ * watchDebounce - пауза в секундах, после которой лист пересобирается в режиме наблюдения
+ * digests - алгоритмы контрольных сумм, которые считаются для каждого файла
+ * sheetDigests - алгоритмы контрольных сумм, которые выводятся в информационно-удостоверяющий лист
+ * outputFormat - формат информационно-удостоверяющего листа: xls или xlsx
+ * template - файл шаблона информационно-удостоверяющего листа относительно исходной папки
+ * volumePages - количество страниц в одном томе информационно-удостоверяющего листа, 0 - без разбиения на тома
+ * xlsWriter - запись листа xls: poi - через книгу POI, biff - прямая запись BIFF8
+ * manifestFormat - формат перечня документов: csv или jsonl
+ * batchProjects - количество проектов, которые обрабатываются одновременно в пакетном режиме
+ * batchIoThreads - количество потоков чтения и записи файлов, общее для всех проектов пакетного режима
+ * serverPort - порт сервера на локальном адресе
+ * retries - количество повторов чтения, копирования и удаления файла при временной ошибке
+ * retryDelay - пауза перед первым повтором в миллисекундах, перед каждым следующим удваивается
+ * failedEntries - файлы с ошибками в информационно-удостоверяющем листе: mark - отмечаются, omit - пропускаются
  */
 public class FProperties {
     private String[] documentCodeCyr = {"СБ", "МЭ", "ТУ"};
@@ -27,7 +53,11 @@ public class FProperties {
     private String author = "Разработал";
     private String checked = "";
     private String approved = "";
-    private String nameRegexp = "^(ИГУЛ|IGUL)\\.?(\\d{6})\\.?(\\d{3})(-(\\d{2}))?\\s*_?([А-Яа-яA-Za-z]{1,2}[0-9]{0,2})?(_([0-9]{1,2}))?(\\s(.*))?\\.([A-Za-z]{3,5})$";
+    public static final String DEFAULT_NAME_REGEXP = "^(ИГУЛ|IGUL)\\.?(\\d{6})\\.?(\\d{3})(-(\\d{2}))?\\s*_?([А-Яа-яA-Za-z]{1,2}[0-9]{0,2})?(_([0-9]{1,2}))?(\\s(.*))?\\.([A-Za-z]{3,5})$";
+
+    private String nameRegexp = DEFAULT_NAME_REGEXP;
+    private Pattern namePattern;
+    private boolean defaultNameGrammar;
     private int organizationCod = 1;
     private int characteristic = 2;
     private int registrationNumber = 3;
@@ -36,27 +66,39 @@ public class FProperties {
     private int documentVersion = 8;
     private int documentName = 10;
     private int filenameExtension = 11;
+    private int threads = 1;
+    private long bytesInFlight = 256;
+    private boolean digestCacheFingerprint = false;
+    private int watchDebounce = 5;
+    private List<DigestAlgorithm> digests = Collections.singletonList(DigestAlgorithm.MD5);
+    private List<DigestAlgorithm> sheetDigests = Collections.singletonList(DigestAlgorithm.MD5);
+    private String outputFormat = "xls";
+    private String templateName = "";
+    private Path template;
+    private int volumePages = 0;
+    private String xlsWriter = "poi";
+    private String manifestFormat = "csv";
+    private int batchProjects = 2;
+    private int batchIoThreads = 4;
+    public static final int DEFAULT_SERVER_PORT = 47017;
+    private int serverPort = DEFAULT_SERVER_PORT;
+    private int retries = 0;
+    private long retryDelay = 500;
+    private String failedEntries = "mark";
+
+    //Глобальные свойства и скомпилированные выражения имени общие для всех проектов пакетного режима
+    private static Properties globalProperties;
+    private static final Map<String, Pattern> namePatterns = new ConcurrentHashMap<>();
 
     /**
      * Пытается прочитать конфигурацию сначала из папки с приложением, затем из рабочей папки
      * Если считать не удалось, выводит предупреждение в консоль и возвращает объект с значениями по умолчанию
      */
     public FProperties(String source) {
-        String jarPath = FProperties.class.getProtectionDomain().getCodeSource().getLocation().getPath();
-        String globalPath = jarPath.substring(1,jarPath.lastIndexOf("/")) + "/properties.ini";
-        Path globalProperties = Paths.get(globalPath);
         Properties properties = new Properties();
-        if(Files.exists(globalProperties)) {
-            try(InputStreamReader stream = new InputStreamReader(new FileInputStream(globalProperties.toAbsolutePath().toString()), "UTF-8")) {
-                properties.load(stream);
-                readProperties(properties);
-            } catch (IOException e) {
-                System.out.println("Не получилось открыть файл глобальных свойств по пути: " + globalProperties.toAbsolutePath().toString());
-            }
-        } else {
-            System.out.println("Нет файла глобальных свойств по пути: " + globalProperties.toAbsolutePath().toString());
-        }
-        Path localProperties = Paths.get(source + "\\properties.ini");
+        properties.putAll(loadGlobalProperties());
+        readProperties(properties);
+        Path localProperties = Paths.get(source).resolve("properties.ini");
         if(Files.exists(localProperties)) {
             try (InputStreamReader stream = new InputStreamReader(new FileInputStream(localProperties.toAbsolutePath().toString()), "UTF-8")) {
                 properties.load(stream);
@@ -67,6 +109,130 @@ public class FProperties {
         } else {
             System.out.println("Нет файла локальных свойств по пути: " + localProperties.toAbsolutePath().toString());
         }
+        compileNamePattern();
+        checkDigests();
+        resolveTemplate(source);
+    }
+
+    /**
+     * Читает глобальные свойства из папки с приложением один раз на запуск
+     * @return глобальные свойства, пустые если файла нет или его не удалось прочитать
+     */
+    private static synchronized Properties loadGlobalProperties() {
+        if(globalProperties != null) return globalProperties;
+        globalProperties = new Properties();
+        String jarPath = FProperties.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+        String globalPath = jarPath.substring(1,jarPath.lastIndexOf("/")) + "/properties.ini";
+        Path globalFile = Paths.get(globalPath);
+        if(Files.exists(globalFile)) {
+            try(InputStreamReader stream = new InputStreamReader(new FileInputStream(globalFile.toAbsolutePath().toString()), "UTF-8")) {
+                globalProperties.load(stream);
+            } catch (IOException e) {
+                System.out.println("Не получилось открыть файл глобальных свойств по пути: " + globalFile.toAbsolutePath().toString());
+            }
+        } else {
+            System.out.println("Нет файла глобальных свойств по пути: " + globalFile.toAbsolutePath().toString());
+        }
+        return globalProperties;
+    }
+
+    /**
+     * Порт сервера для клиента, которому остальные свойства не нужны
+     * @return порт из глобальных свойств или порт по умолчанию
+     */
+    public static int globalServerPort() {
+        String port = loadGlobalProperties().getProperty("serverPort");
+        if(port == null) return DEFAULT_SERVER_PORT;
+        try {
+            return Integer.parseInt(port.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Свойство serverPort должно быть числом");
+            return DEFAULT_SERVER_PORT;
+        }
+    }
+
+    /**
+     * Находит файл шаблона относительно исходной папки, формат листа берется из расширения шаблона
+     * @param source - исходная папка
+     */
+    private void resolveTemplate(String source) {
+        if(templateName.isEmpty()) return;
+        String name = templateName.toLowerCase();
+        String format = name.substring(name.lastIndexOf('.') + 1);
+        if(!format.equals("xls") && !format.equals("xlsx")) {
+            System.out.println("Шаблон должен быть файлом xls или xlsx, лист будет сформирован без шаблона");
+            return;
+        }
+        template = Paths.get(source).resolve(templateName);
+        outputFormat = format;
+    }
+
+    /**
+     * Оставляет только алгоритмы, доступные в текущей Java
+     * Алгоритмы, выводимые в лист, всегда считаются
+     */
+    private void checkDigests() {
+        List<DigestAlgorithm> available = new ArrayList<>();
+        for(DigestAlgorithm algorithm : digests) {
+            if(algorithm.isAvailable()) {
+                available.add(algorithm);
+            } else {
+                System.out.println("Алгоритм контрольной суммы недоступен: " + algorithm.getTitle());
+            }
+        }
+        List<DigestAlgorithm> availableSheet = new ArrayList<>();
+        for(DigestAlgorithm algorithm : sheetDigests) {
+            if(!algorithm.isAvailable()) continue;
+            availableSheet.add(algorithm);
+            if(!available.contains(algorithm)) available.add(algorithm);
+        }
+        digests = available;
+        sheetDigests = availableSheet;
+    }
+
+    /**
+     * Разбирает список алгоритмов контрольных сумм
+     * @param key - ключ свойства
+     * @param value - список через запятую
+     * @return алгоритмы в порядке перечисления
+     */
+    private static List<DigestAlgorithm> parseDigests(String key, String value) {
+        List<DigestAlgorithm> algorithms = new ArrayList<>();
+        for(String title : value.split("[,;\\s]")) {
+            if(title.isEmpty()) continue;
+            DigestAlgorithm algorithm = DigestAlgorithm.byTitle(title);
+            if(algorithm == null) {
+                System.out.println("Свойство " + key + " содержит неизвестный алгоритм: " + title);
+            } else if(!algorithms.contains(algorithm)) {
+                algorithms.add(algorithm);
+            }
+        }
+        return algorithms;
+    }
+
+    /**
+     * Компилирует регулярное выражение для имени файла один раз на объект свойств
+     * Для выражения и номеров блоков по умолчанию имя разбирается без регулярного выражения
+     */
+    private void compileNamePattern() {
+        try {
+            namePattern = namePatterns.get(nameRegexp);
+            if(namePattern == null) {
+                namePattern = Pattern.compile(nameRegexp);
+                namePatterns.put(nameRegexp, namePattern);
+            }
+        } catch (PatternSyntaxException e) {
+            throw new RunFailure("Свойство nameRegexp задано неправильно: " + e.getDescription());
+        }
+        defaultNameGrammar = DEFAULT_NAME_REGEXP.equals(nameRegexp)
+                && organizationCod == 1
+                && characteristic == 2
+                && registrationNumber == 3
+                && species == 5
+                && documentCode == 6
+                && documentVersion == 8
+                && documentName == 10
+                && filenameExtension == 11;
     }
 
     private void readProperties(Properties properties) {
@@ -100,53 +266,160 @@ public class FProperties {
         }
         if(properties.containsKey("characteristic")) {
             try {
-                organizationCod = Integer.parseInt(properties.getProperty("characteristic"));
+                characteristic = Integer.parseInt(properties.getProperty("characteristic"));
             } catch (NumberFormatException e) {
                 System.out.println("Свойство characteristic должно быть числом");
             }
         }
         if(properties.containsKey("registrationNumber")) {
             try {
-                organizationCod = Integer.parseInt(properties.getProperty("registrationNumber"));
+                registrationNumber = Integer.parseInt(properties.getProperty("registrationNumber"));
             } catch (NumberFormatException e) {
                 System.out.println("Свойство registrationNumber должно быть числом");
             }
         }
         if(properties.containsKey("species")) {
             try {
-                organizationCod = Integer.parseInt(properties.getProperty("species"));
+                species = Integer.parseInt(properties.getProperty("species"));
             } catch (NumberFormatException e) {
                 System.out.println("Свойство species должно быть числом");
             }
         }
         if(properties.containsKey("documentCode")) {
             try {
-                organizationCod = Integer.parseInt(properties.getProperty("documentCode"));
+                documentCode = Integer.parseInt(properties.getProperty("documentCode"));
             } catch (NumberFormatException e) {
                 System.out.println("Свойство documentCode должно быть числом");
             }
         }
         if(properties.containsKey("documentVersion")) {
             try {
-                organizationCod = Integer.parseInt(properties.getProperty("documentVersion"));
+                documentVersion = Integer.parseInt(properties.getProperty("documentVersion"));
             } catch (NumberFormatException e) {
                 System.out.println("Свойство documentVersion должно быть числом");
             }
         }
         if(properties.containsKey("documentName")) {
             try {
-                organizationCod = Integer.parseInt(properties.getProperty("documentName"));
+                documentName = Integer.parseInt(properties.getProperty("documentName"));
             } catch (NumberFormatException e) {
                 System.out.println("Свойство documentName должно быть числом");
             }
         }
         if(properties.containsKey("filenameExtension")) {
             try {
-                organizationCod = Integer.parseInt(properties.getProperty("filenameExtension"));
+                filenameExtension = Integer.parseInt(properties.getProperty("filenameExtension"));
             } catch (NumberFormatException e) {
                 System.out.println("Свойство filenameExtension должно быть числом");
             }
         }
+        if(properties.containsKey("threads")) {
+            try {
+                threads = Math.max(1, Integer.parseInt(properties.getProperty("threads")));
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство threads должно быть числом");
+            }
+        }
+        if(properties.containsKey("bytesInFlight")) {
+            try {
+                bytesInFlight = Math.max(1, Long.parseLong(properties.getProperty("bytesInFlight")));
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство bytesInFlight должно быть числом");
+            }
+        }
+        if(properties.containsKey("digestCacheFingerprint")) {
+            digestCacheFingerprint = Boolean.parseBoolean(properties.getProperty("digestCacheFingerprint").trim());
+        }
+        if(properties.containsKey("watchDebounce")) {
+            try {
+                watchDebounce = Math.max(1, Integer.parseInt(properties.getProperty("watchDebounce")));
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство watchDebounce должно быть числом");
+            }
+        }
+        if(properties.containsKey("digests")) {
+            digests = parseDigests("digests", properties.getProperty("digests"));
+        }
+        if(properties.containsKey("sheetDigests")) {
+            sheetDigests = parseDigests("sheetDigests", properties.getProperty("sheetDigests"));
+        }
+        if(properties.containsKey("outputFormat")) {
+            String format = properties.getProperty("outputFormat").trim().toLowerCase();
+            if(format.equals("xls") || format.equals("xlsx")) {
+                outputFormat = format;
+            } else {
+                System.out.println("Свойство outputFormat должно быть xls или xlsx");
+            }
+        }
+        if(properties.containsKey("template")) {
+            templateName = properties.getProperty("template").trim();
+        }
+        if(properties.containsKey("volumePages")) {
+            try {
+                volumePages = Math.max(0, Integer.parseInt(properties.getProperty("volumePages")));
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство volumePages должно быть числом");
+            }
+        }
+        if(properties.containsKey("xlsWriter")) {
+            String writer = properties.getProperty("xlsWriter").trim().toLowerCase();
+            if(writer.equals("poi") || writer.equals("biff")) {
+                xlsWriter = writer;
+            } else {
+                System.out.println("Свойство xlsWriter должно быть poi или biff");
+            }
+        }
+        if(properties.containsKey("manifestFormat")) {
+            String format = properties.getProperty("manifestFormat").trim().toLowerCase();
+            if(format.equals("csv") || format.equals("jsonl")) {
+                manifestFormat = format;
+            } else {
+                System.out.println("Свойство manifestFormat должно быть csv или jsonl");
+            }
+        }
+        if(properties.containsKey("batchProjects")) {
+            try {
+                batchProjects = Math.max(1, Integer.parseInt(properties.getProperty("batchProjects")));
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство batchProjects должно быть числом");
+            }
+        }
+        if(properties.containsKey("batchIoThreads")) {
+            try {
+                batchIoThreads = Math.max(1, Integer.parseInt(properties.getProperty("batchIoThreads")));
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство batchIoThreads должно быть числом");
+            }
+        }
+        if(properties.containsKey("serverPort")) {
+            try {
+                serverPort = Integer.parseInt(properties.getProperty("serverPort").trim());
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство serverPort должно быть числом");
+            }
+        }
+        if(properties.containsKey("retries")) {
+            try {
+                retries = Math.max(0, Integer.parseInt(properties.getProperty("retries").trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство retries должно быть числом");
+            }
+        }
+        if(properties.containsKey("retryDelay")) {
+            try {
+                retryDelay = Math.max(0, Long.parseLong(properties.getProperty("retryDelay").trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Свойство retryDelay должно быть числом");
+            }
+        }
+        if(properties.containsKey("failedEntries")) {
+            String failed = properties.getProperty("failedEntries").trim().toLowerCase();
+            if(failed.equals("mark") || failed.equals("omit")) {
+                failedEntries = failed;
+            } else {
+                System.out.println("Свойство failedEntries должно быть mark или omit");
+            }
+        }
     }
 
     public String[] getDocumentCodeCyr() {
@@ -177,6 +450,14 @@ public class FProperties {
         return nameRegexp;
     }
 
+    public Pattern getNamePattern() {
+        return namePattern;
+    }
+
+    public boolean isDefaultNameGrammar() {
+        return defaultNameGrammar;
+    }
+
     public int getOrganizationCod() {
         return organizationCod;
     }
@@ -208,4 +489,75 @@ public class FProperties {
     public int getFilenameExtension() {
         return filenameExtension;
     }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getBytesInFlight() {
+        return bytesInFlight;
+    }
+
+    public boolean isDigestCacheFingerprint() {
+        return digestCacheFingerprint;
+    }
+
+    public int getWatchDebounce() {
+        return watchDebounce;
+    }
+
+    public List<DigestAlgorithm> getDigests() {
+        return digests;
+    }
+
+    public List<DigestAlgorithm> getSheetDigests() {
+        return sheetDigests;
+    }
+
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * @return файл шаблона листа или null, если лист формируется без шаблона
+     */
+    public Path getTemplate() {
+        return template;
+    }
+
+    public int getVolumePages() {
+        return volumePages;
+    }
+
+    public String getXlsWriter() {
+        return xlsWriter;
+    }
+
+    public String getManifestFormat() {
+        return manifestFormat;
+    }
+
+    public int getBatchProjects() {
+        return batchProjects;
+    }
+
+    public int getBatchIoThreads() {
+        return batchIoThreads;
+    }
+
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    public String getFailedEntries() {
+        return failedEntries;
+    }
 }
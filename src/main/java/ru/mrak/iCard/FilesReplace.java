@@ -1,18 +1,26 @@
 package ru.mrak.iCard;
 
-import org.apache.commons.codec.binary.Hex;
+import ru.mrak.iCard.util.ByteBudget;
+import ru.mrak.iCard.util.DigestAlgorithm;
+import ru.mrak.iCard.util.DigestCache;
+import ru.mrak.iCard.util.DigestCopier;
+import ru.mrak.iCard.util.Metrics;
 import ru.mrak.iCard.util.NameParser;
+import ru.mrak.iCard.util.Progress;
+import ru.mrak.iCard.util.TreeHash;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,24 +35,47 @@ public class FilesReplace {
     private Path sourcePath;
     private String result;
     private Path resultPath;
-    private final List<EntryDoc> entryDocs;
 
     private boolean rename;
     private boolean delete;
     private boolean createWB;
     private boolean assayFilenameExtension;
+    private boolean rehash;
+    private boolean recursive;
+    private boolean showProgress;
+    private boolean manifest;
+    private boolean resume;
+    private boolean keepGoing;
+    private int retries;
+    private long retryDelay;
+    //Журнал запуска, пока идет обработка файлов
+    private RunJournal journal;
+    //Перечень документов, пока идет обработка файлов с ключом l
+    private ManifestWriter manifestWriter;
+    //Ход обработки, пока идет обработка файлов с ключом p
+    private volatile Progress progress;
+    private int threads;
+    //Общие пулы и лимит объема пакетного режима и сервера, null - на каждый проход создаются свои
+    private WorkerPools pools;
+    private DigestCache digestCache;
+    private List<DigestAlgorithm> digestAlgorithms;
+    //Одинаковые версии и номера релиза документов запуска хранятся одной строкой, задания планируются в одном потоке
+    private final Map<String, String> sharedValues = new HashMap<>();
+    //Папки, которые не удалось прочитать при ключе k, с ошибкой, заполняются из потоков обхода
+    private final Map<Path, String> failedFolders = Collections.synchronizedMap(new LinkedHashMap<Path, String>());
 
     private String[] documentCodesCyr;
     private String[] documentCodesLat;
     private String[] filenameExtensions;
     private FProperties properties;
 
-    private static String filenameExtensionPattern = ".+\\.(\\w{3,4})";
+    private static final Pattern filenameExtensionPattern = Pattern.compile(".+\\.(\\w{3,4})");
+    private static final String DIGEST_CACHE_FILE = ".icard-digest";
+    private static final String ERRORS_FILE = "icard-errors.csv";
 
     private FilesReplace(String source, String result) {
         this.source = source;
         this.result = result;
-        entryDocs = new ArrayList<>();
     }
 
     /**
@@ -56,38 +87,120 @@ public class FilesReplace {
      * @return - возвращет список параметров созданный из считанных файлов
      */
     public static List<EntryDoc> replace(String source, String result, Config config, FProperties properties) {
+        return replace(source, result, config, properties, null);
+    }
+
+    /**
+     * Метод выполняет переименовывает, удаляет и собирате информацию, файлы обрабатываются в общих пулах
+     * @param source - директория к исходным файлам
+     * @param result - директория для сохранения результатов работы метода
+     * @param config - конфигурирует метод
+     * @param properties - набор свойств для конфигурирования метода
+     * @param pools - общие пулы, null - создаются свои
+     * @return - возвращет список параметров созданный из считанных файлов
+     */
+    public static List<EntryDoc> replace(String source, String result, Config config, FProperties properties,
+                                         WorkerPools pools) {
+        FilesReplace filesReplace = open(source, result, config, properties);
+        filesReplace.share(pools);
+        return filesReplace.replaceFiles();
+    }
+
+    /**
+     * Обрабатывает все файлы за один проход и сохраняет кеш контрольных сумм
+     * @return - возвращет список параметров созданный из считанных файлов
+     */
+    public List<EntryDoc> replaceFiles() {
+        List<EntryDoc> entryDocs = new ArrayList<>(walkFiles().values());
+        saveDigestCache();
+        return entryDocs;
+    }
+
+    /**
+     * Проверяет папки и готовит объект к обработке файлов
+     * Используется напрямую, когда файлы обрабатываются не за один проход, например в режиме наблюдения
+     * @param source - директория к исходным файлам
+     * @param result - директория для сохранения результатов работы метода
+     * @param config - конфигурирует метод
+     * @param properties - набор свойств для конфигурирования метода
+     * @return объект для обработки файлов
+     */
+    public static FilesReplace open(String source, String result, Config config, FProperties properties) {
         FilesReplace filesReplace = new FilesReplace(source, result);
         filesReplace.rename = config.isRename();
         filesReplace.delete = config.isDelete();
         filesReplace.createWB = config.isCreateWB();
         filesReplace.assayFilenameExtension = config.isAssayFilenameExtension();
+        filesReplace.rehash = config.isRehash();
+        filesReplace.recursive = config.isRecursive();
+        filesReplace.showProgress = config.isProgress();
+        filesReplace.manifest = config.isManifest();
+        filesReplace.resume = config.isResume();
+        //В режиме наблюдения файл может быть еще не дописан, ошибка не должна завершать наблюдение
+        filesReplace.keepGoing = config.isKeepGoing() || config.isWatch();
+        filesReplace.retries = properties.getRetries();
+        filesReplace.retryDelay = properties.getRetryDelay();
         filesReplace.documentCodesCyr = properties.getDocumentCodeCyr();
         filesReplace.documentCodesLat = properties.getDocumentCodeLat();
         filesReplace.filenameExtensions = properties.getFilenameExtensions();
+        filesReplace.threads = properties.getThreads();
+        filesReplace.digestAlgorithms = filesReplace.createWB || filesReplace.manifest
+                ? properties.getDigests() : Collections.<DigestAlgorithm>emptyList();
         filesReplace.properties = properties;
 
         filesReplace.checkSourcePath();
         filesReplace.createResultPath();
-        filesReplace.walkFiles();
+        if(filesReplace.createWB || filesReplace.manifest) {
+            filesReplace.digestCache = DigestCache.load(filesReplace.resultPath.resolve(DIGEST_CACHE_FILE),
+                    properties.isDigestCacheFingerprint(), filesReplace.rehash);
+        }
+        return filesReplace;
+    }
+
+    /**
+     * Передает общие для нескольких проектов пулы потоков и лимит объема одновременно обрабатываемых файлов
+     * Файлы обрабатываются в общем пуле независимо от свойства threads, размер пула ограничивает
+     * количество файлов, которые читаются и пишутся одновременно во всех проектах
+     * @param pools - общие пулы
+     */
+    public void share(WorkerPools pools) {
+        this.pools = pools;
+    }
 
-        return filesReplace.entryDocs;
+    /**
+     * Сохраняет кеш контрольных сумм
+     */
+    public void saveDigestCache() {
+        if(digestCache != null) {
+            digestCache.save();
+        }
+    }
+
+    public Path getSourcePath() {
+        return sourcePath;
+    }
+
+    public Path getResultPath() {
+        return resultPath;
+    }
+
+    /**
+     * @return количество папок, которые не удалось прочитать при последнем обходе с ключом k
+     */
+    public int getFailedFolders() {
+        return failedFolders.size();
     }
 
     /**
      * Проверяет существует ли папка с исходными файлами
      */
     private void checkSourcePath() {
-        sourcePath = Paths.get(source);
-        if(sourcePath == null || !Files.exists(sourcePath)) {
-            if(sourcePath != null)
-                System.out.println("Такого пути не существует: " + sourcePath.toAbsolutePath().toString());
-            else
-                System.out.println("Такого пути не существует: " + source);
-            System.exit(0);
+        sourcePath = Paths.get(source).toAbsolutePath().normalize();
+        if(!Files.exists(sourcePath)) {
+            throw new RunFailure("Такого пути не существует: " + sourcePath.toAbsolutePath().toString());
         }
         if(!Files.isDirectory(sourcePath)) {
-            System.out.println("Не папка: " + sourcePath.toAbsolutePath().toString());
-            System.exit(0);
+            throw new RunFailure("Не папка: " + sourcePath.toAbsolutePath().toString());
         }
         System.out.println("Папка с исходниками: " + sourcePath.toAbsolutePath());
     }
@@ -96,219 +209,734 @@ public class FilesReplace {
      * Создает папку для результатов
      */
     private void createResultPath() {
-        resultPath = Paths.get(result);
+        resultPath = Paths.get(result).toAbsolutePath().normalize();
         if(Files.exists(resultPath) && !Files.isDirectory(resultPath)) {
-            System.out.println(resultPath.toAbsolutePath() + " - не папка");
-            System.exit(0);
+            throw new RunFailure(resultPath.toAbsolutePath() + " - не папка");
         }
         try {
             if(!Files.exists(resultPath))
                 Files.createDirectories(resultPath);
         } catch (IOException e) {
-            System.out.println("Не удалось создать папку: " + resultPath.toAbsolutePath().toString());
-            System.exit(0);
+            throw new RunFailure("Не удалось создать папку: " + resultPath.toAbsolutePath().toString());
         }
         System.out.println("Папка с результатом: " + resultPath.toAbsolutePath());
     }
 
     /**
-     * Копипует файл
-     * @param file - исходный файл
-     * @param newFile - результирующий файл
+     * Обходит папку проверяя файлы на соответсктвие шаблону
+     * С файлами прошедшими проверку проводит операции в соответсвии с конфигурацией
+     * @return параметры документов по исходным файлам в порядке обхода папки
      */
-    private void copyFile(Path file, Path newFile) {
+    public Map<Path, EntryDoc> walkFiles() {
+        System.out.println("Поиск файлов по: " + NameParser.getEgexp());
+        System.out.println("\n");
+        Metrics.Span walk = Metrics.start(Metrics.Phase.WALK, sourcePath);
+        failedFolders.clear();
+        List<FileTask> files = collectFiles();
+        walk.end(0);
+        journal = RunJournal.open(resultPath, resume);
+        List<FileTask> tasks;
+        List<FileTask> restored;
         try {
-            Files.copy(file, newFile, StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            System.out.println("Не удалось скопировать: " + file.getFileName());
-            System.exit(0);
+            tasks = planFiles(files);
+            //Файлы, завершенные в прерванном запуске, берутся из журнала
+            restored = restoreDeleted(tasks);
+            List<FileTask> pending = new ArrayList<>();
+            for(FileTask task : tasks) {
+                if(task.error != null) {
+                    task.entryDoc.setError(task.error);
+                } else if(restore(task)) {
+                    restored.add(task);
+                } else {
+                    pending.add(task);
+                }
+            }
+            if(resume) System.out.println("Восстановлено из журнала файлов: " + restored.size() + ", осталось обработать: " + pending.size());
+            if(showProgress) {
+                long totalBytes = 0;
+                for(FileTask task : pending) {
+                    totalBytes += task.attributes.size();
+                }
+                progress = Progress.start(pending.size(), totalBytes);
+            }
+            if(manifest) {
+                manifestWriter = ManifestWriter.open(resultPath, properties);
+                for(FileTask task : restored) {
+                    manifestWriter.write(task.entryDoc);
+                }
+            }
+            if(threads > 1 || pools != null) {
+                processParallel(pending);
+            } else {
+                for(FileTask task : pending) {
+                    processFile(task);
+                }
+            }
+        } finally {
+            //Журнал, ход обработки и перечень закрываются и при прерванном ошибкой проходе
+            closeOutputs();
+        }
+        if(keepGoing) reportErrors(tasks);
+        Map<Path, EntryDoc> entryDocs = new LinkedHashMap<>();
+        for(FileTask task : restored) {
+            if(task.attributes == null) entryDocs.put(task.file, task.entryDoc);
+        }
+        for(FileTask task : tasks) {
+            entryDocs.put(task.file, task.entryDoc);
+        }
+        return entryDocs;
+    }
+
+    /**
+     * Закрывает журнал и перечень, завершает вывод хода обработки
+     */
+    private void closeOutputs() {
+        if(journal != null) {
+            journal.close();
+            journal = null;
+        }
+        if(progress != null) {
+            progress.finish();
+            progress = null;
+        }
+        if(manifestWriter != null) {
+            manifestWriter.close();
+            manifestWriter = null;
+        }
+    }
+
+    /**
+     * Восстанавливает из журнала документы, исходные файлы которых удалены в прерванном запуске
+     * @param tasks - задания по найденным файлам
+     * @return задания с восстановленными параметрами документов
+     */
+    private List<FileTask> restoreDeleted(List<FileTask> tasks) {
+        List<FileTask> restored = new ArrayList<>();
+        if(!resume) return restored;
+        Set<Path> found = new HashSet<>();
+        for(FileTask task : tasks) {
+            found.add(task.file);
+        }
+        for(RunJournal.Entry entry : journal.getEntries()) {
+            //Файл без отметки об удалении мог быть удален после записи в журнал, перед отметкой
+            if(!entry.isDeleted() && !delete) continue;
+            if(found.contains(entry.getSource()) || Files.exists(entry.getSource())) continue;
+            NameParser document = accept(entry.getSource().getFileName().toString());
+            if(document == null) continue;
+            FileTask task = new FileTask(entry.getSource(), null, document);
+            planFile(task);
+            if(!task.entryDoc.getFileName().equals(entry.getNewFileName())) continue;
+            fill(task.entryDoc, entry);
+            restored.add(task);
+        }
+        return restored;
+    }
+
+    /**
+     * Берет параметры документа из журнала, если файл завершен в прерванном запуске и с тех пор не изменился
+     * @param task - задание на обработку файла
+     * @return true если файл обрабатывать не нужно
+     */
+    private boolean restore(FileTask task) {
+        if(!resume) return false;
+        RunJournal.Entry entry = journal.get(task.file);
+        //Без отметки об удалении при ключе d файл не успели удалить, он обрабатывается заново
+        if(entry == null
+                || entry.isDeleted()
+                || delete
+                || entry.getSize() != task.attributes.size()
+                || entry.getModified() != task.attributes.lastModifiedTime().toMillis()
+                || !entry.getNewFileName().equals(task.entryDoc.getFileName())
+                || !entry.getDigests().keySet().containsAll(digestAlgorithms)) return false;
+        if(rename && !task.file.equals(task.newFile) && !Files.exists(task.newFile)) return false;
+        fill(task.entryDoc, entry);
+        if(digestCache != null) digestCache.put(task.file, task.attributes, entry.getDigests());
+        return true;
+    }
+
+    /**
+     * Заполняет параметры документа из записи журнала
+     * @param entryDoc - параметры документа
+     * @param entry - запись журнала
+     */
+    private void fill(EntryDoc entryDoc, RunJournal.Entry entry) {
+        entryDoc.setModified(entry.getModified());
+        entryDoc.setSize(entry.getSize());
+        for(DigestAlgorithm algorithm : digestAlgorithms) {
+            entryDoc.setDigest(algorithm, entry.getDigests().get(algorithm));
         }
     }
 
     /**
-     * Копирует файл и считает его контролтную сумму
+     * Обрабатывает один файл, если он прошел проверку на расширение и наименование
      * @param file - исходный файл
-     * @param newFile - результирующий файл
-     * @return контрольная сумма исходного файла
+     * @return параметры документа или null если файла нет или он не подходит
      */
-    private String copyFileAndComputeMd5(Path file, Path newFile) {
-        MessageDigest messageDigest = null;
+    public EntryDoc processFile(Path file) {
+        BasicFileAttributes attributes;
+        Metrics.Span stat = Metrics.start(Metrics.Phase.STAT, file);
         try {
-            messageDigest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            System.out.println("Нет алгоритма шифрования MD5");
-            System.exit(0);
-        }
-        try (InputStream is = Files.newInputStream(file);
-             OutputStream os = Files.newOutputStream(newFile)){
-            byte[] buffer = new byte[1024];
-            int length;
-            messageDigest.reset();
-            while ((length = is.read(buffer)) > 0) {
-                messageDigest.update(buffer, 0, length);
-                os.write(buffer, 0, length);
-            }
-            byte[] digest = messageDigest.digest();
-            return Hex.encodeHexString(digest);
+            attributes = readAttributes(file);
         } catch (IOException e) {
-            System.out.println("Не удалось скопировать: " + file.getFileName());
-            System.exit(0);
+            stat.end(0);
+            return null;
         }
-        return null;
+        stat.end(0);
+        if(!attributes.isRegularFile()) return null;
+        NameParser document = accept(file.getFileName().toString());
+        if(document == null) return null;
+        FileTask task = new FileTask(file, attributes, document);
+        planFile(task);
+        processFile(task);
+        return task.entryDoc;
     }
 
     /**
-     * Считает контрольную сумму файла
-     * @param file - файл члоя расчета контрольной суммы
-     * @return контрольную сумму файла
+     * Собирает файлы из папки с исходниками прошедшие проверку на расширение и наименование
+     * При обходе вложенных папок каждая папка обходится отдельной задачей в ForkJoinPool
+     * @return список файлов в порядке обхода папки, файлы вложенных папок идут после файлов папки
      */
-    private String computeMd5(Path file) {
-        MessageDigest messageDigest = null;
+    private List<FileTask> collectFiles() {
+        if(!recursive) {
+            return new DirectoryScan(sourcePath).compute();
+        }
+        if(pools != null) {
+            return pools.getScanPool().invoke(new DirectoryScan(sourcePath));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
         try {
-            messageDigest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            System.out.println("Нет алгоритма шифрования MD5");
-            System.exit(0);
-        }
-        try (InputStream is = Files.newInputStream(file)){
-            byte[] buffer = new byte[1024];
-            int length;
-            messageDigest.reset();
-            while ((length = is.read(buffer)) > 0) {
-                messageDigest.update(buffer, 0, length);
+            return pool.invoke(new DirectoryScan(sourcePath));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Проверяет имя файла на расширение и соответствие наименованию документов
+     * @param fileName - имя файла
+     * @return разобранное имя файла или null если файл обрабатывать не нужно
+     */
+    private NameParser accept(String fileName) {
+        Metrics.Span parse = Metrics.start(Metrics.Phase.PARSE, fileName);
+        //Проерека на расширение
+        if(assayFilenameExtension) {
+            Matcher matcher = filenameExtensionPattern.matcher(fileName);
+            if(!matcher.find() || Arrays.asList(filenameExtensions).contains(matcher.group(1))) {
+                parse.end(0);
+                return null;
             }
-            byte[] digest = messageDigest.digest();
-            return Hex.encodeHexString(digest);
-        } catch (IOException e) {
-            System.out.println("Не удалось скопировать: " + file.getFileName());
-            System.exit(0);
         }
-        return null;
+        //Проверка на соответствие наименованию документов
+        NameParser document = NameParser.parser(fileName, properties);
+        parse.end(0);
+        return document;
     }
 
     /**
-     * Обходит папку проверяя файлы на соответсктвие шаблону
-     * С файлами прошедшими проверку проводит операции в соответсвии с конфигурацией
+     * Обходит одну папку, для вложенных папок при рекурсивном обходе создает отдельные задачи
+     * Атрибуты файлов берутся из обхода и повторно не считываются
      */
-    private void walkFiles() {
-        System.out.println("Поиск файлов по: " + NameParser.getEgexp());
-        System.out.println("\n");
-        final Set<Path> renameFiles = new HashSet<>();
-        try {
-            Files.walkFileTree(sourcePath, new HashSet<>(), 1, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs){
-                    if (renameFiles.contains(file)) return FileVisitResult.CONTINUE;
-                    String fileName = file.getFileName().toString();
-                    //Проерека на расширение
-                    if(assayFilenameExtension) {
-                        Pattern pattern = Pattern.compile(filenameExtensionPattern);
-                        Matcher matcher = pattern.matcher(fileName);
-                        if(!matcher.find() || Arrays.asList(filenameExtensions).contains(matcher.group(1))) {
+    private class DirectoryScan extends RecursiveTask<List<FileTask>> {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+
+        private DirectoryScan(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<FileTask> compute() {
+            final List<FileTask> files = new ArrayList<>();
+            final List<DirectoryScan> subdirectories = new ArrayList<>();
+            try {
+                Files.walkFileTree(directory, new HashSet<>(), 1, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs){
+                        if(attrs.isDirectory()) {
+                            //Папку с результатами не обходим, если она вложена в папку с исходниками
+                            if(recursive && !file.equals(resultPath)) {
+                                subdirectories.add(new DirectoryScan(file));
+                            }
                             return FileVisitResult.CONTINUE;
                         }
-                    }
-                    //Проверка на соответствие наименованию документов
-                    if (!fileName.matches(properties.getNameRegexp())) return FileVisitResult.CONTINUE;
-                    System.out.println("Файл: " + fileName);
-
-                    NameParser document = NameParser.parser(fileName, properties);
-                    EntryDoc entryDoc = new EntryDoc();
-
-                    //Определение кода документа
-                    String documentCodLat = null;
-                    String documentCodCyr = null;
-                    int index = -1;
-                    if(document.getDocumentCode() != null) {
-                        if (document.getOrganizationCod().equals("IGUL")) {
-                            index = Arrays.asList(documentCodesLat).indexOf(document.getDocumentCode().toLowerCase());
-                        } else {
-                            index = Arrays.asList(documentCodesCyr).indexOf(document.getDocumentCode().toUpperCase());
-                        }
-                        if(index >= 0) {
-                            documentCodCyr = documentCodesCyr[index];
-                            documentCodLat = documentCodesLat[index];
-                        } else {
-                            documentCodCyr = document.getDocumentCode();
-                            documentCodLat = document.getDocumentCode();
+                        NameParser document = accept(file.getFileName().toString());
+                        if(document != null) {
+                            files.add(new FileTask(file, attrs, document));
                         }
-
-                    }
-                    //Обозначение документа
-                    entryDoc.setDesignation("ИГУЛ." +
-                            document.getCharacteristic() +
-                            "." +
-                            document.getRegistrationNumber() +
-                            (documentCodCyr != null ? (" " + documentCodCyr) : ""));
-                    //Наименование документа
-                    entryDoc.setName(document.getDocumentName());
-                    //Наименование файла
-                    if(rename) {
-                        entryDoc.setFileName("IGUL" +
-                            document.getCharacteristic() +
-                            document.getRegistrationNumber() +
-                            document.getSpeciesAndDash() +
-                            (documentCodLat != null ? ("_" + documentCodLat) : "") +
-                            (document.getDocumentVersion() != null ? ("_" + document.getDocumentVersion()) : "") +
-                            "." +
-                            document.getFilenameExtension());
-                    } else {
-                        entryDoc.setFileName(fileName);
+                        return FileVisitResult.CONTINUE;
                     }
-                    //Дата редактирования
-                    BasicFileAttributes fileAttributes = null;
-                    try {
-                        fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
-                    } catch (IOException e) {
-                        System.out.println("Не удалось считать атрибуты файла: " + file.toString());
-                        System.exit(0);
-                    }
-                    DateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
-                    entryDoc.setDate(dateFormat.format(fileAttributes.lastModifiedTime().toMillis()));
-                    //Размер файла
-                    entryDoc.setSize("" + fileAttributes.size());
-                    //Версия
-                    entryDoc.setVersion(document.getDocumentVersion() != null ? (document.getDocumentVersion()) : "-");
-                    //Номер релиза
-                    entryDoc.setReleaseNumber("-");
-                    //Копирование и подсчет MD5
-                    Path newFile = Paths.get(resultPath + "\\" + entryDoc.getFileName());
-                    if(rename) {
-                        if(createWB) {
-                            if(file.equals(newFile)) {
-                                entryDoc.setMd5(computeMd5(file));
-                            } else {
-                                entryDoc.setMd5(copyFileAndComputeMd5(file, newFile));
-                            }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                        if(!keepGoing) throw exc;
+                        //Папку задачи не удалось открыть: повторный обход упадет так же, папка отмечается ошибкой
+                        if(file.equals(directory)) {
+                            failFolder(file, exc);
+                            return FileVisitResult.CONTINUE;
                         }
-                        copyFile(file, newFile);
-                    } else {
-                        if(createWB) {
-                            entryDoc.setMd5(computeMd5(file));
+                        BasicFileAttributes attrs;
+                        try {
+                            attrs = readAttributes(file);
+                        } catch (IOException e) {
+                            NameParser document = accept(file.getFileName().toString());
+                            System.out.println("Не удалось прочитать атрибуты: " + file);
+                            if(document != null) {
+                                FileTask failed = new FileTask(file, null, document);
+                                failed.error = "Не удалось прочитать атрибуты: " + describe(e);
+                                files.add(failed);
+                            }
+                            return FileVisitResult.CONTINUE;
                         }
+                        return visitFile(file, attrs);
                     }
-                    //Удаление файла
-                    if(delete) {
+                });
+            } catch (IOException e) {
+                throw new RunFailure("Не удалось прочитать папку: " + directory.toString());
+            }
+            for(DirectoryScan subdirectory : subdirectories) {
+                subdirectory.fork();
+            }
+            for(DirectoryScan subdirectory : subdirectories) {
+                files.addAll(subdirectory.join());
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Разбирает имена найденных файлов и определяет куда они будут скопированы
+     * Файлы, которые окажутся результатом переименования других файлов, повторно не обрабатываются
+     * @param files - найденные файлы
+     * @return задания на обработку в порядке обхода папки
+     */
+    private List<FileTask> planFiles(List<FileTask> files) {
+        final Set<Path> renameFiles = new HashSet<>();
+        //Результаты файлов из журнала тоже не обрабатываются как исходные
+        if(resume) {
+            Set<Path> sources = new HashSet<>();
+            for(RunJournal.Entry entry : journal.getEntries()) {
+                sources.add(entry.getSource());
+            }
+            for(RunJournal.Entry entry : journal.getEntries()) {
+                Path newFile = resultPath.resolve(entry.getNewFileName());
+                if(!sources.contains(newFile)) renameFiles.add(newFile);
+            }
+        }
+        List<FileTask> tasks = new ArrayList<>();
+        for(FileTask task : files) {
+            if (renameFiles.contains(task.file)) continue;
+            planFile(task);
+            tasks.add(task);
+            //Сохраняю файл чтобы не использовать второй раз
+            renameFiles.add(task.newFile);
+        }
+        return tasks;
+    }
+
+    /**
+     * Разбирает имя файла и определяет куда он будет скопирован
+     * @param task - задание на обработку файла
+     */
+    private void planFile(FileTask task) {
+        String fileName = task.file.getFileName().toString();
+        NameParser document = task.document;
+        EntryDoc entryDoc = new EntryDoc();
+
+        //Определение кода документа
+        String documentCodLat = null;
+        String documentCodCyr = null;
+        int index = -1;
+        if(document.getDocumentCode() != null) {
+            if (document.getOrganizationCod().equals("IGUL")) {
+                index = Arrays.asList(documentCodesLat).indexOf(document.getDocumentCode().toLowerCase());
+            } else {
+                index = Arrays.asList(documentCodesCyr).indexOf(document.getDocumentCode().toUpperCase());
+            }
+            if(index >= 0) {
+                documentCodCyr = documentCodesCyr[index];
+                documentCodLat = documentCodesLat[index];
+            } else {
+                documentCodCyr = document.getDocumentCode();
+                documentCodLat = document.getDocumentCode();
+            }
+
+        }
+        //Обозначение документа
+        entryDoc.setDesignation("ИГУЛ." +
+                document.getCharacteristic() +
+                "." +
+                document.getRegistrationNumber() +
+                (documentCodCyr != null ? (" " + documentCodCyr) : ""));
+        //Наименование документа
+        entryDoc.setName(document.getDocumentName());
+        //Наименование файла
+        if(rename) {
+            entryDoc.setFileName("IGUL" +
+                document.getCharacteristic() +
+                document.getRegistrationNumber() +
+                document.getSpeciesAndDash() +
+                (documentCodLat != null ? ("_" + documentCodLat) : "") +
+                (document.getDocumentVersion() != null ? ("_" + document.getDocumentVersion()) : "") +
+                "." +
+                document.getFilenameExtension());
+        } else {
+            entryDoc.setFileName(fileName);
+        }
+        //Версия
+        entryDoc.setVersion(share(document.getDocumentVersion() != null ? (document.getDocumentVersion()) : "-"));
+        //Номер релиза
+        entryDoc.setReleaseNumber(share("-"));
+
+        task.entryDoc = entryDoc;
+        task.newFile = resultPath.resolve(entryDoc.getFileName());
+    }
+
+    /**
+     * @param value - строка параметра документа
+     * @return равная строка, уже использованная в документах запуска, или сама строка
+     */
+    private String share(String value) {
+        String shared = sharedValues.get(value);
+        if(shared != null) return shared;
+        sharedValues.put(value, value);
+        return value;
+    }
+
+    /**
+     * Обрабатывает файлы в несколько потоков
+     * Задания отправляются в пул по порядку, пока суммарный размер обрабатываемых файлов не превысит
+     * bytesInFlight, задание, затрагивающее файл предыдущего задания, дожидается его завершения
+     * @param tasks - задания на обработку
+     */
+    private void processParallel(List<FileTask> tasks) {
+        final ByteBudget budget = pools != null
+                ? pools.getBudget() : new ByteBudget(properties.getBytesInFlight() * 1024 * 1024);
+        ExecutorService executor = pools != null ? pools.getExecutor() : Executors.newFixedThreadPool(threads);
+        Map<Path, Future<?>> touched = new HashMap<>();
+        List<Future<?>> futures = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        try {
+            for(final FileTask task : tasks) {
+                final Future<?> sourceDependency = touched.get(task.file);
+                final Future<?> resultDependency = touched.get(task.newFile);
+                final long size = task.attributes.size();
+                budget.acquire(size);
+                Future<?> future = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
                         try {
-                            Files.delete(file);
-                        } catch (IOException e) {
-                            System.out.println("Не удалось удалить файл: " + file.toString());
-                            System.exit(0);
+                            await(sourceDependency);
+                            await(resultDependency);
+                            processFile(task);
+                        } finally {
+                            budget.release(size);
                         }
                     }
-                    //Вывожк результаты в консоль
-                    System.out.println(entryDoc);
-                    entryDocs.add(entryDoc);
-                    //Сохраняю файл чтобы не использовать второй раз
-                    renameFiles.add(newFile);
-                    return FileVisitResult.CONTINUE;
+                });
+                touched.put(task.file, future);
+                touched.put(task.newFile, future);
+                futures.add(future);
+                sizes.add(size);
+            }
+            for(Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            cancel(futures, sizes, budget);
+            throw new RunFailure("Обработка файлов прервана");
+        } catch (ExecutionException e) {
+            cancel(futures, sizes, budget);
+            if(e.getCause() instanceof RunFailure) throw (RunFailure) e.getCause();
+            throw new RunFailure("Не удалось обработать файл: " + e.getCause());
+        } finally {
+            if(pools == null) executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Отменяет еще не начатые задания после ошибки и дожидается начатых, чтобы они не писали в журнал
+     * и перечень после окончания прохода. Объем отмененных заданий возвращается в лимит: пул и лимит
+     * могут быть общими для нескольких проходов
+     * @param futures - задания
+     * @param sizes - размеры файлов заданий
+     * @param budget - лимит объема одновременно обрабатываемых файлов
+     */
+    private static void cancel(List<Future<?>> futures, List<Long> sizes, ByteBudget budget) {
+        for(int i = 0; i < futures.size(); i++) {
+            if(futures.get(i).cancel(false)) budget.release(sizes.get(i));
+        }
+        for(Future<?> future : futures) {
+            await(future);
+        }
+    }
+
+    /**
+     * Дожидается завершения задания
+     * @param future - задание, может быть null
+     */
+    private static void await(Future<?> future) {
+        if(future == null) return;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            //Ошибка будет выведена при ожидании самого задания
+        }
+    }
+
+    /**
+     * Считывает атрибуты, копирует, считает контрольную сумму и удаляет файл в соответствии с конфигурацией
+     * @param task - задание на обработку файла
+     */
+    private void processFile(FileTask task) {
+        final Path file = task.file;
+        Path newFile = task.newFile;
+        EntryDoc entryDoc = task.entryDoc;
+        if(progress != null) {
+            progress.begin(file.getFileName().toString());
+        } else {
+            System.out.println("Файл: " + file.getFileName());
+        }
+        //Дата редактирования
+        Metrics.Span stat = Metrics.start(Metrics.Phase.STAT, file);
+        BasicFileAttributes fileAttributes = task.attributes;
+        entryDoc.setModified(fileAttributes.lastModifiedTime().toMillis());
+        //Размер файла
+        entryDoc.setSize(fileAttributes.size());
+        //Копирование и подсчет контрольных сумм
+        Map<DigestAlgorithm, String> digests = new EnumMap<>(DigestAlgorithm.class);
+        if(digestCache != null) {
+            Map<DigestAlgorithm, String> cached = digestCache.get(file, fileAttributes);
+            if(cached != null) digests.putAll(cached);
+        }
+        stat.end(fileAttributes.size());
+        List<DigestAlgorithm> missing = new ArrayList<>();
+        for(DigestAlgorithm algorithm : digestAlgorithms) {
+            if(!digests.containsKey(algorithm)) missing.add(algorithm);
+        }
+        //Древовидная сумма считается отдельно, блоки файла хешируются параллельно
+        boolean treeHash = missing.remove(DigestAlgorithm.TREE_SHA_256);
+        Path copyTo = rename && !file.equals(newFile) ? newFile : null;
+        if(copyTo != null || !missing.isEmpty()) {
+            Metrics.Span transfer = Metrics.start(copyTo != null ? Metrics.Phase.COPY : Metrics.Phase.HASH, file);
+            final Path copyFile = copyTo;
+            final List<DigestAlgorithm> streaming = missing;
+            try {
+                digests.putAll(retry(new FileStep<Map<DigestAlgorithm, String>>() {
+                    @Override
+                    public Map<DigestAlgorithm, String> run() throws IOException {
+                        return DigestCopier.transfer(file, copyFile, streaming);
+                    }
+                }));
+            } catch (IOException e) {
+                transfer.end(0);
+                if(keepGoing && copyTo != null) discard(copyTo);
+                fail(task, "Не удалось скопировать: " + file.getFileName(), e);
+                return;
+            }
+            transfer.end(fileAttributes.size());
+        }
+        if(treeHash) {
+            Metrics.Span hash = Metrics.start(Metrics.Phase.HASH, file);
+            try {
+                digests.put(DigestAlgorithm.TREE_SHA_256, retry(new FileStep<String>() {
+                    @Override
+                    public String run() throws IOException {
+                        return TreeHash.compute(file);
+                    }
+                }));
+            } catch (IOException e) {
+                hash.end(0);
+                fail(task, "Не удалось прочитать: " + file.getFileName(), e);
+                return;
+            }
+            hash.end(fileAttributes.size());
+        }
+        if(!missing.isEmpty() || treeHash) {
+            digestCache.put(file, fileAttributes, digests);
+        }
+        for(DigestAlgorithm algorithm : digestAlgorithms) {
+            entryDoc.setDigest(algorithm, digests.get(algorithm));
+        }
+        //Удаление файла, суммы записываются в журнал до удаления
+        if(delete) {
+            if(journal != null) journal.append(file, fileAttributes, false, digests, entryDoc.getFileName(), true);
+            Metrics.Span remove = Metrics.start(Metrics.Phase.DELETE, file);
+            try {
+                retry(new FileStep<Void>() {
+                    @Override
+                    public Void run() throws IOException {
+                        Files.delete(file);
+                        return null;
+                    }
+                });
+            } catch (IOException e) {
+                remove.end(0);
+                fail(task, "Не удалось удалить файл: " + file.toString(), e);
+                return;
+            }
+            remove.end(fileAttributes.size());
+        }
+        if(journal != null) journal.append(file, fileAttributes, delete, digests, entryDoc.getFileName(), false);
+        if(manifestWriter != null) manifestWriter.write(entryDoc);
+        //Вывожк результаты в консоль
+        if(progress != null) {
+            progress.done(fileAttributes.size());
+        } else {
+            System.out.println(entryDoc);
+        }
+    }
+
+    /**
+     * Шаг обработки файла, который можно повторить
+     */
+    private interface FileStep<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Выполняет шаг, временные ошибки ввода-вывода повторяются retries раз с паузой retryDelay,
+     * которая удваивается с каждым повтором
+     * @param step - шаг обработки файла
+     * @return результат шага
+     * @throws IOException - ошибка последней попытки или постоянная ошибка
+     */
+    private <T> T retry(FileStep<T> step) throws IOException {
+        for(int attempt = 0; ; attempt++) {
+            try {
+                return step.run();
+            } catch (IOException e) {
+                if(attempt >= retries || !isTransient(e)) throw e;
+                long delay = retryDelay << attempt;
+                System.out.println("Повтор через " + delay + " мс: " + describe(e));
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
                 }
-            });
+            }
+        }
+    }
+
+    /**
+     * Постоянные ошибки: файла нет, файл уже есть, путь не папка, нет прав доступа - повтор их не исправит,
+     * остальные, например занятый другим процессом файл или сбой сети, считаются временными
+     */
+    private static boolean isTransient(IOException e) {
+        return !(e instanceof NoSuchFileException)
+                && !(e instanceof FileAlreadyExistsException)
+                && !(e instanceof NotDirectoryException)
+                && !(e instanceof AccessDeniedException);
+    }
+
+    private BasicFileAttributes readAttributes(final Path file) throws IOException {
+        return retry(new FileStep<BasicFileAttributes>() {
+            @Override
+            public BasicFileAttributes run() throws IOException {
+                return Files.readAttributes(file, BasicFileAttributes.class);
+            }
+        });
+    }
+
+    /**
+     * Без ключа k прерывает запуск ошибкой файла, с ключом k выводит ошибку, отмечает документ и продолжает работу
+     * @param task - задание на обработку файла
+     * @param message - сообщение об ошибке
+     * @param e - ошибка
+     */
+    private void fail(FileTask task, String message, IOException e) {
+        if(!keepGoing) throw new RunFailure(message);
+        System.out.println(message);
+        task.entryDoc.setError(message + " - " + describe(e));
+        if(progress != null) progress.done(task.attributes.size());
+    }
+
+    /**
+     * Отмечает папку, которую не удалось прочитать при ключе k, ее файлы не обрабатываются
+     * @param folder - папка
+     * @param e - ошибка
+     */
+    private void failFolder(Path folder, IOException e) {
+        System.out.println("Не удалось прочитать папку: " + folder);
+        failedFolders.put(folder, "Не удалось прочитать папку - " + describe(e));
+    }
+
+    /**
+     * Удаляет недописанный результирующий файл
+     */
+    private static void discard(Path file) {
+        try {
+            Files.deleteIfExists(file);
         } catch (IOException e) {
-            System.out.println("Не удалось скопировать файлы");
-            System.exit(0);
+            System.out.println("Не удалось удалить недописанный файл: " + file);
         }
     }
 
+    private static String describe(IOException e) {
+        return e.getMessage() != null ? e.getClass().getSimpleName() + ": " + e.getMessage() : e.getClass().getSimpleName();
+    }
 
+    /**
+     * Выводит ошибки папок и файлов и записывает их в icard-errors.csv в папке с результатами
+     * @param tasks - задания на обработку
+     */
+    private void reportErrors(List<FileTask> tasks) {
+        Path file = resultPath.resolve(ERRORS_FILE);
+        StringBuilder csv = new StringBuilder("path,error\r\n");
+        int errors = 0;
+        synchronized (failedFolders) {
+            for(Map.Entry<Path, String> folder : failedFolders.entrySet()) {
+                if(errors == 0) System.out.println("\nФайлы с ошибками:");
+                System.out.println(folder.getKey() + ": " + folder.getValue());
+                csv.append(ManifestWriter.csvField(folder.getKey().toString())).append(',')
+                        .append(ManifestWriter.csvField(folder.getValue())).append("\r\n");
+                errors++;
+            }
+        }
+        for(FileTask task : tasks) {
+            String error = task.entryDoc.getError();
+            if(error == null) continue;
+            if(errors == 0) System.out.println("\nФайлы с ошибками:");
+            System.out.println(task.file + ": " + error);
+            csv.append(ManifestWriter.csvField(task.file.toString())).append(',')
+                    .append(ManifestWriter.csvField(error)).append("\r\n");
+            errors++;
+        }
+        try {
+            if(errors == 0) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Файлов с ошибками: " + errors + ", список: " + file);
+        } catch (IOException e) {
+            System.out.println("Не удалось записать список ошибок: " + file);
+        }
+    }
+
+    /**
+     * Задание на обработку одного файла
+     * file - исходный файл
+     * attributes - атрибуты исходного файла, полученные при обходе папки
+     * document - разобранное имя исходного файла
+     * newFile - результирующий файл
+     * entryDoc - параметры документа
+     * error - ошибка чтения атрибутов при обходе папки
+     */
+    private static class FileTask {
+        private final Path file;
+        private final BasicFileAttributes attributes;
+        private final NameParser document;
+        private Path newFile;
+        private EntryDoc entryDoc;
+        private String error;
+
+        private FileTask(Path file, BasicFileAttributes attributes, NameParser document) {
+            this.file = file;
+            this.attributes = attributes;
+            this.document = document;
+        }
+    }
 }
@@ -0,0 +1,284 @@
+package ru.mrak.iCard;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Режим наблюдения за папкой с исходными файлами
+ * После первичной обработки всех файлов следит за папкой через WatchService и обрабатывает
+ * только созданные и измененные файлы, удаленные файлы убирает из информационно-удостоверяющего листа
+ * Лист пересобирается, когда в папке в течение watchDebounce секунд не было изменений
+ * Ошибки файлов собираются как с ключом k: файл, который еще пишется другим процессом, отмечается ошибкой
+ * и обрабатывается заново при следующем событии его изменения
+ * Работает до принудительного завершения приложения
+ */
+public class FolderWatcher {
+    private final FilesReplace filesReplace;
+    private final Config config;
+    private final FProperties properties;
+    private final String sheetName;
+    private final String bookPath;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    //Параметры документов по исходным файлам
+    private final Map<Path, EntryDoc> entryDocs = new LinkedHashMap<>();
+    //Файлы, созданные приложением при переименовании, их события пропускаются
+    private final Set<Path> producedFiles = new HashSet<>();
+    //Исходные файлы, удаленные приложением, их события удаления пропускаются
+    private final Set<Path> consumedFiles = new HashSet<>();
+
+    private final Set<Path> changedFiles = new LinkedHashSet<>();
+    private final Set<Path> deletedFiles = new LinkedHashSet<>();
+    private boolean rescanNeeded;
+
+    private FolderWatcher(FilesReplace filesReplace, Config config, FProperties properties,
+                          String sheetName, String bookPath) throws IOException {
+        this.filesReplace = filesReplace;
+        this.config = config;
+        this.properties = properties;
+        this.sheetName = sheetName;
+        this.bookPath = bookPath;
+        this.watchService = filesReplace.getSourcePath().getFileSystem().newWatchService();
+    }
+
+    /**
+     * Обрабатывает все файлы и дальше следит за папкой с исходными файлами
+     * @param source - директория к исходным файлам
+     * @param result - директория для сохранения результатов
+     * @param config - конфигурация запуска
+     * @param properties - набор свойств
+     * @param sheetName - наименование листа
+     * @param bookPath - путь по которому сохраняется информационно-удостоверяющий лист
+     */
+    public static void watch(String source, String result, Config config, FProperties properties,
+                             String sheetName, String bookPath) {
+        FilesReplace filesReplace = FilesReplace.open(source, result, config, properties);
+        FolderWatcher watcher = null;
+        try {
+            watcher = new FolderWatcher(filesReplace, config, properties, sheetName, bookPath);
+            watcher.register(filesReplace.getSourcePath());
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось начать наблюдение за папкой: " + filesReplace.getSourcePath());
+        }
+        watcher.processAll();
+        watcher.loop();
+    }
+
+    /**
+     * Регистрирует папку, а при обходе вложенных папок и все ее подпапки
+     * @param directory - папка
+     * @throws IOException - если папку не удалось зарегистрировать
+     */
+    private void register(Path directory) throws IOException {
+        if(!config.isRecursive()) {
+            directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if(dir.equals(filesReplace.getResultPath()) && !dir.equals(filesReplace.getSourcePath())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Обрабатывает все файлы папки и сохраняет лист
+     */
+    private void processAll() {
+        entryDocs.putAll(filesReplace.walkFiles());
+        for(Map.Entry<Path, EntryDoc> entry : entryDocs.entrySet()) {
+            remember(entry.getKey(), entry.getValue());
+        }
+        filesReplace.saveDigestCache();
+        try {
+            writeBook();
+        } catch (RunFailure e) {
+            System.out.println(e.getMessage() + ", лист будет записан при следующем изменении");
+        }
+    }
+
+    /**
+     * Ждет события файловой системы и обрабатывает накопленные изменения после паузы
+     */
+    private void loop() {
+        long debounce = TimeUnit.SECONDS.toMillis(properties.getWatchDebounce());
+        System.out.println("Наблюдение за папкой: " + filesReplace.getSourcePath());
+        while (true) {
+            WatchKey key;
+            try {
+                key = hasPending() ? watchService.poll(debounce, TimeUnit.MILLISECONDS) : watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if(key == null) {
+                //За время паузы событий не было
+                processPending();
+                continue;
+            }
+            Path directory = directories.get(key);
+            for(WatchEvent<?> event : key.pollEvents()) {
+                if(event.kind() == OVERFLOW) {
+                    rescanNeeded = true;
+                    continue;
+                }
+                if(directory == null) continue;
+                onEvent(event.kind(), directory.resolve((Path) event.context()));
+            }
+            if(!key.reset()) {
+                directories.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Запоминает изменение файла
+     * @param kind - тип события
+     * @param file - файл
+     */
+    private void onEvent(WatchEvent.Kind<?> kind, Path file) {
+        if(producedFiles.contains(file)) return;
+        if(kind == ENTRY_DELETE) {
+            if(consumedFiles.remove(file)) return;
+            changedFiles.remove(file);
+            deletedFiles.add(file);
+            return;
+        }
+        if(Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            if(kind == ENTRY_CREATE && config.isRecursive()) {
+                try {
+                    register(file);
+                } catch (IOException e) {
+                    System.out.println("Не удалось начать наблюдение за папкой: " + file);
+                }
+                //Файлы могли появиться в папке до ее регистрации
+                rescanNeeded = true;
+            }
+            return;
+        }
+        consumedFiles.remove(file);
+        deletedFiles.remove(file);
+        changedFiles.add(file);
+    }
+
+    private boolean hasPending() {
+        return rescanNeeded || !changedFiles.isEmpty() || !deletedFiles.isEmpty();
+    }
+
+    /**
+     * Обрабатывает накопленные изменения и пересобирает лист
+     */
+    private void processPending() {
+        boolean modified = false;
+        if(rescanNeeded) {
+            rescanNeeded = false;
+            modified = rescan();
+        }
+        for(Path file : deletedFiles) {
+            if(entryDocs.remove(file) != null) {
+                System.out.println("Файл удален: " + file.getFileName());
+                modified = true;
+            }
+        }
+        deletedFiles.clear();
+        for(Path file : changedFiles) {
+            EntryDoc entryDoc = filesReplace.processFile(file);
+            if(entryDoc == null) continue;
+            entryDocs.put(file, entryDoc);
+            remember(file, entryDoc);
+            if(entryDoc.getError() != null) {
+                System.out.println("Файл будет обработан при следующем изменении: " + file.getFileName());
+            }
+            modified = true;
+        }
+        changedFiles.clear();
+        if(modified) {
+            filesReplace.saveDigestCache();
+            try {
+                writeBook();
+                if(config.isManifest()) {
+                    ManifestWriter.writeAll(filesReplace.getResultPath(), properties, entryDocs.values());
+                }
+            } catch (RunFailure e) {
+                //Лист может быть открыт в редакторе, наблюдение продолжается
+                System.out.println(e.getMessage() + ", лист будет записан при следующем изменении");
+            }
+        }
+    }
+
+    /**
+     * Повторно просматривает папку, если события могли быть потеряны
+     * Все найденные файлы, кроме созданных приложением, ставятся в очередь на обработку,
+     * файлы, которых больше нет, убираются из листа
+     * @return true если из листа были убраны файлы
+     */
+    private boolean rescan() {
+        final Path resultPath = filesReplace.getResultPath();
+        final Path sourcePath = filesReplace.getSourcePath();
+        try {
+            Files.walkFileTree(sourcePath, new HashSet<FileVisitOption>(), config.isRecursive() ? Integer.MAX_VALUE : 1,
+                    new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if(dir.equals(resultPath) && !dir.equals(sourcePath)) return FileVisitResult.SKIP_SUBTREE;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if(attrs.isRegularFile() && !producedFiles.contains(file)) {
+                        changedFiles.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Не удалось прочитать папку: " + sourcePath);
+        }
+        boolean modified = false;
+        if(!config.isDelete()) {
+            Iterator<Path> files = entryDocs.keySet().iterator();
+            while (files.hasNext()) {
+                if(!Files.exists(files.next())) {
+                    files.remove();
+                    modified = true;
+                }
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Запоминает файлы, появление и удаление которых вызвано самим приложением
+     * @param file - исходный файл
+     * @param entryDoc - параметры документа
+     */
+    private void remember(Path file, EntryDoc entryDoc) {
+        //Файл с ошибкой не переименован и не удален
+        if(entryDoc.getError() != null) return;
+        Path newFile = filesReplace.getResultPath().resolve(entryDoc.getFileName());
+        if(config.isRename() && !newFile.equals(file)) {
+            producedFiles.add(newFile);
+        }
+        if(config.isDelete()) {
+            consumedFiles.add(file);
+        }
+    }
+
+    private void writeBook() {
+        if(config.isCreateWB()) {
+            WorkBook.writeBook(sheetName, bookPath, new ArrayList<>(entryDocs.values()), properties);
+            System.out.println("Информационно-удостоверяющий лист обновлен, документов: " + entryDocs.size());
+        }
+    }
+}
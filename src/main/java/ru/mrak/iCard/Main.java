@@ -1,8 +1,11 @@
 package ru.mrak.iCard;
 
-import java.nio.file.Path;
+import ru.mrak.iCard.util.Metrics;
+
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *Приложение предначначено для анализа файлов и составления на их основе информационно-удостоверяющего листа
@@ -10,9 +13,17 @@ import java.util.List;
  * Работает в консольном редиме. На вход требует конфигурацию и папки для исходнях файлов и результатов
  */
 public class Main {
+    private static final String METRICS_FILE = "icard-metrics.json";
+    //Код завершения, если при ключе k часть файлов не обработана
+    static final int FAILED_FILES_STATUS = 1;
+    //Код завершения, если запуск прерван ошибкой
+    static final int RUN_FAILED_STATUS = 2;
+
     public static void main(String[] args) {
         if(args == null || args.length == 0) {
             System.out.println("использование: icard -config [result path] [source path]\n" +
+                    "              icard -configb [batch file]\n" +
+                    "              icard server\n" +
                     "\n" +
                     "приложение переименовывает и создает информационно-удостоверяющий лист из файлов с именами вида: \"ИГУЛ.123456.789-01 СБ Наименование\" или \"IGUL123456789-01_sb\"\n" +
                     "\n" +
@@ -21,6 +32,15 @@ public class Main {
                     "   d(elete) - удаляет исходные файлы\n" +
                     "   c(reate) - создает информационно-удостоверяющий лист\n" +
                     "   a(ssay) - работает с файлами имеющими расширение из файла свойств\n" +
+                    "   f(orce) - пересчитывает контрольные суммы всех файлов, не используя кеш\n" +
+                    "   s(ubfolders) - обрабатывает файлы во вложенных папках\n" +
+                    "   w(atch) - следит за папкой с исходными файлами и обновляет лист при изменениях\n" +
+                    "   m(etrics) - записывает сводку замеров этапов в icard-metrics.json в папке для результатов\n" +
+                    "   p(rogress) - выводит ход обработки: файлы, МБ/с, текущий файл и оставшееся время\n" +
+                    "   l(ist) - записывает перечень документов manifest.csv или manifest.jsonl в папку для результатов\n" +
+                    "   b(atch) - обрабатывает проекты из файла списка, в строке списка: result path;source path\n" +
+                    "   u(nfinished) - продолжает прерванный запуск по журналу .icard-journal в папке для результатов\n" +
+                    "   k(eep) - при ошибке файла продолжает обработку остальных файлов, ошибки пишутся в icard-errors.csv\n" +
                     "\n" +
                     "например конфигурация -rc переименовает файлы и создает информационно-удостоверяющий лист в независимости от расширения файлов\n" +
                     "\n" +
@@ -28,36 +48,114 @@ public class Main {
                     "result path - папка для результатов\n" +
                     "\n" +
                     "если result path нет, то исходные файлы и результаты будут сохранены в текущую папку\n" +
-                    "если source path нет, то исходные файлы будут взяты из текущей папки");
-            System.exit(0);
+                    "если source path нет, то исходные файлы будут взяты из текущей папки\n" +
+                    "batch file - список проектов, для каждого создается свой лист, сводка пишется в icard-batch.csv рядом со списком\n" +
+                    "server - запускает сервер, которому передает запуски клиент ru.mrak.iCard.Client с теми же параметрами");
+            return;
+        }
+        int status;
+        if(args[0].equals("server")) {
+            try {
+                Server.serve(toAbsolutePat(""));
+                return;
+            } catch (RunFailure e) {
+                System.out.println(e.getMessage());
+                status = RUN_FAILED_STATUS;
+            }
+        } else {
+            status = run(args, null);
         }
+        //Код завершения передается только отсюда, запуск и сервер приложение не завершают
+        if(status != 0) System.exit(status);
+    }
+
+    /**
+     * Выполняет один запуск по параметрам командной строки
+     * @param args - конфигурация и папки
+     * @param pools - общие пулы сервера, null - пулы создаются на запуск
+     * @return код завершения: 0, FAILED_FILES_STATUS, если при ключе k часть файлов не обработана,
+     * или RUN_FAILED_STATUS, если запуск прерван ошибкой
+     */
+    static int run(String[] args, WorkerPools pools) {
+        try {
+            return execute(args, pools);
+        } catch (RunFailure e) {
+            System.out.println(e.getMessage());
+            return RUN_FAILED_STATUS;
+        }
+    }
+
+    private static int execute(String[] args, WorkerPools pools) {
         String source = "";
         String result = "";
         Config config = Config.parsing(args[0]);
         if(config == null) {
-            System.out.println("Конфигурация задана неправильно");
-            System.exit(0);
+            throw new RunFailure("Конфигурация задана неправильно");
         }
         if(args.length >= 2) result = args[1];
         if(args.length >= 3) source = args[2];
+        if(config.isMetrics()) Metrics.enable();
+        if(config.isBatch()) {
+            if(config.isWatch()) {
+                throw new RunFailure("Режим наблюдения не совместим с пакетным режимом");
+            }
+            if(args.length < 2) {
+                throw new RunFailure("Не указан файл списка проектов");
+            }
+            int status = Batch.run(toAbsolutePat(args[1]), config);
+            System.out.println("Выполнено");
+            return status;
+        }
 
         FProperties properties = new FProperties(toAbsolutePat(source));
-        List<EntryDoc> entryDocs = FilesReplace.replace(toAbsolutePat(source), toAbsolutePat(result), config, properties);
+        if(config.isWatch()) {
+            FolderWatcher.watch(toAbsolutePat(source), toAbsolutePat(result), config, properties,
+                    "Уд. лист", sheetPath(result, properties));
+            return 0;
+        }
+        FilesReplace filesReplace = FilesReplace.open(toAbsolutePat(source), toAbsolutePat(result), config, properties);
+        filesReplace.share(pools);
+        List<EntryDoc> entryDocs = filesReplace.replaceFiles();
         if(config.isCreateWB())
-            WorkBook.writeBook("Уд. лист", toAbsolutePat(result) + "\\УЛ.xls", entryDocs, properties);
+            WorkBook.writeBook("Уд. лист", sheetPath(result, properties), entryDocs, properties);
+        if(config.isMetrics()) {
+            Map<String, String> run = new LinkedHashMap<>();
+            run.put("config", config.createConfig());
+            run.put("source", toAbsolutePat(source));
+            run.put("result", toAbsolutePat(result));
+            run.put("outputFormat", properties.getOutputFormat());
+            Metrics.writeSummary(Paths.get(toAbsolutePat(result)).resolve(METRICS_FILE), run, entryDocs.size());
+        }
         System.out.println("Выполнено");
+        return countFailed(entryDocs) + filesReplace.getFailedFolders() > 0 ? FAILED_FILES_STATUS : 0;
     }
 
-    private static String toAbsolutePat(String path) {
-        if(!path.equals("")) {
-            if(!path.contains(":")) {
-                Path workingPath = Paths.get("");
-                return workingPath.toAbsolutePath().toString() + "\\" + path;
-            }
-        } else {
-            Path workingPath = Paths.get("");
-            return workingPath.toAbsolutePath().toString();
+    /**
+     * @param entryDocs - параметры документов
+     * @return количество документов с ошибкой обработки файла
+     */
+    static int countFailed(List<EntryDoc> entryDocs) {
+        int failed = 0;
+        for(EntryDoc entryDoc : entryDocs) {
+            if(entryDoc.getError() != null) failed++;
         }
-        return path;
+        return failed;
+    }
+
+    /**
+     * @param path - путь из командной строки, пустой - текущая папка
+     * @return абсолютный путь, относительный путь считается от текущей папки
+     */
+    static String toAbsolutePat(String path) {
+        return Paths.get("").toAbsolutePath().resolve(path).toString();
+    }
+
+    /**
+     * @param result - папка с результатами
+     * @param properties - свойства с форматом листа
+     * @return путь информационно-удостоверяющего листа в папке с результатами
+     */
+    static String sheetPath(String result, FProperties properties) {
+        return Paths.get(toAbsolutePat(result)).resolve("УЛ." + properties.getOutputFormat()).toString();
     }
 }
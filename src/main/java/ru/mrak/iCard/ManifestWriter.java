@@ -0,0 +1,197 @@
+package ru.mrak.iCard;
+
+import ru.mrak.iCard.util.DigestAlgorithm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Перечень документов для загрузки в другие системы: по строке на документ с обозначением, наименованием,
+ * контрольными суммами, именем файла, размером, датой и версией
+ * Строка пишется сразу после обработки файла, в памяти держится только буфер записи, поэтому перечень
+ * не зависит от количества документов и не требует POI. При обработке в несколько потоков строки идут
+ * в порядке завершения обработки файлов
+ * Формат задается свойством manifestFormat: csv - CSV по RFC 4180 с заголовком, jsonl - объект JSON на строку
+ */
+abstract class ManifestWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Writer out;
+    protected final List<DigestAlgorithm> digests;
+
+    private ManifestWriter(Path file, List<DigestAlgorithm> digests) throws IOException {
+        this.file = file;
+        this.digests = digests;
+        this.out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Создает файл перечня manifest.csv или manifest.jsonl
+     * @param resultPath - папка с результатами
+     * @param properties - свойства с форматом перечня и алгоритмами контрольных сумм
+     * @return перечень, который необходимо закрыть методом close
+     */
+    static ManifestWriter open(Path resultPath, FProperties properties) {
+        String format = properties.getManifestFormat();
+        Path file = resultPath.resolve("manifest." + format);
+        try {
+            ManifestWriter writer = format.equals("jsonl")
+                    ? new JsonLines(file, properties.getDigests())
+                    : new Csv(file, properties.getDigests());
+            writer.writeHeader();
+            return writer;
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось создать перечень документов: " + file);
+        }
+    }
+
+    /**
+     * Перезаписывает перечень целиком, используется при пересборке в режиме наблюдения
+     * @param resultPath - папка с результатами
+     * @param properties - свойства с форматом перечня и алгоритмами контрольных сумм
+     * @param entryDocs - параметры документов
+     */
+    static void writeAll(Path resultPath, FProperties properties, Collection<EntryDoc> entryDocs) {
+        ManifestWriter writer = open(resultPath, properties);
+        for(EntryDoc entryDoc : entryDocs) {
+            writer.write(entryDoc);
+        }
+        writer.close();
+    }
+
+    /**
+     * Дописывает строку документа, может вызываться из нескольких потоков
+     * @param entryDoc - параметры документа
+     */
+    synchronized void write(EntryDoc entryDoc) {
+        try {
+            writeEntry(entryDoc);
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось записать перечень документов: " + file);
+        }
+    }
+
+    /**
+     * Сбрасывает буфер и закрывает файл перечня
+     */
+    synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось записать перечень документов: " + file);
+        }
+        System.out.println("Перечень документов: " + file);
+    }
+
+    /**
+     * @param value - значение поля, null - пустое поле
+     * @return поле CSV, в кавычках, если в нем есть запятая, кавычка или перевод строки
+     */
+    static String csvField(String value) {
+        if(value == null) return "";
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    protected void append(String text) throws IOException {
+        out.write(text);
+    }
+
+    protected void writeHeader() throws IOException {}
+
+    protected abstract void writeEntry(EntryDoc entryDoc) throws IOException;
+
+    /**
+     * CSV: поля через запятую, поле с запятой, кавычкой или переводом строки берется в кавычки,
+     * кавычки внутри удваиваются, строки заканчиваются CRLF
+     */
+    private static class Csv extends ManifestWriter {
+        private Csv(Path file, List<DigestAlgorithm> digests) throws IOException {
+            super(file, digests);
+        }
+
+        @Override
+        protected void writeHeader() throws IOException {
+            StringBuilder line = new StringBuilder("designation,name");
+            for(DigestAlgorithm algorithm : digests) {
+                line.append(',').append(csvField(algorithm.getTitle()));
+            }
+            line.append(",fileName,size,date,version\r\n");
+            append(line.toString());
+        }
+
+        @Override
+        protected void writeEntry(EntryDoc entryDoc) throws IOException {
+            StringBuilder line = new StringBuilder();
+            line.append(csvField(entryDoc.getDesignation())).append(',').append(csvField(entryDoc.getName()));
+            for(DigestAlgorithm algorithm : digests) {
+                line.append(',').append(csvField(entryDoc.getDigest(algorithm)));
+            }
+            line.append(',').append(csvField(entryDoc.getFileName()))
+                    .append(',').append(csvField(entryDoc.formatSize()))
+                    .append(',').append(csvField(entryDoc.getDate()))
+                    .append(',').append(csvField(entryDoc.getVersion()))
+                    .append("\r\n");
+            append(line.toString());
+        }
+    }
+
+    /**
+     * JSON Lines: объект на строку, контрольные суммы - вложенный объект по названиям алгоритмов,
+     * размер - число, отсутствующие значения - null
+     */
+    private static class JsonLines extends ManifestWriter {
+        private JsonLines(Path file, List<DigestAlgorithm> digests) throws IOException {
+            super(file, digests);
+        }
+
+        @Override
+        protected void writeEntry(EntryDoc entryDoc) throws IOException {
+            StringBuilder line = new StringBuilder("{");
+            line.append("\"designation\":").append(quote(entryDoc.getDesignation()));
+            line.append(",\"name\":").append(quote(entryDoc.getName()));
+            line.append(",\"digests\":{");
+            boolean first = true;
+            for(DigestAlgorithm algorithm : digests) {
+                if(!first) line.append(',');
+                first = false;
+                line.append(quote(algorithm.getTitle())).append(':').append(quote(entryDoc.getDigest(algorithm)));
+            }
+            line.append('}');
+            line.append(",\"fileName\":").append(quote(entryDoc.getFileName()));
+            line.append(",\"size\":").append(entryDoc.getSize() != EntryDoc.UNKNOWN ? Long.toString(entryDoc.getSize()) : "null");
+            line.append(",\"date\":").append(quote(entryDoc.getDate()));
+            line.append(",\"version\":").append(quote(entryDoc.getVersion()));
+            line.append("}\n");
+            append(line.toString());
+        }
+
+        private static String quote(String value) {
+            if(value == null) return "null";
+            StringBuilder quoted = new StringBuilder("\"");
+            for(char c : value.toCharArray()) {
+                if(c == '"' || c == '\\') {
+                    quoted.append('\\').append(c);
+                } else if(c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.poi.ss.usermodel.BorderStyle.DOTTED;
+import static org.apache.poi.ss.usermodel.BorderStyle.NONE;
+import static org.apache.poi.ss.usermodel.BorderStyle.THIN;
+import static ru.mrak.iCard.Align.CENTER;
+import static ru.mrak.iCard.Align.LEFT;
+import static ru.mrak.iCard.Align.ROTATION;
+
+/**
+ * Разметка страницы информационно-удостоверяющего листа в целочисленных координатах
+ * Страницы описываются один раз адресами относительно начала страницы, адреса разбираются при создании разметки,
+ * после этого страница выводится на лист с любым смещением строк без разбора строк
+ * Рамки объединений и отдельных ячеек сводятся при создании разметки в одну рамку на ячейку,
+ * поэтому при выводе стиль каждой ячейки рамки устанавливается один раз
+ */
+class PageLayout {
+    /**
+     * Вид операции разметки
+     */
+    enum Kind {
+        //Объединение ячеек с рамкой по краям
+        MERGE,
+        //Стиль одной ячейки только с рамкой
+        BORDER,
+        TEXT,
+        FORMULA
+    }
+
+    /**
+     * Операция разметки, строки считаются от начала страницы с нуля
+     */
+    static final class Op {
+        final Kind kind;
+        final int firstRow;
+        final int lastRow;
+        final int firstColumn;
+        final int lastColumn;
+        final BorderStyle borderBottom;
+        final BorderStyle borderTop;
+        final BorderStyle borderLeft;
+        final BorderStyle borderRight;
+        final String text;
+        final Align align;
+        final int fontSize;
+
+        private Op(Kind kind, int firstRow, int lastRow, int firstColumn, int lastColumn,
+                   BorderStyle borderBottom, BorderStyle borderTop, BorderStyle borderLeft, BorderStyle borderRight,
+                   String text, Align align, int fontSize) {
+            this.kind = kind;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.firstColumn = firstColumn;
+            this.lastColumn = lastColumn;
+            this.borderBottom = borderBottom;
+            this.borderTop = borderTop;
+            this.borderLeft = borderLeft;
+            this.borderRight = borderRight;
+            this.text = text;
+            this.align = align;
+            this.fontSize = fontSize;
+        }
+
+        private Op shift(int rows) {
+            return new Op(kind, firstRow + rows, lastRow + rows, firstColumn, lastColumn,
+                    borderBottom, borderTop, borderLeft, borderRight, text, align, fontSize);
+        }
+    }
+
+    /**
+     * Итоговая рамка одной ячейки страницы
+     */
+    static final class Frame {
+        final int row;
+        final int column;
+        final BorderStyle borderBottom;
+        final BorderStyle borderTop;
+        final BorderStyle borderLeft;
+        final BorderStyle borderRight;
+
+        private Frame(int row, int column, BorderStyle[] borders) {
+            this.row = row;
+            this.column = column;
+            this.borderBottom = borders[BOTTOM];
+            this.borderTop = borders[TOP];
+            this.borderLeft = borders[LEFT_SIDE];
+            this.borderRight = borders[RIGHT_SIDE];
+        }
+    }
+
+    /**
+     * Ячейка для данных, которые известны только при заполнении листа, с ее выравниванием и шрифтом
+     */
+    static final class Place {
+        final int row;
+        final int column;
+        final Align align;
+        final int fontSize;
+
+        private Place(String address, Align align, int fontSize) {
+            CellAddress cellAddress = new CellAddress(address);
+            this.row = cellAddress.getRow();
+            this.column = cellAddress.getColumn();
+            this.align = align;
+            this.fontSize = fontSize;
+        }
+    }
+
+    //Поля записи документа относительно первой строки записи
+    static final Place ENTRY_NUMBER = new Place("C1", CENTER, 10);
+    static final Place ENTRY_DESIGNATION = new Place("F1", CENTER, 10);
+    static final Place ENTRY_NAME = new Place("J1", CENTER, 10);
+    static final Place ENTRY_VERSION = new Place("L1", CENTER, 10);
+    static final Place ENTRY_RELEASE = new Place("O1", CENTER, 10);
+    static final Place ENTRY_DIGEST_TITLES = new Place("C2", CENTER, 10);
+    static final Place ENTRY_DIGEST_VALUES = new Place("F2", LEFT, 10);
+    static final Place ENTRY_FILE_NAME = new Place("C3", LEFT, 10);
+    static final Place ENTRY_AUTHOR = new Place("L3", CENTER, 10);
+    static final Place ENTRY_SIZE = new Place("C4", CENTER, 10);
+    static final Place ENTRY_DATE = new Place("J4", CENTER, 10);
+    static final List<Place> ENTRY_PLACES = Collections.unmodifiableList(Arrays.asList(ENTRY_NUMBER,
+            ENTRY_DESIGNATION, ENTRY_NAME, ENTRY_VERSION, ENTRY_RELEASE, ENTRY_DIGEST_TITLES, ENTRY_DIGEST_VALUES,
+            ENTRY_FILE_NAME, ENTRY_AUTHOR, ENTRY_SIZE, ENTRY_DATE));
+    static final int ENTRY_HEIGHT = 4;
+    //Первая строка первой записи на странице
+    static final int FIRST_ENTRY_ROW = 1;
+
+    //Поля первой страницы
+    static final Place AUTHOR = new Place("F31", LEFT, 9);
+    static final Place CHECKED = new Place("F32", LEFT, 9);
+    static final Place APPROVED = new Place("F35", LEFT, 9);
+    static final Place PAGE_NUMBER = new Place("N32", CENTER, 9);
+    static final Place PAGE_COUNT = new Place("P32", CENTER, 9);
+    //Номер страницы на второй и последующих страницах
+    static final Place FOLLOW_PAGE_NUMBER = new Place("Q32", CENTER, 11);
+
+    //Ширина столбцов A-Q в пикселях
+    static final int[] COLUMN_WIDTHS = {19, 26, 26, 29, 9, 86, 57, 38, 19, 246, 19, 19, 19, 36, 20, 36, 40};
+
+    static final PageLayout ENTRY = entry();
+    static final PageLayout FIRST_PAGE = firstPage();
+    static final PageLayout FOLLOW_PAGE = followPage();
+
+    //Стороны рамки в массиве сторон ячейки
+    private static final int BOTTOM = 0;
+    private static final int TOP = 1;
+    private static final int LEFT_SIDE = 2;
+    private static final int RIGHT_SIDE = 3;
+
+    private final List<Op> ops = new ArrayList<>();
+    private float[] rowHeights = new float[0];
+    private List<Frame> frames;
+    private List<Op> merges;
+    private List<Op> labels;
+
+    private PageLayout() {}
+
+    /**
+     * @return итоговые рамки ячеек
+     */
+    List<Frame> getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return объединения ячеек
+     */
+    List<Op> getMerges() {
+        return merges;
+    }
+
+    /**
+     * @return надписи и формулы в порядке вывода
+     */
+    List<Op> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @param row - строка относительно начала страницы
+     * @return высота строки в пунктах
+     */
+    float getRowHeight(int row) {
+        return rowHeights[row];
+    }
+
+    /**
+     * @return количество строк страницы
+     */
+    int getHeight() {
+        return rowHeights.length;
+    }
+
+    private PageLayout rows(int first, int last, float height) {
+        if(rowHeights.length < last) rowHeights = Arrays.copyOf(rowHeights, last);
+        Arrays.fill(rowHeights, first, last, height);
+        return this;
+    }
+
+    private PageLayout merge(String region, BorderStyle borderStyle) {
+        return merge(region, borderStyle, borderStyle, borderStyle, borderStyle);
+    }
+
+    private PageLayout merge(String region, BorderStyle borderBottom, BorderStyle borderTop, BorderStyle borderLeft, BorderStyle borderRight) {
+        CellRangeAddress range = CellRangeAddress.valueOf(region);
+        ops.add(new Op(region.contains(":") ? Kind.MERGE : Kind.BORDER,
+                range.getFirstRow(), range.getLastRow(), range.getFirstColumn(), range.getLastColumn(),
+                borderBottom, borderTop, borderLeft, borderRight, null, null, 0));
+        return this;
+    }
+
+    private PageLayout text(String text, String address, Align align, int fontSize) {
+        return label(Kind.TEXT, text, address, align, fontSize);
+    }
+
+    private PageLayout formula(String formula, String address, Align align, int fontSize) {
+        return label(Kind.FORMULA, formula, address, align, fontSize);
+    }
+
+    private PageLayout label(Kind kind, String text, String address, Align align, int fontSize) {
+        CellAddress cellAddress = new CellAddress(address);
+        ops.add(new Op(kind, cellAddress.getRow(), cellAddress.getRow(), cellAddress.getColumn(), cellAddress.getColumn(),
+                null, null, null, null, text, align, fontSize));
+        return this;
+    }
+
+    private PageLayout include(PageLayout layout, int rowShift) {
+        for(Op op : layout.ops) {
+            ops.add(op.shift(rowShift));
+        }
+        return this;
+    }
+
+    /**
+     * Сводит операции в рамки ячеек, объединения и надписи
+     * Объединение меняет только стороны по своему краю, как RegionUtil, рамка ячейки заменяет все четыре стороны
+     * Рамки должны описываться до надписей, иначе надпись потеряла бы рамку
+     */
+    private PageLayout compile() {
+        Map<Long, BorderStyle[]> cells = new LinkedHashMap<>();
+        List<Op> merges = new ArrayList<>();
+        List<Op> labels = new ArrayList<>();
+        for(Op op : ops) {
+            switch (op.kind) {
+                case MERGE:
+                    if(!labels.isEmpty()) throw new RuntimeException("Рамка описана после надписей");
+                    merges.add(op);
+                    for(int column = op.firstColumn; column <= op.lastColumn; column++) {
+                        borders(cells, op.lastRow, column)[BOTTOM] = op.borderBottom;
+                        borders(cells, op.firstRow, column)[TOP] = op.borderTop;
+                    }
+                    for(int row = op.firstRow; row <= op.lastRow; row++) {
+                        borders(cells, row, op.firstColumn)[LEFT_SIDE] = op.borderLeft;
+                        borders(cells, row, op.lastColumn)[RIGHT_SIDE] = op.borderRight;
+                    }
+                    break;
+                case BORDER:
+                    if(!labels.isEmpty()) throw new RuntimeException("Рамка описана после надписей");
+                    cells.put(cellKey(op.firstRow, op.firstColumn),
+                            new BorderStyle[] {op.borderBottom, op.borderTop, op.borderLeft, op.borderRight});
+                    break;
+                default:
+                    labels.add(op);
+            }
+        }
+        List<Frame> frames = new ArrayList<>(cells.size());
+        for(Map.Entry<Long, BorderStyle[]> cell : cells.entrySet()) {
+            frames.add(new Frame((int) (cell.getKey() >>> 32), (int) (long) cell.getKey(), cell.getValue()));
+        }
+        this.frames = Collections.unmodifiableList(frames);
+        this.merges = Collections.unmodifiableList(merges);
+        this.labels = Collections.unmodifiableList(labels);
+        return this;
+    }
+
+    private static BorderStyle[] borders(Map<Long, BorderStyle[]> cells, int row, int column) {
+        Long key = cellKey(row, column);
+        BorderStyle[] borders = cells.get(key);
+        if(borders == null) {
+            borders = new BorderStyle[] {NONE, NONE, NONE, NONE};
+            cells.put(key, borders);
+        }
+        return borders;
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+
+    /**
+     * Рамка одной записи документа, четыре строки
+     */
+    private static PageLayout entry() {
+        return new PageLayout()
+                .merge("C1:E1", DOTTED, THIN, THIN, THIN)
+                .merge("F1:I1", DOTTED, THIN, THIN, THIN)
+                .merge("J1:K1", DOTTED, THIN, THIN, THIN)
+                .merge("L1:N1", DOTTED, THIN, THIN, THIN)
+                .merge("O1:Q1", DOTTED, THIN, THIN, THIN)
+                .merge("C2:E2", DOTTED, DOTTED, THIN, THIN)
+                .merge("F2:K2", DOTTED, DOTTED, THIN, THIN)
+                .merge("L2:Q2", DOTTED, DOTTED, THIN, THIN)
+                .merge("C3:K3", DOTTED, DOTTED, THIN, THIN)
+                .merge("L3:Q3", DOTTED, DOTTED, THIN, THIN)
+                .merge("C4:I4", THIN, DOTTED, THIN, THIN)
+                .merge("J4:K4", THIN, DOTTED, THIN, THIN)
+                .merge("L4:Q4", THIN, DOTTED, THIN, THIN)
+                .compile();
+    }
+
+    /**
+     * Заголовок таблицы записей, одинаковый для всех страниц
+     */
+    private PageLayout header() {
+        return merge("C1:E1", THIN)
+                .merge("F1:I1", THIN)
+                .merge("J1:K1", THIN)
+                .merge("L1:N1", THIN)
+                .merge("O1:Q1", THIN);
+    }
+
+    /**
+     * Записи страницы
+     * @param capacity - количество записей на странице
+     */
+    private PageLayout entries(int capacity) {
+        for (int i = 0; i < capacity; i++) {
+            include(ENTRY, FIRST_ENTRY_ROW + i * ENTRY_HEIGHT);
+        }
+        return this;
+    }
+
+    /**
+     * Первая страница: форматка с основной надписью и шесть записей
+     */
+    private static PageLayout firstPage() {
+        PageLayout page = new PageLayout()
+                .rows(0, 1, 45f)
+                .rows(1, 27, 25.5f)
+                .rows(27, 36, 15f)
+                //Форматка
+                //Первичное применение
+                .merge("A1:A7", THIN)
+                .merge("B1:B7", THIN)
+                //Справочный No
+                .merge("A8:A14", THIN)
+                .merge("B8:B14", THIN)
+                //Подпись и дата
+                .merge("A16:A19", THIN)
+                .merge("B16:B19", THIN)
+                //Инв. No дубл.
+                .merge("A20:A22", THIN)
+                .merge("B20:B22", THIN)
+                //Взаим. инв No.
+                .merge("A23:A25", THIN)
+                .merge("B23:B25", THIN)
+                //Подп. и дата
+                .merge("A26:A30", THIN)
+                .merge("B26:B30", THIN)
+                //Инв. No подп.
+                .merge("A31:A35", THIN)
+                .merge("B31:B35", THIN)
+                //Извещения
+                .merge("C28", DOTTED, THIN, THIN, THIN)
+                .merge("D28:E28", DOTTED, THIN, THIN, THIN)
+                .merge("F28", DOTTED, THIN, THIN, THIN)
+                .merge("G28", DOTTED, THIN, THIN, THIN)
+                .merge("H28", DOTTED, THIN, THIN, THIN)
+                .merge("C29", THIN, DOTTED, THIN, THIN)
+                .merge("D29:E29", THIN, DOTTED, THIN, THIN)
+                .merge("F29", THIN, DOTTED, THIN, THIN)
+                .merge("G29", THIN, DOTTED, THIN, THIN)
+                .merge("H29", THIN, DOTTED, THIN, THIN)
+                //Подписи
+                .merge("C30", THIN)
+                .merge("D30:E30", THIN)
+                .merge("F30", THIN)
+                .merge("G30", THIN)
+                .merge("H30", THIN)
+                .merge("C31:E31", DOTTED, THIN, THIN, THIN)
+                .merge("F31", DOTTED, THIN, THIN, THIN)
+                .merge("G31", DOTTED, THIN, THIN, THIN)
+                .merge("H31", DOTTED, THIN, THIN, THIN);
+        for (int i = 32; i < 35; i++) {
+            page.merge("C" + i + ":E" + i, DOTTED, DOTTED, THIN, THIN)
+                    .merge("F" + i, DOTTED, DOTTED, THIN, THIN)
+                    .merge("G" + i, DOTTED, DOTTED, THIN, THIN)
+                    .merge("H" + i, DOTTED, DOTTED, THIN, THIN);
+        }
+        return page
+                .merge("C35:E35", THIN, DOTTED, THIN, THIN)
+                .merge("F35", THIN, DOTTED, THIN, THIN)
+                .merge("G35", THIN, DOTTED, THIN, THIN)
+                .merge("H35", THIN, DOTTED, THIN, THIN)
+                //Обозначение
+                .merge("I28:Q30", THIN)
+                //Наименование
+                .merge("I31:J35", THIN)
+                //Литера
+                .merge("K31:M31", THIN)
+                .merge("K32", THIN)
+                .merge("L32", THIN)
+                .merge("M32", THIN)
+                //Листы
+                .merge("N31:O31", THIN)
+                .merge("N32:O32", THIN)
+                .merge("P31:Q31", THIN)
+                .merge("P32:Q32", THIN)
+                //Компания
+                .merge("K33:Q35", THIN)
+                //Заголовок
+                .header()
+                //Записи
+                .entries(WorkBook.FIRST_PAGE_CAPACITY)
+                //Рамка
+                .merge("Q26", NONE, THIN, NONE, THIN)
+                .merge("Q27", THIN, NONE, NONE, THIN)
+                //Надписи
+                .text("ПАО \"Морион\"", "K33", CENTER, 16)
+                .text("Изм.", "C30", CENTER, 9)
+                .text("Лист", "D30", CENTER, 9)
+                .text("№ докум.", "F30", CENTER, 9)
+                .text("Подп.", "G30", CENTER, 9)
+                .text("Дата", "H30", CENTER, 9)
+                .text("Лит.", "K31", CENTER, 9)
+                .text("Лист", "N31", CENTER, 9)
+                .text("Листов.", "P31", CENTER, 9)
+                .text("Разраб.", "C31", LEFT, 9)
+                .text("Пров.", "C32", LEFT, 9)
+                .text("Н. контр.", "C34", LEFT, 9)
+                .text("Утв.", "C35", LEFT, 9)
+                .text("№ поз./\nHash", "C1", CENTER, 9)
+                .text("Обозначение\nдокумента", "F1", CENTER, 9)
+                .text("Наименование изделия\nнаименование документа", "J1", CENTER, 9)
+                .text("Версия/\nизменение", "L1", CENTER, 8)
+                .text("Номер\nрелиза", "O1", CENTER, 9)
+                .text("Информационно-\nудостоверяющий\nлист", "I31", CENTER, 16)
+                .text("Перв. примен.", "A1", ROTATION, 9)
+                .text("Справ. №", "A8", ROTATION, 9)
+                .text("Подп. и дата", "A16", ROTATION, 9)
+                .text("Инв. № дубл.", "A20", ROTATION, 9)
+                .text("Взам. инв №", "A23", ROTATION, 9)
+                .text("Подп. и дата", "A26", ROTATION, 9)
+                .text("Инв. № подл.", "A31", ROTATION, 9)
+                .text("Копировал:", "I36", LEFT, 9)
+                .text("Формат: А4", "K36", LEFT, 9)
+                .text("ИГУЛ.000000.000-УЛ", "I28", CENTER, 20)
+                //Устанавливаю формат ячеек
+                .text("", "F34", LEFT, 9)
+                .text("", "K32", CENTER, 9)
+                .text("", "L32", CENTER, 9)
+                .text("", "M32", CENTER, 9)
+                .text("", "B1", ROTATION, 9)
+                .compile();
+    }
+
+    /**
+     * Вторая и последующие страницы: форматка без основной надписи и семь записей
+     */
+    private static PageLayout followPage() {
+        return new PageLayout()
+                .rows(0, 1, 45f)
+                .rows(1, 30, 25.5f)
+                .rows(30, 34, 15f)
+                //Форматка
+                //Подпись и дата
+                .merge("A16:A19", THIN)
+                .merge("B16:B19", THIN)
+                //Инв. No дубл.
+                .merge("A20:A22", THIN)
+                .merge("B20:B22", THIN)
+                //Взаим. инв No.
+                .merge("A23:A25", THIN)
+                .merge("B23:B25", THIN)
+                //Подп. и дата
+                .merge("A26:A29", THIN)
+                .merge("B26:B29", THIN)
+                //Инв. No подп.
+                .merge("A30:A33", THIN)
+                .merge("B30:B33", THIN)
+                //Извещения
+                .merge("C31", DOTTED, THIN, THIN, THIN)
+                .merge("D31:E31", DOTTED, THIN, THIN, THIN)
+                .merge("F31", DOTTED, THIN, THIN, THIN)
+                .merge("G31", DOTTED, THIN, THIN, THIN)
+                .merge("H31", DOTTED, THIN, THIN, THIN)
+                .merge("C32", THIN, DOTTED, THIN, THIN)
+                .merge("D32:E32", THIN, DOTTED, THIN, THIN)
+                .merge("F32", THIN, DOTTED, THIN, THIN)
+                .merge("G32", THIN, DOTTED, THIN, THIN)
+                .merge("H32", THIN, DOTTED, THIN, THIN)
+                .merge("C33", THIN)
+                .merge("D33:E33", THIN)
+                .merge("F33", THIN)
+                .merge("G33", THIN)
+                .merge("H33", THIN)
+                //Обозначение
+                .merge("I31:P33", THIN)
+                //Листы
+                .merge("Q31", THIN)
+                .merge("Q32:Q33", THIN)
+                //Заголовок
+                .header()
+                //Записи
+                .entries(WorkBook.FOLLOW_PAGE_CAPACITY)
+                //Рамка
+                .merge("Q30", THIN, THIN, NONE, THIN)
+                //Надписи
+                .text("Изм.", "C33", CENTER, 9)
+                .text("Лист", "D33", CENTER, 9)
+                .text("№ докум.", "F33", CENTER, 9)
+                .text("Подп.", "G33", CENTER, 9)
+                .text("Дата", "H33", CENTER, 9)
+                .text("№ поз./\nHash", "C1", CENTER, 9)
+                .text("Обозначение\nдокумента", "F1", CENTER, 9)
+                .text("Наименование изделия\nнаименование документа", "J1", CENTER, 9)
+                .text("Версия/\nизменение", "L1", CENTER, 8)
+                .text("Номер\nрелиза", "O1", CENTER, 9)
+                .text("Подп. и дата", "A16", ROTATION, 9)
+                .text("Инв. № дубл.", "A20", ROTATION, 9)
+                .text("Взам. инв №", "A23", ROTATION, 9)
+                .text("Подп. и дата", "A26", ROTATION, 9)
+                .text("Инв. № подл.", "A30", ROTATION, 9)
+                .text("Копировал:", "I34", LEFT, 9)
+                .text("Формат: А4", "K34", LEFT, 9)
+                .text("Лист", "Q31", CENTER, 9)
+                .formula("I28", "I31", CENTER, 20)
+                .compile();
+    }
+}
@@ -0,0 +1,491 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTMergeCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTMergeCells;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
+import ru.mrak.iCard.util.CellStylePool;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static ru.mrak.iCard.WorkBook.FIRST_PAGE_HEIGHT;
+import static ru.mrak.iCard.WorkBook.FOLLOW_PAGE_HEIGHT;
+import static ru.mrak.iCard.util.PixelUtil.pixel2WidthUnits;
+
+/**
+ * Выводит информационно-удостоверяющий лист через книгу POI в формате xls или xlsx
+ * В формате xlsx в памяти держатся только строки текущей страницы, остальные сбрасываются во временный файл
+ */
+class PoiSheetWriter implements SheetWriter {
+    //Окно строк потоковой записи xlsx, страница целиком помещается в окно
+    private static final int ROW_WINDOW = FIRST_PAGE_HEIGHT;
+
+    private final Workbook wb;
+    private final Sheet sheet;
+    private final String path;
+
+    //Шрифты используемые в оформлении
+    private final Font ARIAL_8;
+    private final Font ARIAL_9;
+    private final Font ARIAL_10;
+    private final Font ARIAL_11;
+    private final Font ARIAL_16;
+    private final Font ARIAL_20;
+
+    //Стили ячеек, каждый набор параметров создается один раз
+    private final CellStylePool stylePool;
+    //Объединения всех страниц в порядке вывода
+    private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+    //Страницы шаблона, null если лист рисуется встроенной форматкой
+    private TemplatePage firstTemplatePage;
+    private TemplatePage followTemplatePage;
+
+    /**
+     * Настраивает шрифты книги
+     * @param wb - книга
+     * @param sheet - лист информационно-удостоверяющего листа
+     * @param path - путь по которому необходимо сохранить книгу
+     * @param defaultFont - настроить шрифт по умолчанию, для шаблона он берется из шаблона
+     */
+    private PoiSheetWriter(Workbook wb, Sheet sheet, String path, boolean defaultFont){
+        this.wb = wb;
+        this.sheet = sheet;
+        this.path = path;
+        stylePool = new CellStylePool(wb);
+
+        if(defaultFont) {
+            //Шрифт по умолчанию как в xls, у xlsx по умолчанию Calibri 11
+            Font font = wb.getFontAt((short) 0);
+            font.setFontName("Arial");
+            font.setFontHeightInPoints((short) 10);
+        }
+
+        //Создаю шрифты
+        ARIAL_8 = wb.createFont();
+        ARIAL_8.setFontName("Arial");
+        ARIAL_8.setFontHeightInPoints((short)8);
+        ARIAL_8.setItalic(true);
+
+        ARIAL_9 = wb.createFont();
+        ARIAL_9.setFontName("Arial");
+        ARIAL_9.setFontHeightInPoints((short)9);
+        ARIAL_9.setItalic(true);
+
+        ARIAL_10 = wb.createFont();
+        ARIAL_10.setFontName("Arial");
+        ARIAL_10.setFontHeightInPoints((short)10);
+        ARIAL_10.setItalic(true);
+
+        ARIAL_11 = wb.createFont();
+        ARIAL_11.setFontName("Arial");
+        ARIAL_11.setFontHeightInPoints((short)11);
+        ARIAL_11.setItalic(true);
+
+        ARIAL_16 = wb.createFont();
+        ARIAL_16.setFontName("Arial");
+        ARIAL_16.setFontHeightInPoints((short)16);
+        ARIAL_16.setItalic(true);
+
+        ARIAL_20 = wb.createFont();
+        ARIAL_20.setFontName("Arial");
+        ARIAL_20.setFontHeightInPoints((short)20);
+        ARIAL_20.setItalic(true);
+    }
+
+    /**
+     * Создает новую книгу и лист
+     * @param sheetName - наименование листа
+     * @param format - формат книги: xls или xlsx
+     * @param path - путь по которому необходимо сохранить книгу
+     * @return книга без страниц
+     */
+    static PoiSheetWriter create(String sheetName, String format, String path) {
+        Workbook wb;
+        if(format.equals("xlsx")) {
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(ROW_WINDOW);
+            streamingWorkbook.setCompressTempFiles(true);
+            wb = streamingWorkbook;
+        } else {
+            wb = new HSSFWorkbook();
+        }
+        return new PoiSheetWriter(wb, wb.createSheet(WorkbookUtil.createSafeSheetName(sheetName)), path, true);
+    }
+
+    /**
+     * Открывает книгу шаблона: запоминает первую и следующую страницы с первого листа шаблона и очищает лист,
+     * страницы затем копируются на лист нужное количество раз
+     * @param template - файл шаблона
+     * @param path - путь по которому необходимо сохранить книгу
+     * @return книга шаблона без страниц
+     */
+    static PoiSheetWriter fromTemplate(Path template, String path) {
+        Workbook templateBook = null;
+        try(InputStream in = Files.newInputStream(template)) {
+            templateBook = WorkbookFactory.create(in);
+        } catch (IOException | InvalidFormatException e) {
+            throw new RunFailure("Не удалось открыть шаблон информационно-удостоверяющего листа: " + template);
+        }
+        Sheet templateSheet = templateBook.getSheetAt(0);
+        if(templateSheet.getLastRowNum() < FIRST_PAGE_HEIGHT + FOLLOW_PAGE_HEIGHT - 1) {
+            throw new RunFailure("Шаблон должен содержать первую страницу в строках 1-" + FIRST_PAGE_HEIGHT
+                    + " и следующую страницу в строках " + (FIRST_PAGE_HEIGHT + 1) + "-" + (FIRST_PAGE_HEIGHT + FOLLOW_PAGE_HEIGHT));
+        }
+        TemplatePage firstPage = TemplatePage.capture(templateSheet, 0, FIRST_PAGE_HEIGHT);
+        TemplatePage followPage = TemplatePage.capture(templateSheet, FIRST_PAGE_HEIGHT, FOLLOW_PAGE_HEIGHT);
+        //Очищаю лист шаблона, настройки листа и стили остаются
+        List<Row> rows = new ArrayList<>();
+        for(Row row : templateSheet) {
+            rows.add(row);
+        }
+        for(Row row : rows) {
+            templateSheet.removeRow(row);
+        }
+        while (templateSheet.getNumMergedRegions() > 0) {
+            templateSheet.removeMergedRegion(templateSheet.getNumMergedRegions() - 1);
+        }
+        for(int rowBreak : templateSheet.getRowBreaks()) {
+            templateSheet.removeRowBreak(rowBreak);
+        }
+        PoiSheetWriter writer;
+        if(templateBook instanceof XSSFWorkbook) {
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook((XSSFWorkbook) templateBook, ROW_WINDOW);
+            streamingWorkbook.setCompressTempFiles(true);
+            writer = new PoiSheetWriter(streamingWorkbook, streamingWorkbook.getSheetAt(0), path, false);
+        } else {
+            writer = new PoiSheetWriter(templateBook, templateSheet, path, false);
+        }
+        writer.firstTemplatePage = firstPage;
+        writer.followTemplatePage = followPage;
+        return writer;
+    }
+
+    /**
+     * Сохраняет книгу на диск
+     */
+    @Override
+    public void save() {
+        addMergedRegions();
+        try(FileOutputStream fileOut = new FileOutputStream(path)) {
+            wb.write(fileOut);
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось записать информационно-удостоверяющий лист");
+        } finally {
+            //Удаляю временные файлы потоковой записи
+            if(wb instanceof SXSSFWorkbook) ((SXSSFWorkbook) wb).dispose();
+        }
+
+    }
+
+    /**
+     * Удаляет временные файлы потоковой записи, книга в памяти на диск не пишется
+     */
+    @Override
+    public void discard() {
+        if(wb instanceof SXSSFWorkbook) ((SXSSFWorkbook) wb).dispose();
+    }
+
+    /**
+     * Настраивает печать, при заполнении шаблона настройки кроме области печати берутся из шаблона
+     * @param numberOfPage - общее количество листов
+     */
+    @Override
+    public void setupPrint(int numberOfPage) {
+        wb.setPrintArea(0, "A1:Q" + (numberOfPage == 1 ? 36 : (36 + (numberOfPage - 1) * 34)));
+        if(firstTemplatePage != null) return;
+        PrintSetup printSetup = sheet.getPrintSetup();
+        sheet.setFitToPage(true);
+        printSetup.setScale((short)93);
+        printSetup.setFooterMargin(0);
+        printSetup.setHeaderMargin(0);
+        printSetup.setPaperSize(PrintSetup.A4_PAPERSIZE);
+        sheet.setMargin(Sheet.BottomMargin, 0);
+        sheet.setMargin(Sheet.TopMargin, 0);
+        sheet.setMargin(Sheet.LeftMargin, 0);
+        sheet.setMargin(Sheet.RightMargin, 0);
+        sheet.setHorizontallyCenter(true);
+        sheet.setVerticallyCenter(true);
+    }
+
+    /**
+     * Рисует форматку первого листа или копирует первую страницу шаблона
+     */
+    @Override
+    public void createFirstFrame() {
+        if(firstTemplatePage != null) {
+            copyPage(firstTemplatePage, 0);
+            return;
+        }
+        //Настраиваю ширину столбцов
+        for(int i = 0; i < PageLayout.COLUMN_WIDTHS.length; i++) {
+            sheet.setColumnWidth(i, pixel2WidthUnits(PageLayout.COLUMN_WIDTHS[i]));
+        }
+        //Форматка, записи и надписи
+        render(PageLayout.FIRST_PAGE, 0);
+    }
+
+    /**
+     * Рисует форматку второго и последующих листов или копирует следующую страницу шаблона
+     * @param rowOffset - первая строка страницы на листе
+     */
+    @Override
+    public void createFollowFrame(int rowOffset) {
+        if(followTemplatePage != null) {
+            copyPage(followTemplatePage, rowOffset);
+        } else {
+            render(PageLayout.FOLLOW_PAGE, rowOffset);
+        }
+    }
+
+    @Override
+    public void setRowBreak(int row) {
+        sheet.setRowBreak(row);
+    }
+
+    /**
+     * Копирует страницу шаблона на лист
+     * @param page - страница шаблона
+     * @param rowOffset - первая строка страницы на листе
+     */
+    private void copyPage(TemplatePage page, int rowOffset) {
+        for(int i = 0; i < page.getHeight(); i++) {
+            sheet.createRow(rowOffset + i).setHeightInPoints(page.getRowHeight(i));
+        }
+        for(TemplatePage.TemplateCell templateCell : page.getCells()) {
+            Cell cell = getCell(templateCell.row + rowOffset, templateCell.column);
+            cell.setCellStyle(templateCell.style);
+            switch (templateCell.type) {
+                case STRING:
+                    cell.setCellValue(templateCell.text);
+                    break;
+                case FORMULA:
+                    cell.setCellFormula(templateCell.text);
+                    break;
+                case NUMERIC:
+                    cell.setCellValue(templateCell.number);
+                    break;
+                default:
+                    break;
+            }
+        }
+        for(CellRangeAddress merge : page.getMerges()) {
+            mergedRegions.add(new CellRangeAddress(merge.getFirstRow() + rowOffset, merge.getLastRow() + rowOffset,
+                    merge.getFirstColumn(), merge.getLastColumn()));
+        }
+    }
+
+    /**
+     * Выводит разметку страницы на лист
+     * @param layout - разметка
+     * @param rowOffset - первая строка страницы на листе
+     */
+    private void render(PageLayout layout, int rowOffset) {
+        //Настраиваю высоту строк
+        for(int i = 0; i < layout.getHeight(); i++) {
+            sheet.createRow(rowOffset + i).setHeightInPoints(layout.getRowHeight(i));
+        }
+        //Рамки, по одному стилю на ячейку
+        for(PageLayout.Frame frame : layout.getFrames()) {
+            stylePool.apply(getCell(frame.row + rowOffset, frame.column), CellStylePool.getDefaultKey()
+                    .withBorders(frame.borderBottom, frame.borderTop, frame.borderLeft, frame.borderRight));
+        }
+        //Объединения регистрируются на листе одним проходом после вывода всех страниц
+        for(PageLayout.Op merge : layout.getMerges()) {
+            mergedRegions.add(new CellRangeAddress(merge.firstRow + rowOffset, merge.lastRow + rowOffset,
+                    merge.firstColumn, merge.lastColumn));
+        }
+        for(PageLayout.Op op : layout.getLabels()) {
+            if(op.kind == PageLayout.Kind.FORMULA) {
+                writeFormula(op.text, op.firstRow + rowOffset, op.firstColumn, op.align, font(op.fontSize));
+            } else {
+                writeText(op.text, op.firstRow + rowOffset, op.firstColumn, op.align, font(op.fontSize));
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что объединения не пересекаются, и добавляет их на лист
+     * POI при каждом добавлении сверяет новый регион со всеми добавленными, поэтому регионы проверяются
+     * один раз сортировкой по первой строке и добавляются без проверки
+     */
+    private void addMergedRegions() {
+        List<CellRangeAddress> regions = new ArrayList<>(mergedRegions);
+        Collections.sort(regions, new Comparator<CellRangeAddress>() {
+            @Override
+            public int compare(CellRangeAddress a, CellRangeAddress b) {
+                return Integer.compare(a.getFirstRow(), b.getFirstRow());
+            }
+        });
+        //Регионы, которые еще не закончились к текущей строке
+        List<CellRangeAddress> open = new ArrayList<>();
+        for(CellRangeAddress region : regions) {
+            Iterator<CellRangeAddress> iterator = open.iterator();
+            while (iterator.hasNext()) {
+                CellRangeAddress other = iterator.next();
+                if(other.getLastRow() < region.getFirstRow()) {
+                    iterator.remove();
+                } else if(other.getFirstColumn() <= region.getLastColumn() && region.getFirstColumn() <= other.getLastColumn()) {
+                    throw new RuntimeException("Объединения пересекаются: " + other.formatAsString() + " и " + region.formatAsString());
+                }
+            }
+            open.add(region);
+        }
+        if(wb instanceof SXSSFWorkbook) {
+            //В xlsx список объединений записывается в разметку листа целиком
+            XSSFSheet xssfSheet = ((SXSSFWorkbook) wb).getXSSFWorkbook().getSheetAt(0);
+            CTWorksheet worksheet = xssfSheet.getCTWorksheet();
+            CTMergeCells mergeCells = worksheet.isSetMergeCells() ? worksheet.getMergeCells() : worksheet.addNewMergeCells();
+            CTMergeCell[] cells = new CTMergeCell[mergedRegions.size()];
+            for(int i = 0; i < cells.length; i++) {
+                cells[i] = CTMergeCell.Factory.newInstance();
+                cells[i].setRef(mergedRegions.get(i).formatAsString());
+            }
+            mergeCells.setMergeCellArray(cells);
+            mergeCells.setCount(cells.length);
+        } else {
+            for(CellRangeAddress region : mergedRegions) {
+                sheet.addMergedRegionUnsafe(region);
+            }
+        }
+    }
+
+    /**
+     * @param size - размер шрифта в пунктах
+     * @return шрифт оформления
+     */
+    private Font font(int size) {
+        switch (size) {
+            case 8:
+                return ARIAL_8;
+            case 9:
+                return ARIAL_9;
+            case 10:
+                return ARIAL_10;
+            case 11:
+                return ARIAL_11;
+            case 16:
+                return ARIAL_16;
+            case 20:
+                return ARIAL_20;
+            default:
+                throw new RuntimeException("Нет шрифта размером " + size);
+        }
+    }
+
+    /**
+     * Пишет текст в поле разметки
+     * При заполнении шаблона у ячейки остается стиль шаблона, добавляется только перенос для многострочного текста
+     * @param text - текст
+     * @param place - поле разметки
+     * @param rowOffset - смещение строк разметки на листе
+     */
+    @Override
+    public void writeText(String text, PageLayout.Place place, int rowOffset) {
+        if(firstTemplatePage != null) {
+            Cell cell = getCell(place.row + rowOffset, place.column);
+            if(text.contains("\n") && !cell.getCellStyle().getWrapText()) {
+                stylePool.apply(cell, stylePool.getKey(cell).withWrap(true));
+            }
+            cell.setCellValue(text);
+        } else {
+            writeText(text, place.row + rowOffset, place.column, place.align, font(place.fontSize));
+        }
+    }
+
+    /**
+     * Пишет формулу в поле разметки
+     * @param formula - формула
+     * @param place - поле разметки
+     * @param rowOffset - смещение строк разметки на листе
+     */
+    @Override
+    public void writeFormula(String formula, PageLayout.Place place, int rowOffset) {
+        if(firstTemplatePage != null) {
+            getCell(place.row + rowOffset, place.column).setCellFormula(formula);
+        } else {
+            writeFormula(formula, place.row + rowOffset, place.column, place.align, font(place.fontSize));
+        }
+    }
+
+    /**
+     * Пишет текст в указанную ячейку
+     * @param text - текст
+     * @param rowIndex - номер строки
+     * @param columnIndex - номер столбца
+     * @param align - выравнивание
+     * @param font - шрифт
+     */
+    private void writeText(String text, int rowIndex, int columnIndex, Align align, Font font) {
+        Cell cell = setCellStyle(rowIndex, columnIndex, align, font, text.contains("\n"));
+        cell.setCellValue(text);
+    }
+
+    /**
+     * Пишет формулу в указанную ячейку
+     * @param formula - формулы
+     * @param rowIndex - номер строки
+     * @param columnIndex - номер столбца
+     * @param align - выравнивание
+     * @param font - шрифт
+     */
+    private void writeFormula(String formula, int rowIndex, int columnIndex, Align align, Font font) {
+        Cell cell = setCellStyle(rowIndex, columnIndex, align, font, false);
+        cell.setCellFormula(formula);
+    }
+
+    /**
+     * Устанавливает стиль для ячейки
+     * @param rowIndex - номер строки
+     * @param columnIndex - номер столбца
+     * @param align -выравнивание
+     * @param font - шрифт
+     * @param wrap - однострочный/многострочный
+     * @return ячейку
+     */
+    private Cell setCellStyle(int rowIndex, int columnIndex, Align align, Font font, boolean wrap) {
+        Cell cell = getCell(rowIndex, columnIndex);
+        CellStylePool.Key key = stylePool.getKey(cell);
+        switch (align) {
+            case LEFT:
+                key = key.withAlignment(HorizontalAlignment.LEFT, VerticalAlignment.CENTER);
+                break;
+            case CENTER:
+                key = key.withAlignment(HorizontalAlignment.CENTER, VerticalAlignment.CENTER);
+                break;
+            case ROTATION:
+                key = key.withAlignment(HorizontalAlignment.CENTER, VerticalAlignment.CENTER).withRotation((short)90);
+                break;
+        }
+        if(wrap) key = key.withWrap(true);
+        stylePool.apply(cell, key.withFont(font.getIndex()));
+        return cell;
+    }
+
+    /**
+     * Возврящает ячейку по номеру строки и столбца, создавая строку и ячейку при необходимости
+     * @param rowIndex - номер строки
+     * @param columnIndex - номер столбца
+     * @return ячейка
+     */
+    private Cell getCell(int rowIndex, int columnIndex) {
+        Row row = sheet.getRow(rowIndex);
+        if(row == null) row = sheet.createRow(rowIndex);
+        Cell cell = row.getCell(columnIndex);
+        if(cell == null) cell = row.createCell(columnIndex);
+        return cell;
+    }
+}
@@ -0,0 +1,14 @@
+package ru.mrak.iCard;
+
+/**
+ * Ошибка, после которой запуск продолжать нельзя: неправильная конфигурация, нет папки, не удалось записать
+ * лист или журнал. Сообщение выводит тот, кто выполняет запуск: Main завершает приложение с кодом
+ * Main.RUN_FAILED_STATUS, сервер завершает только запрос и продолжает работу
+ */
+class RunFailure extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    RunFailure(String message) {
+        super(message);
+    }
+}
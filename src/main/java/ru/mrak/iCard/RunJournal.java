@@ -0,0 +1,209 @@
+package ru.mrak.iCard;
+
+import ru.mrak.iCard.util.DigestAlgorithm;
+import ru.mrak.iCard.util.DigestCache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Журнал запуска в папке с результатами: по строке на каждый обработанный файл, строка дописывается сразу после
+ * обработки файла, поэтому при прерванном запуске в журнале остаются все завершенные файлы
+ * При удалении исходного файла (ключ d) строка с deleted=0 пишется до удаления и сбрасывается на диск, после
+ * удаления дописывается строка с deleted=1. Так суммы удаленного файла не теряются даже при отключении питания
+ * между удалением и записью журнала. Остальные строки только передаются системе: при прерывании процесса они
+ * сохраняются, при отключении питания файл будет обработан заново
+ * При продолжении запуска (ключ u) файлы из журнала не обрабатываются повторно, параметры документов
+ * восстанавливаются из журнала
+ *
+ * Формат файла: строка заголовка, затем по строке на файл
+ * size\tmtime\tdeleted\tMD5=hex,SHA-256=hex\tnewFileName\tpath\t.
+ * Точка в конце отличает полную строку от оборванной при прерывании
+ */
+class RunJournal {
+    static final String FILE_NAME = ".icard-journal";
+    private static final String HEADER = "icard-journal 1";
+    private static final String END = ".";
+
+    private final Path file;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private FileChannel channel;
+    private Writer writer;
+
+    private RunJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Открывает журнал в папке с результатами
+     * @param resultPath - папка с результатами
+     * @param resume - продолжить прерванный запуск: прочитать журнал и дописывать в него, иначе журнал начинается заново
+     * @return журнал, который необходимо закрыть методом close
+     */
+    static RunJournal open(Path resultPath, boolean resume) {
+        RunJournal journal = new RunJournal(resultPath.resolve(FILE_NAME));
+        boolean append = resume && journal.load();
+        try {
+            journal.channel = FileChannel.open(journal.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+            journal.writer = new OutputStreamWriter(Channels.newOutputStream(journal.channel), StandardCharsets.UTF_8);
+            if(!append) {
+                journal.writer.write(HEADER + "\n");
+                journal.writer.flush();
+            }
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось открыть журнал запуска: " + journal.file);
+        }
+        return journal;
+    }
+
+    /**
+     * Читает журнал, при повторе файла действует последняя строка
+     * @return true если журнал прочитан и в него можно дописывать
+     */
+    private boolean load() {
+        if(!Files.exists(file)) {
+            System.out.println("Журнала запуска нет, запуск начинается сначала: " + file);
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if(!HEADER.equals(reader.readLine())) {
+                System.out.println("Журнал запуска другого формата, запуск начинается сначала: " + file);
+                return false;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if(fields.length != 7 || !END.equals(fields[6])) continue;
+                try {
+                    Entry entry = new Entry(Paths.get(fields[5]), Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                            fields[2].equals("1"), DigestCache.parseDigests(fields[3]), fields[4]);
+                    entries.put(fields[5], entry);
+                } catch (NumberFormatException e) {
+                    //Поврежденная строка пропускается
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Не удалось прочитать журнал запуска, запуск начинается сначала: " + file);
+            entries.clear();
+            return false;
+        }
+        System.out.println("Журнал запуска: " + file + ", завершенных файлов: " + entries.size());
+        return true;
+    }
+
+    /**
+     * @param source - исходный файл
+     * @return запись завершенного файла или null если файла в журнале нет
+     */
+    Entry get(Path source) {
+        return entries.get(key(source));
+    }
+
+    /**
+     * @return записи прочитанного журнала в порядке обработки
+     */
+    Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * Дописывает строку обработанного файла, может вызываться из нескольких потоков
+     * @param source - исходный файл
+     * @param attributes - атрибуты исходного файла
+     * @param deleted - удален ли исходный файл
+     * @param digests - контрольные суммы
+     * @param newFileName - имя результирующего файла
+     * @param sync - дождаться записи строки на диск, используется перед удалением исходного файла
+     */
+    synchronized void append(Path source, BasicFileAttributes attributes, boolean deleted,
+                             Map<DigestAlgorithm, String> digests, String newFileName, boolean sync) {
+        try {
+            writer.write(attributes.size() + "\t" + attributes.lastModifiedTime().toMillis() + "\t" + (deleted ? "1" : "0")
+                    + "\t" + DigestCache.formatDigests(digests) + "\t" + newFileName + "\t" + key(source) + "\t" + END + "\n");
+            writer.flush();
+            if(sync) channel.force(false);
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось записать журнал запуска: " + file);
+        }
+    }
+
+    /**
+     * Закрывает журнал
+     */
+    synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.out.println("Не удалось записать журнал запуска: " + file);
+        }
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Завершенный файл
+     * source - исходный файл
+     * size, modified - размер и дата изменения исходного файла при обработке
+     * deleted - исходный файл удален
+     * digests - контрольные суммы
+     * newFileName - имя результирующего файла
+     */
+    static class Entry {
+        private final Path source;
+        private final long size;
+        private final long modified;
+        private final boolean deleted;
+        private final Map<DigestAlgorithm, String> digests;
+        private final String newFileName;
+
+        private Entry(Path source, long size, long modified, boolean deleted, Map<DigestAlgorithm, String> digests,
+                      String newFileName) {
+            this.source = source;
+            this.size = size;
+            this.modified = modified;
+            this.deleted = deleted;
+            this.digests = digests;
+            this.newFileName = newFileName;
+        }
+
+        Path getSource() {
+            return source;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getModified() {
+            return modified;
+        }
+
+        boolean isDeleted() {
+            return deleted;
+        }
+
+        Map<DigestAlgorithm, String> getDigests() {
+            return digests;
+        }
+
+        String getNewFileName() {
+            return newFileName;
+        }
+    }
+}
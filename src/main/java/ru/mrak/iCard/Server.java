@@ -0,0 +1,192 @@
+package ru.mrak.iCard;
+
+import org.apache.commons.codec.binary.Hex;
+import ru.mrak.iCard.util.Metrics;
+import ru.mrak.iCard.util.Progress;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сервер: держит загруженными классы листа и POI, глобальные свойства и пулы обработки файлов, чтобы запуск
+ * с кнопки не тратил время на старт JVM. Слушает порт serverPort на локальном адресе, клиент {@link Client}
+ * передает строку с ключом сервера и строку с параметрами запуска через табуляцию, сервер выполняет запуск
+ * так же, как Main, и построчно отправляет клиенту вывод, последней строкой - код завершения
+ * Ключ сервера - случайная строка, которую сервер при старте записывает в файл TOKEN_FILE в домашней папке
+ * пользователя с доступом только для владельца, запрос без ключа не выполняется
+ * Запросы выполняются по очереди в потоке приема соединений, поэтому вывод запуска можно на время запроса
+ * перенаправить клиенту заменой System.out
+ * Ошибка запуска завершает только запрос: Main.run возвращает ее код завершения, сервер продолжает работу
+ */
+public class Server {
+    static final String EXIT_MARKER = "\u0000exit ";
+    static final String TOKEN_FILE = ".icard-server-token";
+    private static final int TOKEN_BYTES = 32;
+    //Сколько ждать ключ и параметры от подключившегося клиента, чтобы зависшее соединение не держало очередь
+    private static final int REQUEST_TIMEOUT = 10000;
+    private static final String WARM_UP_FILE = "УЛ.xls";
+    private static final int WARM_UP_ENTRIES = 40;
+
+    private final WorkerPools pools;
+    private final PrintStream console;
+    private final byte[] token;
+
+    private Server(WorkerPools pools, byte[] token) {
+        this.pools = pools;
+        this.console = System.out;
+        this.token = token;
+    }
+
+    /**
+     * Запускает сервер и обрабатывает запросы до принудительного завершения
+     * @param workPath - папка запуска сервера, из нее читаются локальные свойства сервера
+     */
+    public static void serve(String workPath) {
+        FProperties properties = new FProperties(workPath);
+        warmUp(properties);
+        Progress.detachTerminal();
+        byte[] token = writeToken();
+        Server server = new Server(WorkerPools.create(Math.max(properties.getThreads(), properties.getBatchIoThreads()),
+                properties.getBytesInFlight()), token);
+        try (ServerSocket socket = new ServerSocket(properties.getServerPort(), 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Сервер ожидает запросы на " + socket.getLocalSocketAddress());
+            while (true) {
+                try (Socket client = socket.accept()) {
+                    server.handle(client);
+                } catch (IOException e) {
+                    System.out.println("Соединение с клиентом прервано: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось открыть порт сервера: " + properties.getServerPort());
+        }
+    }
+
+    /**
+     * Выполняет запрос клиента, вывод запуска отправляется клиенту
+     * @param client - соединение с клиентом
+     */
+    private void handle(Socket client) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        PrintStream out = new PrintStream(client.getOutputStream(), true, "UTF-8");
+        String key;
+        String line;
+        client.setSoTimeout(REQUEST_TIMEOUT);
+        try {
+            key = in.readLine();
+            line = in.readLine();
+        } catch (SocketTimeoutException e) {
+            console.println("Клиент не передал запрос за " + REQUEST_TIMEOUT / 1000 + " с");
+            return;
+        }
+        client.setSoTimeout(0);
+        if(key == null || !MessageDigest.isEqual(key.getBytes(StandardCharsets.UTF_8), token)) {
+            console.println("Запрос отклонен: неверный ключ сервера");
+            out.println("Неверный ключ сервера");
+            out.println(EXIT_MARKER + Main.RUN_FAILED_STATUS);
+            return;
+        }
+        if(line == null || line.isEmpty()) return;
+        String[] args = line.split("\t", -1);
+        console.println("Запрос: " + line.replace('\t', ' '));
+        int status = 0;
+        System.setOut(out);
+        try {
+            Config config = Config.parsing(args[0]);
+            if(config != null && config.isWatch()) {
+                System.out.println("Режим наблюдения недоступен при запуске через сервер");
+            } else {
+                status = Main.run(args, pools);
+            }
+        } catch (RunFailure e) {
+            System.out.println(e.getMessage());
+            status = Main.RUN_FAILED_STATUS;
+        } catch (RuntimeException e) {
+            System.out.println("Ошибка запуска: " + e);
+            status = Main.RUN_FAILED_STATUS;
+        } finally {
+            System.setOut(console);
+            Metrics.disable();
+        }
+        out.println(EXIT_MARKER + status);
+        out.flush();
+        console.println("Запрос выполнен, код завершения: " + status);
+    }
+
+    /**
+     * @return файл ключа сервера в домашней папке пользователя
+     */
+    static Path tokenPath() {
+        return Paths.get(System.getProperty("user.home"), TOKEN_FILE);
+    }
+
+    /**
+     * Создает новый ключ и записывает его в файл ключа с доступом только для владельца. Файл создается заново,
+     * чтобы права задавались при создании и ключ ни в какой момент не был доступен другим пользователям
+     * @return ключ в шестнадцатеричном виде
+     */
+    private static byte[] writeToken() {
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        byte[] token = Hex.encodeHexString(random).getBytes(StandardCharsets.UTF_8);
+        Path path = tokenPath();
+        try {
+            Files.deleteIfExists(path);
+            try {
+                Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException e) {
+                //Файловая система без прав POSIX: доступ к домашней папке уже ограничен ее владельцем
+                Files.createFile(path);
+            }
+            Files.write(path, token);
+        } catch (IOException e) {
+            throw new RunFailure("Не удалось записать ключ сервера: " + path);
+        }
+        return token;
+    }
+
+    /**
+     * Создает лист во временной папке, чтобы загрузить классы листа и POI и прогреть их до первого запроса
+     * @param properties - свойства сервера
+     */
+    private static void warmUp(FProperties properties) {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("icard-warm-up");
+            List<EntryDoc> entryDocs = new ArrayList<>();
+            for(int i = 1; i <= WARM_UP_ENTRIES; i++) {
+                EntryDoc entryDoc = new EntryDoc();
+                entryDoc.setDesignation("ИГУЛ.000000." + String.format("%03d", i) + " СБ");
+                entryDoc.setName("Документ " + i);
+                entryDoc.setMd5("00000000000000000000000000000000");
+                entryDoc.setFileName("IGUL000000" + String.format("%03d", i) + "_sb.dwg");
+                entryDoc.setSize(0);
+                entryDoc.setModified(0);
+                entryDoc.setVersion("-");
+                entryDoc.setReleaseNumber("-");
+                entryDocs.add(entryDoc);
+            }
+            Path sheet = dir.resolve(WARM_UP_FILE);
+            WorkBook.writeBook("Уд. лист", sheet.toString(), entryDocs, properties);
+            Files.deleteIfExists(sheet);
+            Files.delete(dir);
+        } catch (IOException e) {
+            System.out.println("Не удалось прогреть создание листа: " + (dir != null ? dir : e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.mrak.iCard;
+
+/**
+ * Вывод страниц информационно-удостоверяющего листа в файл
+ * WorkBook определяет, какие страницы и поля выводятся, реализация - как они записываются в файл.
+ * Методы вызываются в порядке вывода: печать, первая страница и ее поля, следующая страница и ее поля и т.д.,
+ * поля пишутся только на последнюю выведенную страницу
+ */
+interface SheetWriter {
+    /**
+     * Настраивает печать, вызывается до вывода страниц
+     * @param numberOfPage - количество страниц листа
+     */
+    void setupPrint(int numberOfPage);
+
+    /**
+     * Выводит форматку первой страницы
+     */
+    void createFirstFrame();
+
+    /**
+     * Выводит форматку второй и последующих страниц
+     * @param rowOffset - первая строка страницы на листе
+     */
+    void createFollowFrame(int rowOffset);
+
+    /**
+     * Пишет текст в поле разметки
+     * @param text - текст
+     * @param place - поле разметки
+     * @param rowOffset - смещение строк разметки на листе
+     */
+    void writeText(String text, PageLayout.Place place, int rowOffset);
+
+    /**
+     * Пишет формулу в поле разметки
+     * @param formula - формула
+     * @param place - поле разметки
+     * @param rowOffset - смещение строк разметки на листе
+     */
+    void writeFormula(String formula, PageLayout.Place place, int rowOffset);
+
+    /**
+     * Устанавливает разрыв страницы после строки
+     * @param row - последняя строка страницы
+     */
+    void setRowBreak(int row);
+
+    /**
+     * Завершает лист и сохраняет книгу на диск
+     */
+    void save();
+
+    /**
+     * Освобождает файлы записи, прерванной ошибкой до сохранения или во время него
+     */
+    void discard();
+}
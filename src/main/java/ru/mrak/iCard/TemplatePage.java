@@ -0,0 +1,122 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Страница из файла шаблона: высоты строк, ячейки со стилями и значениями, объединения
+ * Считывается из шаблона один раз и копируется на лист для каждой страницы
+ * Стили ячеек принадлежат книге шаблона, поэтому копировать страницу можно только в эту же книгу
+ */
+class TemplatePage {
+    /**
+     * Ячейка шаблона, строка считается от начала страницы
+     */
+    static final class TemplateCell {
+        final int row;
+        final int column;
+        final CellStyle style;
+        final CellType type;
+        final String text;
+        final double number;
+
+        private TemplateCell(int row, Cell cell) {
+            this.row = row;
+            this.column = cell.getColumnIndex();
+            this.style = cell.getCellStyle();
+            this.type = cell.getCellTypeEnum();
+            switch (type) {
+                case STRING:
+                    text = cell.getStringCellValue();
+                    number = 0;
+                    break;
+                case FORMULA:
+                    text = cell.getCellFormula();
+                    number = 0;
+                    break;
+                case NUMERIC:
+                    text = null;
+                    number = cell.getNumericCellValue();
+                    break;
+                default:
+                    text = null;
+                    number = 0;
+            }
+        }
+    }
+
+    private final float[] rowHeights;
+    private final List<TemplateCell> cells;
+    private final List<CellRangeAddress> merges;
+
+    private TemplatePage(float[] rowHeights, List<TemplateCell> cells, List<CellRangeAddress> merges) {
+        this.rowHeights = rowHeights;
+        this.cells = cells;
+        this.merges = merges;
+    }
+
+    /**
+     * Считывает страницу с листа шаблона
+     * @param sheet - лист шаблона
+     * @param firstRow - первая строка страницы
+     * @param height - количество строк страницы
+     * @return страница шаблона
+     */
+    static TemplatePage capture(Sheet sheet, int firstRow, int height) {
+        float[] rowHeights = new float[height];
+        List<TemplateCell> cells = new ArrayList<>();
+        for(int i = 0; i < height; i++) {
+            Row row = sheet.getRow(firstRow + i);
+            if(row == null) {
+                rowHeights[i] = sheet.getDefaultRowHeightInPoints();
+                continue;
+            }
+            rowHeights[i] = row.getHeightInPoints();
+            for(Cell cell : row) {
+                cells.add(new TemplateCell(i, cell));
+            }
+        }
+        List<CellRangeAddress> merges = new ArrayList<>();
+        for(CellRangeAddress region : sheet.getMergedRegions()) {
+            if(region.getFirstRow() >= firstRow && region.getLastRow() < firstRow + height) {
+                merges.add(new CellRangeAddress(region.getFirstRow() - firstRow, region.getLastRow() - firstRow,
+                        region.getFirstColumn(), region.getLastColumn()));
+            }
+        }
+        return new TemplatePage(rowHeights, Collections.unmodifiableList(cells), Collections.unmodifiableList(merges));
+    }
+
+    /**
+     * @param row - строка относительно начала страницы
+     * @return высота строки в пунктах
+     */
+    float getRowHeight(int row) {
+        return rowHeights[row];
+    }
+
+    /**
+     * @return количество строк страницы
+     */
+    int getHeight() {
+        return rowHeights.length;
+    }
+
+    List<TemplateCell> getCells() {
+        return cells;
+    }
+
+    /**
+     * @return объединения, строки считаются от начала страницы
+     */
+    List<CellRangeAddress> getMerges() {
+        return merges;
+    }
+}
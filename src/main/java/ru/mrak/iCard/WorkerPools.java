@@ -0,0 +1,53 @@
+package ru.mrak.iCard;
+
+import ru.mrak.iCard.util.ByteBudget;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Пулы потоков и лимит объема, общие для нескольких проходов по папкам: проектов пакетного режима или
+ * запросов сервера. Размер пула обработки ограничивает количество файлов, которые читаются и пишутся
+ * одновременно во всех проходах, буферы копирования потоков пула используются повторно
+ */
+public class WorkerPools {
+    private final ExecutorService executor;
+    private final ForkJoinPool scanPool;
+    private final ByteBudget budget;
+
+    private WorkerPools(int threads, long bytesInFlight) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.scanPool = new ForkJoinPool(threads);
+        this.budget = new ByteBudget(bytesInFlight * 1024 * 1024);
+    }
+
+    /**
+     * @param threads - количество потоков обработки файлов и обхода папок
+     * @param bytesInFlight - предельный суммарный размер одновременно обрабатываемых файлов в мегабайтах
+     * @return новые пулы, которые необходимо остановить методом shutdown
+     */
+    public static WorkerPools create(int threads, long bytesInFlight) {
+        return new WorkerPools(threads, bytesInFlight);
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public ForkJoinPool getScanPool() {
+        return scanPool;
+    }
+
+    public ByteBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Останавливает пулы
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        scanPool.shutdown();
+    }
+}
@@ -0,0 +1,35 @@
+package ru.mrak.iCard.util;
+
+/**
+ * Ограничивает суммарный размер файлов, которые обрабатываются одновременно
+ * Файл больше лимита допускается к обработке, только когда других файлов в работе нет
+ */
+public class ByteBudget {
+    private final long limit;
+    private long inFlight;
+
+    public ByteBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Резервирует байты, ожидая пока освободится место
+     * @param bytes - размер файла
+     * @throws InterruptedException - если ожидание прервано
+     */
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        while (inFlight > 0 && inFlight + bytes > limit) {
+            wait();
+        }
+        inFlight += bytes;
+    }
+
+    /**
+     * Освобождает зарезервированные байты
+     * @param bytes - размер файла
+     */
+    public synchronized void release(long bytes) {
+        inFlight -= bytes;
+        notifyAll();
+    }
+}
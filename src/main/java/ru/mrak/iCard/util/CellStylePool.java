@@ -0,0 +1,181 @@
+package ru.mrak.iCard.util;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Пул стилей ячеек книги
+ * Каждый набор параметров (рамки, выравнивание, поворот, перенос, шрифт) создается в книге один раз,
+ * вместо поиска подходящего стиля среди всех стилей книги, как это делает CellUtil
+ */
+public class CellStylePool {
+    private static final Key DEFAULT_KEY = new Key(BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE,
+            HorizontalAlignment.GENERAL, VerticalAlignment.BOTTOM, (short) 0, false, (short) 0);
+
+    private final Workbook wb;
+    private final Map<Key, CellStyle> styles = new HashMap<>();
+    private final Map<Short, Key> keys = new HashMap<>();
+
+    public CellStylePool(Workbook wb) {
+        this.wb = wb;
+    }
+
+    /**
+     * @param cell - ячейка
+     * @return параметры текущего стиля ячейки
+     */
+    public Key getKey(Cell cell) {
+        CellStyle style = cell.getCellStyle();
+        Key key = keys.get(style.getIndex());
+        if(key == null) {
+            //Стиль создан не пулом, запоминаю его параметры, чтобы использовать повторно
+            key = new Key(style);
+            keys.put(style.getIndex(), key);
+            if(!styles.containsKey(key)) styles.put(key, style);
+        }
+        return key;
+    }
+
+    /**
+     * Устанавливает ячейке стиль с указанными параметрами, создавая его при первом обращении
+     * @param cell - ячейка
+     * @param key - параметры стиля
+     */
+    public void apply(Cell cell, Key key) {
+        CellStyle style = styles.get(key);
+        if(style == null) {
+            style = wb.createCellStyle();
+            key.applyTo(style, wb);
+            styles.put(key, style);
+            keys.put(style.getIndex(), key);
+        }
+        cell.setCellStyle(style);
+    }
+
+    /**
+     * @return параметры нового стиля: без рамок, выравнивание по умолчанию, шрифт по умолчанию
+     */
+    public static Key getDefaultKey() {
+        return DEFAULT_KEY;
+    }
+
+    /**
+     * Неизменяемый набор параметров стиля
+     */
+    public static final class Key {
+        private final BorderStyle borderBottom;
+        private final BorderStyle borderTop;
+        private final BorderStyle borderLeft;
+        private final BorderStyle borderRight;
+        private final HorizontalAlignment alignment;
+        private final VerticalAlignment verticalAlignment;
+        private final short rotation;
+        private final boolean wrap;
+        private final short font;
+
+        private Key(CellStyle style) {
+            this(style.getBorderBottomEnum(), style.getBorderTopEnum(), style.getBorderLeftEnum(),
+                    style.getBorderRightEnum(), style.getAlignmentEnum(), style.getVerticalAlignmentEnum(),
+                    style.getRotation(), style.getWrapText(), style.getFontIndex());
+        }
+
+        private Key(BorderStyle borderBottom, BorderStyle borderTop, BorderStyle borderLeft, BorderStyle borderRight,
+                    HorizontalAlignment alignment, VerticalAlignment verticalAlignment,
+                    short rotation, boolean wrap, short font) {
+            this.borderBottom = borderBottom;
+            this.borderTop = borderTop;
+            this.borderLeft = borderLeft;
+            this.borderRight = borderRight;
+            this.alignment = alignment;
+            this.verticalAlignment = verticalAlignment;
+            this.rotation = rotation;
+            this.wrap = wrap;
+            this.font = font;
+        }
+
+        public Key withBorders(BorderStyle bottom, BorderStyle top, BorderStyle left, BorderStyle right) {
+            return new Key(bottom, top, left, right, alignment, verticalAlignment, rotation, wrap, font);
+        }
+
+        public Key withBorderBottom(BorderStyle border) {
+            return withBorders(border, borderTop, borderLeft, borderRight);
+        }
+
+        public Key withBorderTop(BorderStyle border) {
+            return withBorders(borderBottom, border, borderLeft, borderRight);
+        }
+
+        public Key withBorderLeft(BorderStyle border) {
+            return withBorders(borderBottom, borderTop, border, borderRight);
+        }
+
+        public Key withBorderRight(BorderStyle border) {
+            return withBorders(borderBottom, borderTop, borderLeft, border);
+        }
+
+        public Key withAlignment(HorizontalAlignment alignment, VerticalAlignment verticalAlignment) {
+            return new Key(borderBottom, borderTop, borderLeft, borderRight, alignment, verticalAlignment, rotation, wrap, font);
+        }
+
+        public Key withRotation(short rotation) {
+            return new Key(borderBottom, borderTop, borderLeft, borderRight, alignment, verticalAlignment, rotation, wrap, font);
+        }
+
+        public Key withWrap(boolean wrap) {
+            return new Key(borderBottom, borderTop, borderLeft, borderRight, alignment, verticalAlignment, rotation, wrap, font);
+        }
+
+        public Key withFont(short font) {
+            return new Key(borderBottom, borderTop, borderLeft, borderRight, alignment, verticalAlignment, rotation, wrap, font);
+        }
+
+        private void applyTo(CellStyle style, Workbook wb) {
+            style.setBorderBottom(borderBottom);
+            style.setBorderTop(borderTop);
+            style.setBorderLeft(borderLeft);
+            style.setBorderRight(borderRight);
+            style.setAlignment(alignment);
+            style.setVerticalAlignment(verticalAlignment);
+            style.setRotation(rotation);
+            style.setWrapText(wrap);
+            style.setFont(wb.getFontAt(font));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return borderBottom == key.borderBottom
+                    && borderTop == key.borderTop
+                    && borderLeft == key.borderLeft
+                    && borderRight == key.borderRight
+                    && alignment == key.alignment
+                    && verticalAlignment == key.verticalAlignment
+                    && rotation == key.rotation
+                    && wrap == key.wrap
+                    && font == key.font;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = borderBottom.hashCode();
+            result = 31 * result + borderTop.hashCode();
+            result = 31 * result + borderLeft.hashCode();
+            result = 31 * result + borderRight.hashCode();
+            result = 31 * result + alignment.hashCode();
+            result = 31 * result + verticalAlignment.hashCode();
+            result = 31 * result + rotation;
+            result = 31 * result + (wrap ? 1 : 0);
+            result = 31 * result + font;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package ru.mrak.iCard.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Алгоритмы контрольных сумм, которые можно считать за одно чтение файла
+ * CRC32C есть только начиная с Java 9, на Java 8 он недоступен
+ * TREE-SHA-256 не считается потоком, его блоки хешируются параллельно в {@link TreeHash}
+ */
+public enum DigestAlgorithm {
+    MD5("MD5"),
+    SHA_1("SHA-1"),
+    SHA_256("SHA-256"),
+    CRC32("CRC32"),
+    CRC32C("CRC32C"),
+    TREE_SHA_256("TREE-SHA-256");
+
+    private final String title;
+
+    DigestAlgorithm(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Ищет алгоритм по названию без учета регистра
+     * @param title - название, например SHA-256
+     * @return алгоритм или null если такого нет
+     */
+    public static DigestAlgorithm byTitle(String title) {
+        for(DigestAlgorithm algorithm : values()) {
+            if(algorithm.title.equalsIgnoreCase(title.trim())) return algorithm;
+        }
+        return null;
+    }
+
+    /**
+     * @return true если сумму можно считать потоком через {@link #newDigest()}
+     */
+    public boolean isStreaming() {
+        return this != TREE_SHA_256;
+    }
+
+    /**
+     * @return true если алгоритм поддерживается текущей Java
+     */
+    public boolean isAvailable() {
+        if(!isStreaming()) return true;
+        try {
+            newDigest();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Создает новый подсчет контрольной суммы
+     * @return подсчет
+     * @throws IllegalStateException - если алгоритм не поддерживается
+     */
+    public Digest newDigest() {
+        switch (this) {
+            case CRC32:
+                return new Crc32Digest();
+            case CRC32C:
+                return new Crc32cDigest();
+            case TREE_SHA_256:
+                throw new IllegalStateException("Сумма " + title + " считается через TreeHash");
+            default:
+                try {
+                    return new MessageDigestDigest(MessageDigest.getInstance(title));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException("Нет алгоритма " + title, e);
+                }
+        }
+    }
+
+    /**
+     * Подсчет контрольной суммы
+     * update не меняет позицию буфера, поэтому один буфер можно передать в несколько подсчетов
+     */
+    public static abstract class Digest {
+        public abstract void update(ByteBuffer buffer);
+
+        public abstract byte[] digest();
+    }
+
+    private static class MessageDigestDigest extends Digest {
+        private final MessageDigest messageDigest;
+
+        private MessageDigestDigest(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            messageDigest.update(buffer.duplicate());
+        }
+
+        @Override
+        public byte[] digest() {
+            return messageDigest.digest();
+        }
+    }
+
+    private static class Crc32Digest extends Digest {
+        private final CRC32 crc = new CRC32();
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            crc.update(buffer.duplicate());
+        }
+
+        @Override
+        public byte[] digest() {
+            return checksumBytes(crc.getValue());
+        }
+    }
+
+    /**
+     * CRC32C подключается через отражение, чтобы приложение собиралось и работало на Java 8
+     */
+    private static class Crc32cDigest extends Digest {
+        private static final Class<?> CRC32C_CLASS;
+        private static final Method UPDATE;
+
+        static {
+            Class<?> crcClass = null;
+            Method update = null;
+            try {
+                crcClass = Class.forName("java.util.zip.CRC32C");
+                update = crcClass.getMethod("update", ByteBuffer.class);
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                crcClass = null;
+            }
+            CRC32C_CLASS = crcClass;
+            UPDATE = update;
+        }
+
+        private final Checksum crc;
+
+        private Crc32cDigest() {
+            if(CRC32C_CLASS == null) throw new IllegalStateException("Нет алгоритма CRC32C, требуется Java 9 или новее");
+            try {
+                crc = (Checksum) CRC32C_CLASS.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Нет алгоритма CRC32C", e);
+            }
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            try {
+                UPDATE.invoke(crc, buffer.duplicate());
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Ошибка подсчета CRC32C", e);
+            }
+        }
+
+        @Override
+        public byte[] digest() {
+            return checksumBytes(crc.getValue());
+        }
+    }
+
+    private static byte[] checksumBytes(long value) {
+        return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+}
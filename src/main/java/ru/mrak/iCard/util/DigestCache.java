@@ -0,0 +1,204 @@
+package ru.mrak.iCard.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Кеш контрольных сумм файлов, сохраняемый между запусками
+ * Запись кеша привязана к пути, размеру и дате изменения файла, при включенном fingerprint
+ * дополнительно к контрольной сумме первых и последних 4 КБ файла
+ * Если хотя бы один из параметров изменился, запись считается недействительной
+ *
+ * Формат файла: строка заголовка, затем по строке на файл
+ * size\tmtime\tfingerprint\tMD5=hex,SHA-256=hex\tpath
+ * Файл перезаписывается целиком через временный файл и атомарное перемещение,
+ * в него попадают только файлы, встреченные в текущем запуске
+ */
+public class DigestCache {
+    private static final String HEADER = "icard-digest-cache 1";
+    private static final int FINGERPRINT_BLOCK = 4096;
+
+    private final Path cacheFile;
+    private final boolean fingerprint;
+    private final Map<String, Entry> loaded = new ConcurrentHashMap<>();
+    private final Map<String, Entry> actual = new ConcurrentHashMap<>();
+
+    private DigestCache(Path cacheFile, boolean fingerprint) {
+        this.cacheFile = cacheFile;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Загружает кеш из файла
+     * Если файла нет или он поврежден, возвращает пустой кеш
+     * @param cacheFile - файл кеша
+     * @param fingerprint - проверять ли начало и конец файла
+     * @param ignoreSaved - не использовать сохраненные записи, кеш будет заполнен заново
+     * @return кеш
+     */
+    public static DigestCache load(Path cacheFile, boolean fingerprint, boolean ignoreSaved) {
+        DigestCache cache = new DigestCache(cacheFile, fingerprint);
+        if(ignoreSaved || !Files.exists(cacheFile)) return cache;
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            if(!HEADER.equals(reader.readLine())) {
+                System.out.println("Кеш контрольных сумм другого формата, будет создан заново: " + cacheFile);
+                return cache;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 5);
+                if(fields.length < 5) continue;
+                try {
+                    Entry entry = new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                            fields[2], parseDigests(fields[3]));
+                    if(!entry.digests.isEmpty()) cache.loaded.put(fields[4], entry);
+                } catch (NumberFormatException e) {
+                    //Поврежденная строка пропускается
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Не удалось прочитать кеш контрольных сумм: " + cacheFile);
+            cache.loaded.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Возвращает контрольные суммы из кеша если файл не изменился
+     * @param file - файл
+     * @param attributes - атрибуты файла
+     * @return контрольные суммы или null если в кеше их нет или они недействительны
+     */
+    public Map<DigestAlgorithm, String> get(Path file, BasicFileAttributes attributes) {
+        String key = key(file);
+        Entry entry = loaded.get(key);
+        if(entry == null
+                || entry.size != attributes.size()
+                || entry.modified != attributes.lastModifiedTime().toMillis()) return null;
+        if(fingerprint && !entry.fingerprint.equals(fingerprint(file, attributes.size()))) return null;
+        actual.put(key, entry);
+        return entry.digests;
+    }
+
+    /**
+     * Запоминает контрольные суммы файла
+     * @param file - файл
+     * @param attributes - атрибуты файла на момент подсчета
+     * @param digests - все известные контрольные суммы файла
+     */
+    public void put(Path file, BasicFileAttributes attributes, Map<DigestAlgorithm, String> digests) {
+        String print = fingerprint ? fingerprint(file, attributes.size()) : "-";
+        actual.put(key(file), new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), print,
+                new EnumMap<>(digests)));
+    }
+
+    /**
+     * Сохраняет кеш на диск через временный файл
+     */
+    public void save() {
+        Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for(Map.Entry<String, Entry> e : actual.entrySet()) {
+                    Entry entry = e.getValue();
+                    writer.write(entry.size + "\t" + entry.modified + "\t" + entry.fingerprint +
+                            "\t" + formatDigests(entry.digests) + "\t" + e.getKey());
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.out.println("Не удалось сохранить кеш контрольных сумм: " + cacheFile);
+        }
+    }
+
+    /**
+     * Разбирает контрольные суммы из строки вида MD5=hex,SHA-256=hex
+     * @param field - строка контрольных сумм
+     * @return контрольные суммы, неизвестные алгоритмы пропускаются
+     */
+    public static Map<DigestAlgorithm, String> parseDigests(String field) {
+        Map<DigestAlgorithm, String> digests = new EnumMap<>(DigestAlgorithm.class);
+        for(String pair : field.split(",")) {
+            int separator = pair.indexOf('=');
+            if(separator < 0) continue;
+            DigestAlgorithm algorithm = DigestAlgorithm.byTitle(pair.substring(0, separator));
+            if(algorithm != null) digests.put(algorithm, pair.substring(separator + 1));
+        }
+        return digests;
+    }
+
+    /**
+     * @param digests - контрольные суммы
+     * @return строка вида MD5=hex,SHA-256=hex
+     */
+    public static String formatDigests(Map<DigestAlgorithm, String> digests) {
+        StringBuilder field = new StringBuilder();
+        for(Map.Entry<DigestAlgorithm, String> digest : digests.entrySet()) {
+            if(field.length() > 0) field.append(',');
+            field.append(digest.getKey().getTitle()).append('=').append(digest.getValue());
+        }
+        return field.toString();
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Считает контрольную сумму первых и последних 4 КБ файла
+     * @param file - файл
+     * @param size - размер файла
+     * @return контрольная сумма или пустая строка если файл не удалось прочитать
+     */
+    private static String fingerprint(Path file, long size) {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_BLOCK);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(buffer, 0);
+            crc.update(buffer.array(), 0, buffer.position());
+            if(size > FINGERPRINT_BLOCK) {
+                ((Buffer) buffer).clear();
+                channel.read(buffer, Math.max(FINGERPRINT_BLOCK, size - FINGERPRINT_BLOCK));
+                crc.update(buffer.array(), 0, buffer.position());
+            }
+        } catch (IOException e) {
+            return "";
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Запись кеша
+     */
+    private static class Entry {
+        private final long size;
+        private final long modified;
+        private final String fingerprint;
+        private final Map<DigestAlgorithm, String> digests;
+
+        private Entry(long size, long modified, String fingerprint, Map<DigestAlgorithm, String> digests) {
+            this.size = size;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+            this.digests = digests;
+        }
+    }
+}
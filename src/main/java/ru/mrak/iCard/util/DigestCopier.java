@@ -0,0 +1,87 @@
+package ru.mrak.iCard.util;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Копирует файл и считает его контрольные суммы за одно чтение исходного файла
+ * Данные читаются через FileChannel в прямой буфер, один и тот же буфер передается
+ * во все подсчеты контрольных сумм и в канал результирующего файла
+ * У каждого потока свой буфер, он переиспользуется для всех файлов
+ */
+public class DigestCopier {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private DigestCopier() {}
+
+    /**
+     * Читает файл один раз, при необходимости копируя его и считая контрольные суммы
+     * @param file - исходный файл
+     * @param newFile - результирующий файл, null если копировать не нужно
+     * @param algorithms - алгоритмы контрольных сумм, пустой список если считать не нужно,
+     *                   непотоковые алгоритмы пропускаются
+     * @return контрольные суммы исходного файла в шестнадцатеричном виде
+     * @throws IOException - если не удалось прочитать или записать файл
+     */
+    public static Map<DigestAlgorithm, String> transfer(Path file, Path newFile, Collection<DigestAlgorithm> algorithms)
+            throws IOException {
+        return transfer(file, newFile, algorithms, buffers.get());
+    }
+
+    /**
+     * Читает файл один раз через указанный буфер, размер буфера задает размер одного чтения и записи
+     * @param file - исходный файл
+     * @param newFile - результирующий файл, null если копировать не нужно
+     * @param algorithms - алгоритмы контрольных сумм, непотоковые алгоритмы пропускаются
+     * @param buffer - буфер чтения, используется одним потоком
+     * @return контрольные суммы исходного файла в шестнадцатеричном виде
+     * @throws IOException - если не удалось прочитать или записать файл
+     */
+    public static Map<DigestAlgorithm, String> transfer(Path file, Path newFile, Collection<DigestAlgorithm> algorithms,
+                                                        ByteBuffer buffer) throws IOException {
+        Map<DigestAlgorithm, DigestAlgorithm.Digest> digests = new EnumMap<>(DigestAlgorithm.class);
+        for(DigestAlgorithm algorithm : algorithms) {
+            if(algorithm.isStreaming()) digests.put(algorithm, algorithm.newDigest());
+        }
+        //Методы Buffer вызываются через приведение, чтобы сборка новой Java работала на Java 8
+        Buffer view = buffer;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel out = newFile != null ? FileChannel.open(newFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) : null) {
+            view.clear();
+            while (in.read(buffer) >= 0) {
+                view.flip();
+                for(DigestAlgorithm.Digest digest : digests.values()) {
+                    digest.update(buffer);
+                }
+                if(out != null) {
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                view.clear();
+            }
+        }
+        Map<DigestAlgorithm, String> result = new EnumMap<>(DigestAlgorithm.class);
+        for(Map.Entry<DigestAlgorithm, DigestAlgorithm.Digest> digest : digests.entrySet()) {
+            result.put(digest.getKey(), Hex.encodeHexString(digest.getValue().digest()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+package ru.mrak.iCard.util;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * События JDK Flight Recorder для Metrics
+ * Приложение собирается для Java 8, где jdk.jfr может не быть, поэтому классы jdk.jfr не упоминаются в коде:
+ * тип события ru.mrak.iCard.Work создается через jdk.jfr.EventFactory при загрузке класса, методы события
+ * вызываются через отражение. Если jdk.jfr нет, available возвращает false и события не создаются
+ */
+final class FlightEvents {
+    private static final Object FACTORY;
+    private static final Method NEW_EVENT;
+    private static final Method IS_ENABLED;
+    private static final Method BEGIN;
+    private static final Method END;
+    private static final Method SHOULD_COMMIT;
+    private static final Method SET;
+    private static final Method COMMIT;
+    //Номера полей события в порядке описания в createFactory
+    private static final int PHASE = 0;
+    private static final int PATH = 1;
+    private static final int BYTES = 2;
+
+    static {
+        Object factory = null;
+        Method newEvent = null;
+        Method isEnabled = null;
+        Method begin = null;
+        Method end = null;
+        Method shouldCommit = null;
+        Method set = null;
+        Method commit = null;
+        try {
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            factory = createFactory(factoryClass);
+            newEvent = factoryClass.getMethod("newEvent");
+            isEnabled = eventClass.getMethod("isEnabled");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            shouldCommit = eventClass.getMethod("shouldCommit");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            //jdk.jfr есть в Java 11 и в сборках Java 8 начиная с 8u262, без него события не пишутся
+            factory = null;
+        }
+        FACTORY = factory;
+        NEW_EVENT = newEvent;
+        IS_ENABLED = isEnabled;
+        BEGIN = begin;
+        END = end;
+        SHOULD_COMMIT = shouldCommit;
+        SET = set;
+        COMMIT = commit;
+    }
+
+    private FlightEvents() {}
+
+    /**
+     * @return true, если в JVM есть jdk.jfr и тип события создан
+     */
+    static boolean available() {
+        return FACTORY != null;
+    }
+
+    /**
+     * @return начатое событие или null, если запись события выключена или jdk.jfr нет
+     */
+    static Object begin() {
+        if(FACTORY == null) return null;
+        try {
+            Object event = NEW_EVENT.invoke(FACTORY);
+            if(!(Boolean) IS_ENABLED.invoke(event)) return null;
+            BEGIN.invoke(event);
+            return event;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Завершает событие и записывает его, если оно проходит порог длительности записи
+     * @param event - событие из begin
+     * @param phase - этап
+     * @param target - файл или папка
+     * @param bytes - объем данных этапа
+     */
+    static void commit(Object event, String phase, Object target, long bytes) {
+        try {
+            END.invoke(event);
+            if((Boolean) SHOULD_COMMIT.invoke(event)) {
+                SET.invoke(event, PHASE, phase);
+                SET.invoke(event, PATH, target != null ? target.toString() : null);
+                SET.invoke(event, BYTES, bytes);
+                COMMIT.invoke(event);
+            }
+        } catch (ReflectiveOperationException e) {
+            //Событие не записано, замер этапа в сводке от этого не зависит
+        }
+    }
+
+    /**
+     * Описывает тип события ru.mrak.iCard.Work: этап, путь и объем данных
+     * @param factoryClass - jdk.jfr.EventFactory
+     * @return фабрика событий
+     */
+    private static Object createFactory(Class<?> factoryClass) throws ReflectiveOperationException {
+        Class<?> elementClass = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+        Constructor<?> element = elementClass.getConstructor(Class.class, Object.class);
+        Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class, List.class);
+
+        List<Object> annotations = Arrays.asList(
+                element.newInstance(annotation("jdk.jfr.Name"), "ru.mrak.iCard.Work"),
+                element.newInstance(annotation("jdk.jfr.Label"), "iCard Work"),
+                element.newInstance(annotation("jdk.jfr.Category"), new String[]{"iCard"}),
+                element.newInstance(annotation("jdk.jfr.Description"), "Этап обработки файла или формирования листа"));
+        List<Object> fields = new ArrayList<>();
+        fields.add(descriptor.newInstance(String.class, "phase",
+                Collections.singletonList(element.newInstance(annotation("jdk.jfr.Label"), "Phase"))));
+        fields.add(descriptor.newInstance(String.class, "path",
+                Collections.singletonList(element.newInstance(annotation("jdk.jfr.Label"), "Path"))));
+        fields.add(descriptor.newInstance(long.class, "bytes",
+                Arrays.asList(element.newInstance(annotation("jdk.jfr.Label"), "Bytes"),
+                        element.newInstance(annotation("jdk.jfr.DataAmount"), "BYTES"))));
+        return factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+    }
+
+    private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+        return Class.forName(name).asSubclass(Annotation.class);
+    }
+}
@@ -0,0 +1,234 @@
+package ru.mrak.iCard.util;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Замеры этапов работы: обход папки, разбор имен, атрибуты, контрольные суммы, копирование, удаление,
+ * разметка, вывод записей и сохранение листа
+ * Каждый этап над одним файлом или листом отмечается событием JDK Flight Recorder ru.mrak.iCard.Work с путем
+ * и размером, событие пишется, только когда запись JFR включена. При включенной сводке (ключ m) по этапам
+ * копятся количество, байты, время и время процессора, длительности по файлам - для процентилей
+ * На Java без jdk.jfr события не создаются, без сводки и JFR замер этапа ничего не стоит
+ */
+public final class Metrics {
+    /**
+     * Этапы работы
+     */
+    public enum Phase {
+        WALK("walk"),
+        PARSE("parse"),
+        STAT("stat"),
+        HASH("hash"),
+        COPY("copy"),
+        DELETE("delete"),
+        LAYOUT("layout"),
+        RENDER("render"),
+        SAVE("save");
+
+        private final String title;
+
+        Phase(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    private static final boolean FLIGHT_RECORDER = FlightEvents.available();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final PhaseStats[] STATS = new PhaseStats[Phase.values().length];
+    static {
+        for(int i = 0; i < STATS.length; i++) {
+            STATS[i] = new PhaseStats();
+        }
+    }
+    private static final Span NONE = new Span(null, null, null, false);
+
+    private static volatile boolean collecting;
+    private static boolean threadCpuTime;
+    private static long startNanos;
+    private static long startCpuNanos;
+
+    private Metrics() {}
+
+    /**
+     * Включает сбор сводки и сбрасывает накопленные замеры, вызывается в начале запуска
+     */
+    public static synchronized void enable() {
+        for(int i = 0; i < STATS.length; i++) {
+            STATS[i] = new PhaseStats();
+        }
+        threadCpuTime = THREADS.isCurrentThreadCpuTimeSupported();
+        if(threadCpuTime && !THREADS.isThreadCpuTimeEnabled()) THREADS.setThreadCpuTimeEnabled(true);
+        startNanos = System.nanoTime();
+        startCpuNanos = processCpuNanos();
+        collecting = true;
+    }
+
+    /**
+     * Выключает сбор сводки, вызывается сервером после запроса
+     */
+    public static synchronized void disable() {
+        collecting = false;
+    }
+
+    /**
+     * Начинает замер этапа
+     * @param phase - этап
+     * @param target - файл или папка, путь берется только при записи события
+     * @return замер, который необходимо завершить методом end
+     */
+    public static Span start(Phase phase, Object target) {
+        Object event = FLIGHT_RECORDER ? FlightEvents.begin() : null;
+        if(event == null && !collecting) return NONE;
+        return new Span(phase, target, event, collecting);
+    }
+
+    /**
+     * Замер одного этапа
+     */
+    public static final class Span {
+        private final Phase phase;
+        private final Object target;
+        private final Object event;
+        private final boolean collect;
+        private final long startNanos;
+        private final long startCpuNanos;
+
+        private Span(Phase phase, Object target, Object event, boolean collect) {
+            this.phase = phase;
+            this.target = target;
+            this.event = event;
+            this.collect = collect;
+            this.startNanos = collect ? System.nanoTime() : 0;
+            this.startCpuNanos = collect && threadCpuTime ? THREADS.getCurrentThreadCpuTime() : 0;
+        }
+
+        /**
+         * Завершает замер
+         * @param bytes - объем данных этапа, 0 если не применимо
+         */
+        public void end(long bytes) {
+            if(this == NONE) return;
+            if(event != null) FlightEvents.commit(event, phase.title, target, bytes);
+            if(collect) {
+                long cpu = threadCpuTime ? THREADS.getCurrentThreadCpuTime() - startCpuNanos : 0;
+                STATS[phase.ordinal()].add(System.nanoTime() - startNanos, cpu, bytes);
+            }
+        }
+    }
+
+    /**
+     * Записывает сводку запуска в JSON
+     * @param file - файл сводки
+     * @param run - параметры запуска: конфигурация, папки
+     * @param files - количество обработанных файлов
+     */
+    public static synchronized void writeSummary(Path file, Map<String, String> run, int files) {
+        if(!collecting) return;
+        long wall = System.nanoTime() - startNanos;
+        long cpu = processCpuNanos();
+        StringBuilder json = new StringBuilder("{\n");
+        for(Map.Entry<String, String> entry : run.entrySet()) {
+            json.append("  ").append(quote(entry.getKey())).append(": ").append(quote(entry.getValue())).append(",\n");
+        }
+        json.append("  \"files\": ").append(files).append(",\n");
+        json.append("  \"wallMillis\": ").append(millis(wall)).append(",\n");
+        json.append("  \"cpuMillis\": ").append(cpu >= 0 && startCpuNanos >= 0 ? millis(cpu - startCpuNanos) : "null").append(",\n");
+        json.append("  \"phases\": {");
+        boolean first = true;
+        for(Phase phase : Phase.values()) {
+            PhaseStats stats = STATS[phase.ordinal()];
+            synchronized (stats) {
+                if(stats.count == 0) continue;
+                long[] durations = Arrays.copyOf(stats.durations, stats.count);
+                Arrays.sort(durations);
+                json.append(first ? "\n" : ",\n");
+                first = false;
+                json.append("    ").append(quote(phase.title)).append(": {")
+                        .append("\"count\": ").append(stats.count)
+                        .append(", \"bytes\": ").append(stats.bytes)
+                        .append(", \"wallMillis\": ").append(millis(stats.wallNanos))
+                        .append(", \"cpuMillis\": ").append(threadCpuTime ? millis(stats.cpuNanos) : "null")
+                        .append(", \"p50Millis\": ").append(millis(percentile(durations, 50)))
+                        .append(", \"p90Millis\": ").append(millis(percentile(durations, 90)))
+                        .append(", \"p99Millis\": ").append(millis(percentile(durations, 99)))
+                        .append(", \"maxMillis\": ").append(millis(durations[durations.length - 1]))
+                        .append('}');
+            }
+        }
+        json.append("\n  }\n}\n");
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+            System.out.println("Сводка замеров: " + file);
+        } catch (IOException e) {
+            System.out.println("Не удалось записать сводку замеров: " + file);
+        }
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for(char c : value.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if(c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * @return время процессора процесса в наносекундах или -1, если JVM его не сообщает
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if(os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Накопленные замеры одного этапа
+     */
+    private static final class PhaseStats {
+        private int count;
+        private long bytes;
+        private long wallNanos;
+        private long cpuNanos;
+        private long[] durations = new long[256];
+
+        private synchronized void add(long wall, long cpu, long bytes) {
+            if(count == durations.length) durations = Arrays.copyOf(durations, count * 2);
+            durations[count++] = wall;
+            this.bytes += bytes;
+            wallNanos += wall;
+            cpuNanos += cpu;
+        }
+    }
+}
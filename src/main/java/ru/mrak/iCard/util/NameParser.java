@@ -31,11 +31,21 @@ public class NameParser {
 
     private NameParser() {}
 
+    /**
+     * Проверяет имя файла на соответствие шаблону и разбирает его на блоки
+     * Используется скомпилированное в свойствах регулярное выражение, для выражения по умолчанию
+     * имя разбирается сканером без регулярного выражения
+     * @param fileName - имя файла
+     * @param properties - свойства с регулярным выражением и номерами блоков
+     * @return разобранное имя или null если имя не соответствует шаблону
+     */
     public static NameParser parser(String fileName, FProperties properties) {
-        NameParser np = new NameParser();
-        Pattern pattern = Pattern.compile(properties.getNameRegexp());
-        Matcher matcher = pattern.matcher(fileName);
-        if(matcher.find()) {
+        if(properties.isDefaultNameGrammar() && !hasLineTerminator(fileName)) {
+            return scan(fileName);
+        }
+        Matcher matcher = properties.getNamePattern().matcher(fileName);
+        if(matcher.matches()) {
+            NameParser np = new NameParser();
             np.organizationCod = matcher.group(properties.getOrganizationCod());
             np.characteristic = matcher.group(properties.getCharacteristic());
             np.registrationNumber = matcher.group(properties.getRegistrationNumber());
@@ -49,6 +59,133 @@ public class NameParser {
         return null;
     }
 
+    /**
+     * Разбирает имя по шаблону по умолчанию без регулярного выражения
+     * (ИГУЛ|IGUL)[.]XXXXXX[.]XXX[-NN][\s*][_][CODE][_VERSION][\sNAME].EXTENSION
+     * Расширение всегда стоит после последней точки, поэтому разбирается первым. Необязательные блоки между
+     * номером и расширением перебираются в том же порядке, в котором их перебирает регулярное выражение,
+     * так что результат совпадает с разбором выражением по умолчанию
+     * @param fileName - имя файла без символов перевода строки
+     * @return разобранное имя или null если имя не соответствует шаблону
+     */
+    private static NameParser scan(String fileName) {
+        int end = fileName.lastIndexOf('.');
+        int extensionLength = fileName.length() - end - 1;
+        if(end < 0 || extensionLength < 3 || extensionLength > 5) return null;
+        for(int i = end + 1; i < fileName.length(); i++) {
+            if(!isLatinLetter(fileName.charAt(i))) return null;
+        }
+        if(!fileName.startsWith("ИГУЛ") && !fileName.startsWith("IGUL")) return null;
+        int i = 4;
+        if(i < end && fileName.charAt(i) == '.') i++;
+        int characteristic = i;
+        if(!isDigits(fileName, i, 6, end)) return null;
+        i += 6;
+        if(i < end && fileName.charAt(i) == '.') i++;
+        int registrationNumber = i;
+        if(!isDigits(fileName, i, 3, end)) return null;
+        i += 3;
+        int species = -1;
+        if(i < end && fileName.charAt(i) == '-') {
+            if(!isDigits(fileName, i + 1, 2, end)) return null;
+            species = i + 1;
+            i += 3;
+        }
+        int whitespace = 0;
+        while (i + whitespace < end && isWhitespace(fileName.charAt(i + whitespace))) whitespace++;
+        //Перебор вариантов для \s*_?(CODE)?(_(VERSION))?(\s(NAME))? до конца имени
+        for(int ws = whitespace; ws >= 0; ws--) {
+            int afterWhitespace = i + ws;
+            boolean underscore = afterWhitespace < end && fileName.charAt(afterWhitespace) == '_';
+            for(int u = underscore ? 1 : 0; u >= 0; u--) {
+                int codeStart = afterWhitespace + u;
+                int letters = 0;
+                while (letters < 2 && codeStart + letters < end && isCodeLetter(fileName.charAt(codeStart + letters))) letters++;
+                for(int l = letters; l >= 0; l--) {
+                    int digits = 0;
+                    if(l > 0) {
+                        while (digits < 2 && codeStart + l + digits < end && isDigit(fileName.charAt(codeStart + l + digits))) digits++;
+                    }
+                    for(int d = digits; d >= 0; d--) {
+                        int codeEnd = codeStart + l + d;
+                        NameParser np = scanTail(fileName, codeEnd, end);
+                        if(np == null) continue;
+                        np.documentCode = l > 0 ? fileName.substring(codeStart, codeEnd) : null;
+                        np.organizationCod = fileName.substring(0, 4);
+                        np.characteristic = fileName.substring(characteristic, characteristic + 6);
+                        np.registrationNumber = fileName.substring(registrationNumber, registrationNumber + 3);
+                        np.species = species >= 0 ? fileName.substring(species, species + 2) : null;
+                        np.filenameExtension = fileName.substring(end + 1);
+                        return np;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Разбирает окончание имени (_(VERSION))?(\s(NAME))? до точки перед расширением
+     * @param fileName - имя файла
+     * @param i - начало окончания
+     * @param end - позиция точки перед расширением
+     * @return объект с версией и наименованием или null если окончание не подходит
+     */
+    private static NameParser scanTail(String fileName, int i, int end) {
+        int digits = 0;
+        if(i < end && fileName.charAt(i) == '_') {
+            while (digits < 2 && i + 1 + digits < end && isDigit(fileName.charAt(i + 1 + digits))) digits++;
+        }
+        for(int d = digits; d >= 0; d--) {
+            int nameStart = d > 0 ? i + 1 + d : i;
+            if(nameStart < end && isWhitespace(fileName.charAt(nameStart)) || nameStart == end) {
+                NameParser np = new NameParser();
+                np.documentVersion = d > 0 ? fileName.substring(i + 1, i + 1 + d) : null;
+                np.documentName = nameStart < end ? fileName.substring(nameStart + 1, end) : null;
+                return np;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isDigits(String s, int from, int count, int end) {
+        if(from + count > end) return false;
+        for(int i = from; i < from + count; i++) {
+            if(!isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLatinLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isCodeLetter(char c) {
+        return isLatinLetter(c) || (c >= 'А' && c <= 'я');
+    }
+
+    /**
+     * Пробельные символы \s регулярного выражения, кроме символов перевода строки
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\u000B' || c == '\f';
+    }
+
+    /**
+     * Символы, на которых . и $ регулярного выражения ведут себя особо, такие имена разбираются выражением
+     */
+    private static boolean hasLineTerminator(String s) {
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return true;
+        }
+        return false;
+    }
+
     public String getOrganizationCod() {
         return organizationCod;
     }
@@ -0,0 +1,145 @@
+package ru.mrak.iCard.util;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Показывает ход обработки файлов: файлы обработано / всего, объем, МБ/с, текущий файл и оставшееся время
+ * Потоки обработки только обновляют счетчики, строку выводит отдельный поток по таймеру, поэтому обработка
+ * не ждет консоль. В терминале строка обновляется на месте, при выводе в файл или канал раз в LOG_PERIOD
+ * выводится отдельная строка журнала
+ */
+public class Progress {
+    private static final long TERMINAL_PERIOD = 500;
+    private static final long LOG_PERIOD = 10000;
+    private static final int MAX_NAME_LENGTH = 40;
+    //Вывод запусков уходит не в терминал процесса, а клиенту сервера
+    private static volatile boolean detached;
+
+    private final int totalFiles;
+    private final long totalBytes;
+    private final AtomicInteger doneFiles = new AtomicInteger();
+    private final AtomicLong doneBytes = new AtomicLong();
+    private volatile String current = "";
+    private final long startNanos = System.nanoTime();
+    private final boolean terminal;
+    private final PrintStream out;
+    private final ScheduledExecutorService timer;
+    private int lineLength;
+
+    private Progress(int totalFiles, long totalBytes, boolean terminal, PrintStream out) {
+        this.totalFiles = totalFiles;
+        this.totalBytes = totalBytes;
+        this.terminal = terminal;
+        this.out = out;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "icard-progress");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Выводит ход обработки строками журнала, даже если у процесса есть терминал. Вызывается сервером:
+     * клиент выводит ответ сервера построчно, строка, обновляемая на месте, до него не доходит
+     */
+    public static void detachTerminal() {
+        detached = true;
+    }
+
+    /**
+     * Запускает вывод хода обработки
+     * @param totalFiles - количество файлов
+     * @param totalBytes - суммарный размер файлов, посчитанный при обходе папки
+     * @return ход обработки, который необходимо завершить методом finish
+     */
+    public static Progress start(int totalFiles, long totalBytes) {
+        boolean terminal = !detached && System.console() != null;
+        final Progress progress = new Progress(totalFiles, totalBytes, terminal, System.out);
+        long period = terminal ? TERMINAL_PERIOD : LOG_PERIOD;
+        progress.timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                progress.print(false);
+            }
+        }, terminal ? 0 : period, period, TimeUnit.MILLISECONDS);
+        return progress;
+    }
+
+    /**
+     * Отмечает начало обработки файла
+     * @param fileName - имя файла
+     */
+    public void begin(String fileName) {
+        current = fileName;
+    }
+
+    /**
+     * Отмечает обработанный файл
+     * @param bytes - размер файла
+     */
+    public void done(long bytes) {
+        doneBytes.addAndGet(bytes);
+        doneFiles.incrementAndGet();
+    }
+
+    /**
+     * Останавливает таймер и выводит итоговую строку
+     */
+    public void finish() {
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        print(true);
+    }
+
+    private synchronized void print(boolean last) {
+        int files = doneFiles.get();
+        long bytes = doneBytes.get();
+        double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        double rate = bytes / seconds;
+        StringBuilder line = new StringBuilder();
+        line.append(String.format(Locale.ROOT, "Файлов: %d/%d, %s/%s, %.1f МБ/с", files, totalFiles,
+                size(bytes), size(totalBytes), rate / (1024 * 1024)));
+        if(last) {
+            line.append(", время: ").append(duration((long) seconds));
+        } else {
+            if(rate > 0 && bytes > 0) line.append(", осталось: ").append(duration((long) ((totalBytes - bytes) / rate)));
+            String name = current;
+            if(name.length() > MAX_NAME_LENGTH) name = "..." + name.substring(name.length() - MAX_NAME_LENGTH + 3);
+            if(!name.isEmpty()) line.append(", файл: ").append(name);
+        }
+        if(terminal) {
+            int length = line.length();
+            for(int i = length; i < lineLength; i++) {
+                line.append(' ');
+            }
+            lineLength = length;
+            out.print("\r" + line + (last ? "\n" : ""));
+            out.flush();
+        } else {
+            out.println(line);
+        }
+    }
+
+    private static String size(long bytes) {
+        if(bytes >= 1024L * 1024 * 1024) return String.format(Locale.ROOT, "%.2f ГБ", bytes / (1024.0 * 1024 * 1024));
+        return String.format(Locale.ROOT, "%.1f МБ", bytes / (1024.0 * 1024));
+    }
+
+    private static String duration(long seconds) {
+        return String.format(Locale.ROOT, "%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,153 @@
+package ru.mrak.iCard.util;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Древовидная контрольная сумма TREE-SHA-256 для больших файлов
+ * Файл делится на блоки по 16 МБ, блоки хешируются параллельно в ForkJoinPool,
+ * хеши блоков попарно объединяются до корня:
+ * лист = SHA-256(0x00 || блок), узел = SHA-256(0x01 || левый || правый),
+ * узел без пары переходит на следующий уровень без изменений, у пустого файла один пустой лист
+ * Блоки читаются позиционным чтением канала, а не отображением в память: отображенный файл в Windows
+ * нельзя удалить, пока буфер не собран сборщиком мусора
+ */
+public class TreeHash {
+    public static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private TreeHash() {}
+
+    /**
+     * Считает корневой хеш файла
+     * @param file - файл
+     * @return корневой хеш в шестнадцатеричном виде
+     * @throws IOException - если файл не удалось прочитать
+     */
+    public static String compute(Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            List<Future<byte[]>> leaves = new ArrayList<>(chunks);
+            for(int i = 0; i < chunks; i++) {
+                final long position = (long) i * CHUNK_SIZE;
+                final long length = Math.min(CHUNK_SIZE, size - position);
+                leaves.add(ForkJoinPool.commonPool().submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return leaf(channel, position, length);
+                    }
+                }));
+            }
+            List<byte[]> level = new ArrayList<>(chunks);
+            for(Future<byte[]> leaf : leaves) {
+                level.add(leaf.get());
+            }
+            return Hex.encodeHexString(root(level));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Подсчет прерван: " + file, e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Не удалось посчитать хеш: " + file, e.getCause());
+        }
+    }
+
+    /**
+     * Проверяет файл по корневому хешу, блоки хешируются параллельно
+     * @param file - файл
+     * @param expected - ожидаемый корневой хеш в шестнадцатеричном виде
+     * @return true если хеш совпал
+     * @throws IOException - если файл не удалось прочитать
+     */
+    public static boolean verify(Path file, String expected) throws IOException {
+        return compute(file).equalsIgnoreCase(expected.trim());
+    }
+
+    /**
+     * Проверка файла из командной строки: TreeHash файл [ожидаемый хеш]
+     * Без хеша выводит хеш файла, с хешем выводит результат проверки и завершается с кодом 1 при несовпадении
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0) {
+            System.out.println("использование: TreeHash файл [хеш]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        if(args.length == 1) {
+            System.out.println(compute(file));
+        } else if(verify(file, args[1])) {
+            System.out.println("Совпадает: " + file);
+        } else {
+            System.out.println("Не совпадает: " + file);
+            System.exit(1);
+        }
+    }
+
+    private static byte[] leaf(FileChannel channel, long position, long length) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update((byte) 0x00);
+        ByteBuffer buffer = buffers.get();
+        Buffer view = buffer;
+        long end = position + length;
+        while (position < end) {
+            view.clear();
+            if(end - position < BUFFER_SIZE) view.limit((int) (end - position));
+            int read = channel.read(buffer, position);
+            if(read < 0) throw new IOException("Файл изменился во время чтения");
+            position += read;
+            view.flip();
+            digest.update(buffer);
+        }
+        return digest.digest();
+    }
+
+    private static byte[] root(List<byte[]> level) {
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>((level.size() + 1) / 2);
+            for(int i = 0; i < level.size(); i += 2) {
+                if(i + 1 == level.size()) {
+                    next.add(level.get(i));
+                    continue;
+                }
+                MessageDigest digest = sha256();
+                digest.update((byte) 0x01);
+                digest.update(level.get(i));
+                digest.update(level.get(i + 1));
+                next.add(digest.digest());
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Нет алгоритма SHA-256", e);
+        }
+    }
+}
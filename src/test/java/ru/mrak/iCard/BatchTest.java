@@ -0,0 +1,63 @@
+package ru.mrak.iCard;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Пакетный режим: ошибка одного проекта не прерывает остальные и попадает в сводку icard-batch.csv
+ */
+public class BatchTest {
+    private static final String[] FILES = {"IGUL100000001_sb.dwg", "IGUL100000002_sb.dwg", "IGUL100000003_sb.dwg"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void failedProjectIsListedAndOthersAreProcessed() throws IOException {
+        Path root = folder.getRoot().toPath();
+        Path source = Files.createDirectory(root.resolve("source"));
+        for(String file : FILES) {
+            Files.write(source.resolve(file), file.getBytes(StandardCharsets.UTF_8));
+        }
+        Path list = root.resolve("projects.txt");
+        Files.write(list, Arrays.asList("missing-result;missing", "result;source", "result2;source"), StandardCharsets.UTF_8);
+
+        assertEquals(Main.RUN_FAILED_STATUS, Main.run(new String[]{"-rb", list.toString()}, null));
+
+        for(String file : FILES) {
+            assertTrue(Files.exists(root.resolve("result").resolve(file)));
+            assertTrue(Files.exists(root.resolve("result2").resolve(file)));
+        }
+        List<String> summary = Files.readAllLines(root.resolve("icard-batch.csv"), StandardCharsets.UTF_8);
+        assertEquals(4, summary.size());
+        assertEquals("result,source,documents,failed,bytes,seconds,sheet,error", summary.get(0));
+        assertFalse(summary.get(1).endsWith(","));
+        assertTrue(summary.get(2).startsWith(root.resolve("result") + "," + source + ",3,0,"));
+        assertTrue(summary.get(2).endsWith(","));
+        assertTrue(summary.get(3).endsWith(","));
+    }
+
+    @Test
+    public void batchWithoutErrorsSucceeds() throws IOException {
+        Path root = folder.getRoot().toPath();
+        Path source = Files.createDirectory(root.resolve("source"));
+        Files.write(source.resolve(FILES[0]), FILES[0].getBytes(StandardCharsets.UTF_8));
+        Path list = root.resolve("projects.txt");
+        Files.write(list, Arrays.asList("# Проекты", "result;source"), StandardCharsets.UTF_8);
+
+        assertEquals(0, Main.run(new String[]{"-rb", list.toString()}, null));
+        assertEquals(2, Files.readAllLines(root.resolve("icard-batch.csv"), StandardCharsets.UTF_8).size());
+    }
+}
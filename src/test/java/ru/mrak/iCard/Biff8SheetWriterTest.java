@@ -0,0 +1,175 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.mrak.iCard.util.DigestAlgorithm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static ru.mrak.iCard.WorkBook.FIRST_PAGE_CAPACITY;
+import static ru.mrak.iCard.WorkBook.FOLLOW_PAGE_CAPACITY;
+
+/**
+ * Прямая запись BIFF8 дает тот же лист, что и запись через POI, а xlsx - тот же лист, что и xls
+ */
+public class Biff8SheetWriterTest {
+    //Одна запись, ровно первая страница, одна запись следующей страницы, неполная и много страниц
+    private static final int[] COUNTS = {1, FIRST_PAGE_CAPACITY, FIRST_PAGE_CAPACITY + 1, 20, 54};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void biffMatchesPoi() throws IOException {
+        for(int count : COUNTS) {
+            List<EntryDoc> entryDocs = entryDocs(count);
+            List<String> biff = snapshot(entryDocs, "sheet.xls", "xlsWriter", "biff");
+            assertEquals("Записей " + count, snapshot(entryDocs, "sheet.xls", "xlsWriter", "poi"), biff);
+            if(count > 2) {
+                assertEquals(1, count(biff, "\n" + WorkBook.FAILED_DIGEST));
+                assertEquals(1, count(biff, "\n0000abcd"));
+            }
+        }
+    }
+
+    @Test
+    public void xlsxMatchesXls() throws IOException {
+        for(int count : COUNTS) {
+            List<EntryDoc> entryDocs = entryDocs(count);
+            assertEquals("Записей " + count,
+                    snapshot(entryDocs, "sheet.xls", "outputFormat", "xls"),
+                    snapshot(entryDocs, "sheet.xlsx", "outputFormat", "xlsx"));
+        }
+    }
+
+    @Test
+    public void longTextFallsBackToPoi() throws IOException {
+        List<EntryDoc> entryDocs = entryDocs(FIRST_PAGE_CAPACITY + FOLLOW_PAGE_CAPACITY);
+        StringBuilder name = new StringBuilder();
+        while (name.length() <= Biff8SheetWriter.MAX_LABEL_LENGTH) {
+            name.append("Длинное наименование ");
+        }
+        entryDocs.get(FIRST_PAGE_CAPACITY).setName(name.toString());
+
+        List<String> biff = snapshot(entryDocs, "sheet.xls", "xlsWriter", "biff");
+        assertEquals(snapshot(entryDocs, "sheet.xls", "xlsWriter", "poi"), biff);
+        assertEquals(1, count(biff, name.toString()));
+    }
+
+    @Test
+    public void largestXlsSheetIsWritten() throws IOException {
+        int pages = (Biff8SheetWriter.MAX_ROWS - WorkBook.FIRST_PAGE_HEIGHT) / WorkBook.FOLLOW_PAGE_HEIGHT + 1;
+        File book = new File(folder.newFolder(), "sheet.xls");
+        WorkBook.writeBook("Уд. лист", book.getPath(), WorkBookVolumesTest.entryDocs(maxXlsEntries()),
+                properties("xlsWriter", "biff"));
+        //Лист читается записями: модель POI читает такой лист десятки секунд
+        int lastPage = WorkBook.FIRST_PAGE_HEIGHT + WorkBook.FOLLOW_PAGE_HEIGHT * (pages - 2);
+        int rows = 0;
+        String lastPageNumber = null;
+        try (NPOIFSFileSystem fs = new NPOIFSFileSystem(book, true);
+             InputStream in = fs.createDocumentInputStream("Workbook")) {
+            for(Record record : RecordFactory.createRecords(in)) {
+                if(record instanceof DimensionsRecord) rows = ((DimensionsRecord) record).getLastRow();
+                if(record instanceof LabelRecord) {
+                    LabelRecord label = (LabelRecord) record;
+                    if(label.getRow() == lastPage + PageLayout.FOLLOW_PAGE_NUMBER.row
+                            && label.getColumn() == PageLayout.FOLLOW_PAGE_NUMBER.column) lastPageNumber = label.getValue();
+                }
+            }
+        }
+        assertEquals(lastPage + WorkBook.FOLLOW_PAGE_HEIGHT, rows);
+        assertTrue(rows <= Biff8SheetWriter.MAX_ROWS);
+        assertEquals("" + pages, lastPageNumber);
+    }
+
+    @Test
+    public void sheetBeyondXlsRowsFails() throws IOException {
+        List<EntryDoc> entryDocs = WorkBookVolumesTest.entryDocs(maxXlsEntries() + 1);
+        for(String xlsWriter : new String[]{"biff", "poi"}) {
+            File book = new File(folder.newFolder(), "sheet.xls");
+            try {
+                WorkBook.writeBook("Уд. лист", book.getPath(), entryDocs, properties("xlsWriter", xlsWriter));
+                fail(xlsWriter);
+            } catch (RunFailure e) {
+                assertFalse(book.exists());
+            }
+        }
+    }
+
+    @Test
+    public void discardClosesAndRemovesUnfinishedBook() throws IOException {
+        File book = new File(folder.newFolder(), "sheet.xls");
+        Biff8SheetWriter writer = Biff8SheetWriter.create("Уд. лист", book.getPath());
+        writer.setupPrint(1);
+        writer.createFirstFrame();
+        assertTrue(book.exists());
+
+        writer.discard();
+
+        assertFalse(book.exists());
+    }
+
+    /**
+     * @return наибольшее количество записей, страницы которых помещаются в MAX_ROWS строк
+     */
+    private static int maxXlsEntries() {
+        int pages = (Biff8SheetWriter.MAX_ROWS - WorkBook.FIRST_PAGE_HEIGHT) / WorkBook.FOLLOW_PAGE_HEIGHT + 1;
+        return FIRST_PAGE_CAPACITY + FOLLOW_PAGE_CAPACITY * (pages - 1);
+    }
+
+    /**
+     * @return документы с ошибкой, автором и второй контрольной суммой среди обычных
+     */
+    private static List<EntryDoc> entryDocs(int count) {
+        List<EntryDoc> entryDocs = WorkBookVolumesTest.entryDocs(count);
+        entryDocs.get(0).setAuthor("Иванов");
+        if(count > 1) entryDocs.get(1).setError("Ошибка чтения");
+        if(count > 2) entryDocs.get(2).setDigest(DigestAlgorithm.CRC32, "0000abcd");
+        return entryDocs;
+    }
+
+    private List<String> snapshot(List<EntryDoc> entryDocs, String bookName, String key, String value) throws IOException {
+        File book = new File(folder.newFolder(), bookName);
+        WorkBook.writeBook("Уд. лист", book.getPath(), entryDocs, properties(key, value));
+        try (Workbook workbook = SheetSnapshot.read(book)) {
+            return SheetSnapshot.of(workbook);
+        }
+    }
+
+    private FProperties properties(String key, String value) throws IOException {
+        File source = folder.newFolder();
+        Properties properties = new Properties();
+        properties.setProperty(key, value);
+        properties.setProperty("failedEntries", "mark");
+        properties.setProperty("sheetDigests", "MD5,CRC32");
+        try (OutputStream out = new FileOutputStream(new File(source, "properties.ini"))) {
+            properties.store(out, null);
+        }
+        return new FProperties(source.getPath());
+    }
+
+    private static int count(List<String> lines, String text) {
+        int count = 0;
+        for(String line : lines) {
+            if(line.contains(text)) count++;
+        }
+        return count;
+    }
+}
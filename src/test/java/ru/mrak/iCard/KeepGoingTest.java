@@ -0,0 +1,183 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Ключ k: ошибка файла отмечается в документе и в icard-errors.csv, остальные файлы обрабатываются,
+ * без ключа k ошибка файла прерывает запуск
+ */
+public class KeepGoingTest {
+    private static final String[] FILES = {"IGUL100000001_sb.dwg", "IGUL100000002_sb.dwg", "IGUL100000003_sb.dwg"};
+    private static final String ERRORS_FILE = "icard-errors.csv";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path result;
+
+    @Before
+    public void setUp() throws IOException {
+        source = folder.newFolder("source").toPath();
+        result = folder.newFolder("result").toPath();
+        for(int i = 0; i < FILES.length; i++) {
+            Files.write(source.resolve(FILES[i]), ("Содержимое " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        //На месте результата второго файла папка, копирование в нее не удается
+        Files.createDirectories(result.resolve(FILES[1]).resolve("occupied"));
+    }
+
+    @Test
+    public void keyKTurnsOnKeepGoing() {
+        assertTrue(Config.parsing("-rck").isKeepGoing());
+        assertFalse(Config.parsing("-rc").isKeepGoing());
+        assertEquals("-rck", Config.parsing("-rck").createConfig());
+    }
+
+    @Test
+    public void failedFileIsMarkedAndOthersAreProcessed() throws IOException {
+        List<EntryDoc> entryDocs = replace("-rck");
+
+        assertEquals(FILES.length, entryDocs.size());
+        for(EntryDoc entryDoc : entryDocs) {
+            if(entryDoc.getFileName().equals(FILES[1])) {
+                assertNotNull(entryDoc.getError());
+                assertNull(entryDoc.getMd5());
+            } else {
+                assertNull(entryDoc.getError());
+                assertNotNull(entryDoc.getMd5());
+                assertTrue(Files.isRegularFile(result.resolve(entryDoc.getFileName())));
+            }
+        }
+        List<String> errors = Files.readAllLines(result.resolve(ERRORS_FILE), StandardCharsets.UTF_8);
+        assertEquals(2, errors.size());
+        assertEquals("path,error", errors.get(0));
+        assertTrue(errors.get(1).startsWith(source.resolve(FILES[1]) + ","));
+    }
+
+    @Test
+    public void errorsFileIsRemovedAfterCleanRun() throws IOException {
+        replace("-rck");
+        assertTrue(Files.exists(result.resolve(ERRORS_FILE)));
+        Files.delete(result.resolve(FILES[1]).resolve("occupied"));
+        Files.delete(result.resolve(FILES[1]));
+
+        for(EntryDoc entryDoc : replace("-rck")) {
+            assertNull(entryDoc.getError());
+        }
+        assertFalse(Files.exists(result.resolve(ERRORS_FILE)));
+    }
+
+    @Test(expected = RunFailure.class)
+    public void withoutKeyKFailedFileStopsRun() {
+        replace("-rc");
+    }
+
+    @Test
+    public void exitStatus() throws IOException {
+        assertEquals(Main.RUN_FAILED_STATUS, Main.run(new String[]{"-r", result.toString(), source.toString()}, null));
+        assertEquals(Main.FAILED_FILES_STATUS, Main.run(new String[]{"-rk", result.toString(), source.toString()}, null));
+        assertTrue(Files.exists(result.resolve(ERRORS_FILE)));
+    }
+
+    @Test
+    public void unreadableFolderIsListedWithKeyK() throws IOException {
+        Path unreadable = unreadableFolder();
+        try {
+            assertEquals(FILES.length, replace("-rcks").size());
+            List<String> errors = Files.readAllLines(result.resolve(ERRORS_FILE), StandardCharsets.UTF_8);
+            assertEquals(3, errors.size());
+            assertTrue(errors.get(1).startsWith(unreadable + ","));
+            assertEquals(Main.FAILED_FILES_STATUS, Main.run(new String[]{"-rks", result.toString(), source.toString()}, null));
+        } finally {
+            unreadable.toFile().setReadable(true);
+        }
+    }
+
+    @Test
+    public void unreadableFolderStopsRunWithoutKeyK() throws IOException {
+        Path unreadable = unreadableFolder();
+        try {
+            assertEquals(Main.RUN_FAILED_STATUS, Main.run(new String[]{"-s", result.toString(), source.toString()}, null));
+        } finally {
+            unreadable.toFile().setReadable(true);
+        }
+    }
+
+    @Test
+    public void unreadableSourceFolderIsListedWithKeyK() throws IOException {
+        Files.delete(result.resolve(FILES[1]).resolve("occupied"));
+        Files.delete(result.resolve(FILES[1]));
+        assumeTrue(source.toFile().setReadable(false) && !Files.isReadable(source));
+        try {
+            assertTrue(replace("-rk").isEmpty());
+            List<String> errors = Files.readAllLines(result.resolve(ERRORS_FILE), StandardCharsets.UTF_8);
+            assertEquals(2, errors.size());
+            assertTrue(errors.get(1).startsWith(source + ","));
+        } finally {
+            source.toFile().setReadable(true);
+        }
+    }
+
+    @Test
+    public void failedEntriesAreMarkedOrOmittedInSheet() throws IOException {
+        List<EntryDoc> entryDocs = replace("-rck");
+
+        assertEquals(FILES.length, entryCount(entryDocs, "mark"));
+        assertEquals(FILES.length - 1, entryCount(entryDocs, "omit"));
+    }
+
+    /**
+     * Вложенная папка без права чтения с файлом, тест пропускается, если права не действуют, например у root
+     */
+    private Path unreadableFolder() throws IOException {
+        Path unreadable = Files.createDirectory(source.resolve("locked"));
+        Files.write(unreadable.resolve("IGUL100000004_sb.dwg"), "Содержимое".getBytes(StandardCharsets.UTF_8));
+        assumeTrue(unreadable.toFile().setReadable(false) && !Files.isReadable(unreadable));
+        return unreadable;
+    }
+
+    private List<EntryDoc> replace(String config) {
+        return FilesReplace.replace(source.toString(), result.toString(), Config.parsing(config),
+                new FProperties(source.toString()));
+    }
+
+    /**
+     * @return количество записей в листе при заданном свойстве failedEntries
+     */
+    private int entryCount(List<EntryDoc> entryDocs, String failedEntries) throws IOException {
+        Path properties = folder.newFolder().toPath();
+        Files.write(properties.resolve("properties.ini"),
+                ("failedEntries=" + failedEntries).getBytes(StandardCharsets.UTF_8));
+        Path book = properties.resolve("sheet.xls");
+        WorkBook.writeBook("Уд. лист", book.toString(), entryDocs, new FProperties(properties.toString()));
+        int count = 0;
+        try (Workbook workbook = SheetSnapshot.read(book.toFile())) {
+            Sheet sheet = workbook.getSheetAt(0);
+            for(int entry = 0; entry < WorkBook.FIRST_PAGE_CAPACITY; entry++) {
+                String number = SheetSnapshot.text(sheet, PageLayout.FIRST_ENTRY_ROW + PageLayout.ENTRY_HEIGHT * entry,
+                        PageLayout.ENTRY_NUMBER);
+                if(number != null && !number.isEmpty()) count++;
+            }
+        }
+        return count;
+    }
+}
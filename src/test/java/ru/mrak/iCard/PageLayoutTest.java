@@ -0,0 +1,85 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static ru.mrak.iCard.WorkBook.FIRST_PAGE_CAPACITY;
+import static ru.mrak.iCard.WorkBook.FIRST_PAGE_HEIGHT;
+import static ru.mrak.iCard.WorkBook.FOLLOW_PAGE_CAPACITY;
+import static ru.mrak.iCard.WorkBook.FOLLOW_PAGE_HEIGHT;
+
+/**
+ * Страницы листа выводятся из разметки со смещением строк: следующие страницы одинаковы, записи попадают
+ * в поля разметки своей страницы
+ */
+public class PageLayoutTest {
+    //Первая страница и две заполненные следующие
+    private static final int ENTRIES = FIRST_PAGE_CAPACITY + 2 * FOLLOW_PAGE_CAPACITY;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void followPagesRepeatTheSameFrame() throws IOException {
+        try (Workbook book = writeSheet()) {
+            Sheet sheet = book.getSheetAt(0);
+            int second = FIRST_PAGE_HEIGHT;
+            int third = FIRST_PAGE_HEIGHT + FOLLOW_PAGE_HEIGHT;
+            List<String> secondPage = SheetSnapshot.rows(sheet, second, third, false);
+            assertFalse(secondPage.isEmpty());
+            assertEquals(secondPage, SheetSnapshot.rows(sheet, third, third + FOLLOW_PAGE_HEIGHT, false));
+            assertEquals(SheetSnapshot.merges(sheet, second, third),
+                    SheetSnapshot.merges(sheet, third, third + FOLLOW_PAGE_HEIGHT));
+        }
+    }
+
+    @Test
+    public void entriesAndPageFieldsUseLayoutPlaces() throws IOException {
+        List<EntryDoc> entryDocs = WorkBookVolumesTest.entryDocs(ENTRIES);
+        try (Workbook book = writeSheet()) {
+            Sheet sheet = book.getSheetAt(0);
+            for(int number = 1; number <= ENTRIES; number++) {
+                int row = entryRow(number);
+                EntryDoc entryDoc = entryDocs.get(number - 1);
+                assertEquals("" + number, SheetSnapshot.text(sheet, row, PageLayout.ENTRY_NUMBER));
+                assertEquals(entryDoc.getDesignation(), SheetSnapshot.text(sheet, row, PageLayout.ENTRY_DESIGNATION));
+                assertEquals(entryDoc.getName(), SheetSnapshot.text(sheet, row, PageLayout.ENTRY_NAME));
+                assertEquals(entryDoc.getMd5(), SheetSnapshot.text(sheet, row, PageLayout.ENTRY_DIGEST_VALUES));
+                assertEquals(entryDoc.getFileName(), SheetSnapshot.text(sheet, row, PageLayout.ENTRY_FILE_NAME));
+                assertEquals(entryDoc.formatSize(), SheetSnapshot.text(sheet, row, PageLayout.ENTRY_SIZE));
+                assertEquals("=F31", SheetSnapshot.text(sheet, row, PageLayout.ENTRY_AUTHOR));
+            }
+            assertEquals("1", SheetSnapshot.text(sheet, 0, PageLayout.PAGE_NUMBER));
+            assertEquals("3", SheetSnapshot.text(sheet, 0, PageLayout.PAGE_COUNT));
+            assertEquals("2", SheetSnapshot.text(sheet, FIRST_PAGE_HEIGHT, PageLayout.FOLLOW_PAGE_NUMBER));
+            assertEquals("3", SheetSnapshot.text(sheet, FIRST_PAGE_HEIGHT + FOLLOW_PAGE_HEIGHT, PageLayout.FOLLOW_PAGE_NUMBER));
+            assertEquals(FIRST_PAGE_HEIGHT + 2 * FOLLOW_PAGE_HEIGHT - 1, sheet.getLastRowNum());
+        }
+    }
+
+    private Workbook writeSheet() throws IOException {
+        FProperties properties = new FProperties(folder.newFolder("source").getPath());
+        File book = new File(folder.getRoot(), "sheet.xls");
+        WorkBook.writeBook("Уд. лист", book.getPath(), WorkBookVolumesTest.entryDocs(ENTRIES), properties);
+        return SheetSnapshot.read(book);
+    }
+
+    /**
+     * @return первая строка записи: записи идут подряд от FIRST_ENTRY_ROW своей страницы
+     */
+    private static int entryRow(int number) {
+        if(number <= FIRST_PAGE_CAPACITY) return PageLayout.FIRST_ENTRY_ROW + PageLayout.ENTRY_HEIGHT * (number - 1);
+        int follow = (number - FIRST_PAGE_CAPACITY - 1) / FOLLOW_PAGE_CAPACITY;
+        int slot = (number - FIRST_PAGE_CAPACITY - 1) % FOLLOW_PAGE_CAPACITY;
+        return FIRST_PAGE_HEIGHT + FOLLOW_PAGE_HEIGHT * follow + PageLayout.FIRST_ENTRY_ROW + PageLayout.ENTRY_HEIGHT * slot;
+    }
+}
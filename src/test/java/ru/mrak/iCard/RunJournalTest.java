@@ -0,0 +1,148 @@
+package ru.mrak.iCard;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Продолжение прерванного запуска по журналу: завершенные файлы не обрабатываются повторно,
+ * файлы, удаленные до отметки в журнале, восстанавливаются
+ */
+public class RunJournalTest {
+    private static final String[] FILES = {"IGUL100000001_sb.dwg", "IGUL100000002_sb.dwg", "IGUL100000003_sb.dwg"};
+    private static final String FAKE_MD5 = "0123456789abcdef0123456789abcdef";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path result;
+    private FProperties properties;
+
+    @Before
+    public void setUp() throws IOException {
+        source = folder.newFolder("source").toPath();
+        result = folder.newFolder("result").toPath();
+        for(int i = 0; i < FILES.length; i++) {
+            Files.write(source.resolve(FILES[i]), ("Содержимое " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        properties = new FProperties(source.toString());
+    }
+
+    @Test
+    public void resumeSkipsFinishedFiles() throws IOException {
+        Map<String, String> md5 = md5(run("-rc"));
+        //Прерванный запуск: в журнале только первый файл, его сумма в журнале отличается от настоящей
+        keepJournalLine(FILES[0]);
+        replaceInJournal(md5.get(FILES[0]), FAKE_MD5);
+
+        Map<String, String> resumed = md5(run("-rcu"));
+
+        assertEquals(FAKE_MD5, resumed.get(FILES[0]));
+        assertEquals(md5.get(FILES[1]), resumed.get(FILES[1]));
+        assertEquals(md5.get(FILES[2]), resumed.get(FILES[2]));
+        assertEquals(FILES.length + 1, journal().size());
+    }
+
+    @Test
+    public void changedFileIsProcessedAgain() throws IOException {
+        Map<String, String> md5 = md5(run("-rc"));
+        Files.write(source.resolve(FILES[0]), "Новое содержимое".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, String> resumed = md5(run("-rcu"));
+
+        assertNotEquals(md5.get(FILES[0]), resumed.get(FILES[0]));
+        assertEquals(md5.get(FILES[1]), resumed.get(FILES[1]));
+    }
+
+    @Test
+    public void withoutResumeJournalStartsOver() throws IOException {
+        Map<String, String> md5 = md5(run("-rc"));
+        replaceInJournal(md5.get(FILES[0]), FAKE_MD5);
+
+        assertEquals(md5, md5(run("-rc")));
+        assertEquals(FILES.length + 1, journal().size());
+    }
+
+    @Test
+    public void fileDeletedBeforeMarkIsRestored() throws IOException {
+        Map<String, String> md5 = md5(run("-rcd"));
+        for(String file : FILES) {
+            assertFalse(Files.exists(source.resolve(file)));
+        }
+        //Прерывание после удаления первого файла, до строки с отметкой об удалении
+        keepJournalLine(FILES[0]);
+
+        Map<String, String> resumed = md5(run("-rcdu"));
+
+        assertEquals(Collections.singletonMap(FILES[0], md5.get(FILES[0])), resumed);
+    }
+
+    @Test
+    public void fileNotDeletedBeforeInterruptIsProcessedAgain() throws IOException {
+        byte[] content = Files.readAllBytes(source.resolve(FILES[0]));
+        Map<String, String> md5 = md5(run("-rcd"));
+        //Прерывание после записи строки до удаления, файл остался на месте
+        keepJournalLine(FILES[0]);
+        Files.write(source.resolve(FILES[0]), content);
+        replaceInJournal(md5.get(FILES[0]), FAKE_MD5);
+
+        Map<String, String> resumed = md5(run("-rcdu"));
+
+        assertEquals(md5.get(FILES[0]), resumed.get(FILES[0]));
+        assertFalse(Files.exists(source.resolve(FILES[0])));
+        assertTrue(Files.exists(result.resolve(FILES[0])));
+    }
+
+    private List<EntryDoc> run(String config) {
+        return FilesReplace.replace(source.toString(), result.toString(), Config.parsing(config), properties);
+    }
+
+    private static Map<String, String> md5(List<EntryDoc> entryDocs) {
+        Map<String, String> md5 = new HashMap<>();
+        for(EntryDoc entryDoc : entryDocs) {
+            md5.put(entryDoc.getFileName(), entryDoc.getMd5());
+        }
+        return md5;
+    }
+
+    private List<String> journal() throws IOException {
+        return Files.readAllLines(result.resolve(RunJournal.FILE_NAME), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Оставляет в журнале заголовок и первую строку файла, как после прерывания сразу за ней
+     */
+    private void keepJournalLine(String file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for(String line : journal()) {
+            if(lines.isEmpty() || line.endsWith(source.resolve(file) + "\t.")) lines.add(line);
+            if(lines.size() == 2) break;
+        }
+        Files.write(result.resolve(RunJournal.FILE_NAME), lines, StandardCharsets.UTF_8);
+    }
+
+    private void replaceInJournal(String target, String replacement) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for(String line : journal()) {
+            lines.add(line.replace(target, replacement));
+        }
+        Files.write(result.resolve(RunJournal.FILE_NAME), lines, StandardCharsets.UTF_8);
+    }
+}
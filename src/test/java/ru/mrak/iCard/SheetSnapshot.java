@@ -0,0 +1,126 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Содержимое листа построчным текстом для сравнения листов разных записей и форматов: ячейки с текстом,
+ * формулами и оформлением, высоты строк, объединения, ширины столбцов, разрывы страниц и область печати
+ */
+final class SheetSnapshot {
+    private SheetSnapshot() {}
+
+    /**
+     * @param file - файл xls или xlsx
+     * @return книга, которую необходимо закрыть
+     */
+    static Workbook read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return WorkbookFactory.create(in);
+        } catch (InvalidFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @param workbook - книга
+     * @return весь первый лист книги
+     */
+    static List<String> of(Workbook workbook) {
+        Sheet sheet = workbook.getSheetAt(0);
+        List<String> lines = new ArrayList<>();
+        lines.add("print area " + workbook.getPrintArea(0));
+        for(int column = 0; column < PageLayout.COLUMN_WIDTHS.length; column++) {
+            lines.add("column " + column + " width " + sheet.getColumnWidth(column));
+        }
+        StringBuilder breaks = new StringBuilder("row breaks");
+        for(int rowBreak : sheet.getRowBreaks()) {
+            breaks.append(' ').append(rowBreak);
+        }
+        lines.add(breaks.toString());
+        lines.addAll(rows(sheet, 0, sheet.getLastRowNum() + 1, true));
+        lines.addAll(merges(sheet, 0, sheet.getLastRowNum() + 1));
+        return lines;
+    }
+
+    /**
+     * @param sheet - лист
+     * @param firstRow - первая строка
+     * @param endRow - строка после последней
+     * @param values - выводить ли текст ячеек, без него сравнивается только оформление
+     * @return строки и ячейки с адресами относительно firstRow
+     */
+    static List<String> rows(Sheet sheet, int firstRow, int endRow, boolean values) {
+        List<String> lines = new ArrayList<>();
+        for(int r = firstRow; r < endRow; r++) {
+            Row row = sheet.getRow(r);
+            if(row == null) continue;
+            lines.add("row " + (r - firstRow) + " height " + row.getHeightInPoints());
+            for(Cell cell : row) {
+                String line = new CellAddress(r - firstRow, cell.getColumnIndex()).formatAsString() + " "
+                        + style(sheet.getWorkbook(), cell.getCellStyle());
+                if(values) line += " " + value(cell);
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return объединения, попадающие в строки, с адресами относительно firstRow, по порядку
+     */
+    static List<String> merges(Sheet sheet, int firstRow, int endRow) {
+        List<String> lines = new ArrayList<>();
+        for(CellRangeAddress region : sheet.getMergedRegions()) {
+            if(region.getFirstRow() < firstRow || region.getFirstRow() >= endRow) continue;
+            lines.add("merge " + new CellRangeAddress(region.getFirstRow() - firstRow, region.getLastRow() - firstRow,
+                    region.getFirstColumn(), region.getLastColumn()).formatAsString());
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    /**
+     * @return текст ячейки по адресу или null, если ячейки нет
+     */
+    static String text(Sheet sheet, int row, PageLayout.Place place) {
+        Row sheetRow = sheet.getRow(row + place.row);
+        if(sheetRow == null) return null;
+        Cell cell = sheetRow.getCell(place.column);
+        return cell != null ? value(cell) : null;
+    }
+
+    private static String value(Cell cell) {
+        if(cell.getCellTypeEnum() == CellType.FORMULA) return "=" + cell.getCellFormula();
+        if(cell.getCellTypeEnum() == CellType.STRING) return cell.getStringCellValue();
+        if(cell.getCellTypeEnum() == CellType.BLANK) return "";
+        return cell.toString();
+    }
+
+    private static String style(Workbook workbook, CellStyle style) {
+        Font font = workbook.getFontAt(style.getFontIndex());
+        return "[" + font.getFontName() + " " + font.getFontHeightInPoints()
+                + (font.getItalic() ? " italic" : "") + (font.getBold() ? " bold" : "")
+                + " " + style.getAlignmentEnum() + " " + style.getVerticalAlignmentEnum()
+                + (style.getWrapText() ? " wrap" : "") + " rotation " + style.getRotation()
+                + " borders " + style.getBorderBottomEnum() + " " + style.getBorderTopEnum()
+                + " " + style.getBorderLeftEnum() + " " + style.getBorderRightEnum() + "]";
+    }
+}
@@ -0,0 +1,94 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static ru.mrak.iCard.WorkBook.FIRST_PAGE_CAPACITY;
+import static ru.mrak.iCard.WorkBook.FIRST_PAGE_HEIGHT;
+import static ru.mrak.iCard.WorkBook.FOLLOW_PAGE_CAPACITY;
+import static ru.mrak.iCard.WorkBook.FOLLOW_PAGE_HEIGHT;
+
+/**
+ * Лист по шаблону: шаблон, записанный из встроенной форматки, дает тот же лист, что и форматка,
+ * правки шаблона переносятся на каждую страницу
+ */
+public class TemplateSheetTest {
+    private static final int ENTRIES = FIRST_PAGE_CAPACITY + 2 * FOLLOW_PAGE_CAPACITY;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void xlsTemplateFromBuiltInFrameGivesSameSheet() throws IOException {
+        sameAsBuiltInFrame("xls");
+    }
+
+    @Test
+    public void xlsxTemplateFromBuiltInFrameGivesSameSheet() throws IOException {
+        sameAsBuiltInFrame("xlsx");
+    }
+
+    @Test
+    public void editedTemplateIsRepeatedOnEveryPage() throws IOException {
+        File source = folder.newFolder("source");
+        Files.write(source.toPath().resolve("properties.ini"), "template=form.xls".getBytes(StandardCharsets.UTF_8));
+        File template = new File(source, "form.xls");
+        //Первый запуск записывает шаблон из встроенной форматки
+        writeSheet(new FProperties(source.getPath()), "first.xls");
+        assertTrue(template.exists());
+        try (Workbook book = SheetSnapshot.read(template)) {
+            Sheet sheet = book.getSheetAt(0);
+            sheet.getRow(0).getCell(0, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).setCellValue("Первая страница");
+            sheet.getRow(FIRST_PAGE_HEIGHT).getCell(0, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).setCellValue("Следующая страница");
+            try (OutputStream out = new FileOutputStream(template)) {
+                book.write(out);
+            }
+        }
+
+        try (Workbook book = writeSheet(new FProperties(source.getPath()), "sheet.xls")) {
+            Sheet sheet = book.getSheetAt(0);
+            assertEquals("Первая страница", text(sheet, 0));
+            assertEquals("Следующая страница", text(sheet, FIRST_PAGE_HEIGHT));
+            assertEquals("Следующая страница", text(sheet, FIRST_PAGE_HEIGHT + FOLLOW_PAGE_HEIGHT));
+            assertEquals("3", SheetSnapshot.text(sheet, FIRST_PAGE_HEIGHT + FOLLOW_PAGE_HEIGHT, PageLayout.FOLLOW_PAGE_NUMBER));
+        }
+    }
+
+    private void sameAsBuiltInFrame(String format) throws IOException {
+        File plain = folder.newFolder("plain");
+        Files.write(plain.toPath().resolve("properties.ini"), ("outputFormat=" + format).getBytes(StandardCharsets.UTF_8));
+        File templated = folder.newFolder("templated");
+        Files.write(templated.toPath().resolve("properties.ini"), ("template=form." + format).getBytes(StandardCharsets.UTF_8));
+
+        try (Workbook expected = writeSheet(new FProperties(plain.getPath()), "plain." + format);
+             Workbook actual = writeSheet(new FProperties(templated.getPath()), "templated." + format)) {
+            assertTrue(new File(templated, "form." + format).exists());
+            assertEquals(SheetSnapshot.of(expected), SheetSnapshot.of(actual));
+        }
+    }
+
+    private Workbook writeSheet(FProperties properties, String name) throws IOException {
+        File book = new File(folder.getRoot(), name);
+        WorkBook.writeBook("Уд. лист", book.getPath(), WorkBookVolumesTest.entryDocs(ENTRIES), properties);
+        return SheetSnapshot.read(book);
+    }
+
+    private static String text(Sheet sheet, int row) {
+        Cell cell = sheet.getRow(row).getCell(0);
+        return cell != null ? cell.getStringCellValue() : null;
+    }
+}
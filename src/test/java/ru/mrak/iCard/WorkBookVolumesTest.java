@@ -0,0 +1,103 @@
+package ru.mrak.iCard;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellAddress;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Нумерация страниц листа, разбитого на тома
+ */
+public class WorkBookVolumesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void lastVolumeEndsOnTotalPageCount() throws IOException {
+        //27 записей по 2 страницы в томе: тома по 13 записей, 2 + 2 + 1 страница
+        File source = folder.newFolder("source");
+        Files.write(source.toPath().resolve("properties.ini"), "volumePages=2".getBytes(StandardCharsets.UTF_8));
+        FProperties properties = new FProperties(source.getPath());
+        String path = new File(folder.getRoot(), "sheet.xls").getPath();
+
+        WorkBook.writeBook("Уд. лист", path, entryDocs(27), properties);
+
+        int[] firstPages = {1, 3, 5};
+        int[] lastPages = {2, 4, 5};
+        for(int volume = 1; volume <= 3; volume++) {
+            try (HSSFWorkbook book = read(new File(folder.getRoot(), "sheet-" + volume + ".xls"))) {
+                Sheet sheet = book.getSheetAt(0);
+                assertEquals("Лист тома " + volume, "" + firstPages[volume - 1], text(sheet, "N32", 0));
+                assertEquals("Листов тома " + volume, "5", text(sheet, "P32", 0));
+                if(firstPages[volume - 1] != lastPages[volume - 1]) {
+                    assertEquals("Последний лист тома " + volume, "" + lastPages[volume - 1],
+                            text(sheet, "Q32", WorkBook.FIRST_PAGE_HEIGHT));
+                }
+            }
+        }
+        assertFalse(new File(folder.getRoot(), "sheet-4.xls").exists());
+    }
+
+    @Test
+    public void singleBookWithoutVolumes() throws IOException {
+        File source = folder.newFolder("source");
+        FProperties properties = new FProperties(source.getPath());
+        File book = new File(folder.getRoot(), "sheet.xls");
+
+        WorkBook.writeBook("Уд. лист", book.getPath(), entryDocs(27), properties);
+
+        assertTrue(book.exists());
+        try (HSSFWorkbook workbook = read(book)) {
+            assertEquals("1", text(workbook.getSheetAt(0), "N32", 0));
+            assertEquals("4", text(workbook.getSheetAt(0), "P32", 0));
+        }
+    }
+
+    static List<EntryDoc> entryDocs(int count) {
+        List<EntryDoc> entryDocs = new ArrayList<>();
+        for(int i = 1; i <= count; i++) {
+            EntryDoc entryDoc = new EntryDoc();
+            entryDoc.setDesignation("ИГУЛ.100000." + String.format("%03d", i) + " СБ");
+            entryDoc.setName("Документ " + i);
+            entryDoc.setMd5(String.format("%032x", i));
+            entryDoc.setFileName("IGUL100000" + String.format("%03d", i) + "_sb.dwg");
+            entryDoc.setSize(1000 + i);
+            entryDoc.setModified(0);
+            entryDoc.setVersion("-");
+            entryDoc.setReleaseNumber("-");
+            entryDocs.add(entryDoc);
+        }
+        return entryDocs;
+    }
+
+    private static HSSFWorkbook read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return new HSSFWorkbook(in);
+        }
+    }
+
+    private static String text(Sheet sheet, String address, int rowOffset) {
+        CellAddress cellAddress = new CellAddress(address);
+        Row row = sheet.getRow(cellAddress.getRow() + rowOffset);
+        if(row == null) return null;
+        Cell cell = row.getCell(cellAddress.getColumn());
+        return cell != null ? cell.getStringCellValue() : null;
+    }
+}
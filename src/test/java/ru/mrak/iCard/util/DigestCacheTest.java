@@ -0,0 +1,192 @@
+package ru.mrak.iCard.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Кеш контрольных сумм: попадание, промах, изменение файла, fingerprint и поврежденный файл кеша
+ */
+public class DigestCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path cacheFile;
+    private Path file;
+    private Map<DigestAlgorithm, String> digests;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheFile = folder.getRoot().toPath().resolve(".icard-digest");
+        file = folder.newFile("IGUL100000001_sb.dwg").toPath();
+        byte[] content = new byte[10000];
+        Arrays.fill(content, (byte) 'a');
+        Files.write(file, content);
+        digests = new EnumMap<>(DigestAlgorithm.class);
+        digests.put(DigestAlgorithm.MD5, "0123456789abcdef0123456789abcdef");
+        digests.put(DigestAlgorithm.CRC32, "89abcdef");
+    }
+
+    @Test
+    public void savedDigestsAreFoundInNextRun() throws IOException {
+        save(false);
+
+        assertEquals(digests, DigestCache.load(cacheFile, false, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void unknownFileIsMissed() throws IOException {
+        save(false);
+        Path other = folder.newFile("IGUL100000002_sb.dwg").toPath();
+
+        assertNull(DigestCache.load(cacheFile, false, false).get(other, attributes(other)));
+    }
+
+    @Test
+    public void changedSizeIsMissed() throws IOException {
+        save(false);
+        Files.write(file, "b".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(DigestCache.load(cacheFile, false, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void changedModificationTimeIsMissed() throws IOException {
+        save(false);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(attributes(file).lastModifiedTime().toMillis() + 2000));
+
+        assertNull(DigestCache.load(cacheFile, false, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void fingerprintCatchesChangeWithSameSizeAndTime() throws IOException {
+        save(true);
+        rewriteKeepingSizeAndTime();
+
+        assertNull(DigestCache.load(cacheFile, true, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void withoutFingerprintSameSizeAndTimeIsHit() throws IOException {
+        save(false);
+        rewriteKeepingSizeAndTime();
+
+        assertEquals(digests, DigestCache.load(cacheFile, false, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void fingerprintTurnedOnMissesEntriesSavedWithoutIt() throws IOException {
+        save(false);
+
+        assertNull(DigestCache.load(cacheFile, true, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void fingerprintUnchangedFileIsHit() throws IOException {
+        save(true);
+
+        assertEquals(digests, DigestCache.load(cacheFile, true, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void rehashIgnoresSavedEntries() throws IOException {
+        save(false);
+
+        assertNull(DigestCache.load(cacheFile, false, true).get(file, attributes(file)));
+    }
+
+    @Test
+    public void onlyFilesOfCurrentRunAreSaved() throws IOException {
+        save(false);
+        DigestCache.load(cacheFile, false, false).save();
+
+        assertNull(DigestCache.load(cacheFile, false, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void otherFormatIsIgnored() throws IOException {
+        save(false);
+        List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+        lines.set(0, "icard-digest-cache 0");
+        Files.write(cacheFile, lines, StandardCharsets.UTF_8);
+
+        assertNull(DigestCache.load(cacheFile, false, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void corruptLinesAreSkipped() throws IOException {
+        save(false);
+        List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+        lines.add(1, "garbage");
+        lines.add(2, "x\t1\t-\tMD5=00\t" + folder.getRoot().toPath().resolve("a.dwg"));
+        lines.add(3, "1\t1\t-\tMD5\t" + folder.getRoot().toPath().resolve("b.dwg"));
+        lines.add(4, "1\t1\t-\tUNKNOWN=00\t" + folder.getRoot().toPath().resolve("c.dwg"));
+        Files.write(cacheFile, lines, StandardCharsets.UTF_8);
+
+        assertEquals(digests, DigestCache.load(cacheFile, false, false).get(file, attributes(file)));
+    }
+
+    @Test
+    public void truncatedLastLineIsSkipped() throws IOException {
+        Path other = folder.newFile("IGUL100000002_sb.dwg").toPath();
+        DigestCache cache = DigestCache.load(cacheFile, false, false);
+        cache.put(file, attributes(file), digests);
+        cache.put(other, attributes(other), digests);
+        cache.save();
+        //Файл кеша оборван на середине последней строки
+        byte[] bytes = Files.readAllBytes(cacheFile);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        int lastLine = text.lastIndexOf('\n', text.length() - 2) + 1;
+        int cut = text.indexOf("MD5=", lastLine) + 10;
+        Files.write(cacheFile, text.substring(0, cut).getBytes(StandardCharsets.UTF_8));
+        Path cutFile = text.substring(lastLine).endsWith(file.toString() + System.lineSeparator()) ? file : other;
+        Path keptFile = cutFile == file ? other : file;
+
+        DigestCache loaded = DigestCache.load(cacheFile, false, false);
+        assertEquals(digests, loaded.get(keptFile, attributes(keptFile)));
+        assertNull(loaded.get(cutFile, attributes(cutFile)));
+    }
+
+    @Test
+    public void unreadableCacheIsEmpty() throws IOException {
+        Files.createDirectory(cacheFile);
+
+        assertNull(DigestCache.load(cacheFile, false, false).get(file, attributes(file)));
+    }
+
+    private void save(boolean fingerprint) throws IOException {
+        DigestCache cache = DigestCache.load(cacheFile, fingerprint, false);
+        cache.put(file, attributes(file), digests);
+        cache.save();
+    }
+
+    /**
+     * Меняет содержимое конца файла, оставляя размер и дату изменения прежними
+     */
+    private void rewriteKeepingSizeAndTime() throws IOException {
+        FileTime modified = attributes(file).lastModifiedTime();
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 1] = 'b';
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, modified);
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
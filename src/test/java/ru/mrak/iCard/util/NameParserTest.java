@@ -0,0 +1,187 @@
+package ru.mrak.iCard.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.mrak.iCard.FProperties;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Разбор имени сканером совпадает с разбором выражением по умолчанию
+ */
+public class NameParserTest {
+    private static final Pattern DEFAULT_PATTERN = Pattern.compile(FProperties.DEFAULT_NAME_REGEXP);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FProperties defaultProperties;
+
+    @Before
+    public void setUp() throws IOException {
+        defaultProperties = new FProperties(folder.newFolder("default").getPath());
+        assertTrue(defaultProperties.isDefaultNameGrammar());
+    }
+
+    @Test
+    public void scannerMatchesDefaultRegexp() {
+        String[] names = {
+                //Кириллический и латинский префикс, с точками и без
+                "ИГУЛ.123456.001 СБ Деталь.dwg",
+                "ИГУЛ123456001СБ.dwg",
+                "IGUL.123456.001_sb.tdd",
+                "IGUL123456001_sb.dwg",
+                "ИГУЛ.123456001.dwg",
+                "IGUL123456.001.xls",
+                //Исполнение -NN
+                "ИГУЛ.123456.001-01 СБ.dwg",
+                "IGUL123456001-05.xls",
+                "IGUL.123456.001-01_sb_2 Name.tdd",
+                //Версия _N
+                "ИГУЛ.123456.001 СБ_3.dwg",
+                "IGUL123456001_sb_12.dwg",
+                "IGUL123456001_12.tdd",
+                "ИГУЛ.123456.001МЭ1_2 Схема.dwg",
+                //Наименование в конце
+                "ИГУЛ.123456.001 Сборочный чертеж.dwg",
+                "ИГУЛ.123456.001 МЭ1 Имя с пробелами.xlsx",
+                "ИГУЛ.123456.001 СБ имя.с.точками.dwg",
+                "ИГУЛ.123456.001\tСБ\tИмя.dwg",
+                "ИГУЛ.123456.001  СБ  Имя.dwg",
+                "ИГУЛ.123456.001 .dwg",
+                //Почти подходящие имена
+                "ИГУЛ.12345.001.dwg",
+                "ИГУЛ.123456.01.dwg",
+                "ИГУЛ.1234567.001.dwg",
+                "ИГУЛ.123456.001-1.dwg",
+                "ИГУЛ.123456.001-123.dwg",
+                "ИГУЛ.123456.001_СБ_123.dwg",
+                "ИГУЛ.123456.001СБ1234.dwg",
+                "ИГУЛ.123456.001 СБС.dwg",
+                "IGUL123456001_sb_1Name.dwg",
+                "IGUL123456001.d",
+                "IGUL123456001.dwgxyz",
+                "IGUL123456001.dw1",
+                "IGUL123456001",
+                "IGUL.123456.001..dwg",
+                "ABCD123456001.dwg",
+                "igul123456001.dwg",
+                "ИГУ.123456.001.dwg",
+                "ИГУЛ",
+                ""
+        };
+        for(String name : names) {
+            assertEquals(name, Arrays.toString(expected(name)),
+                    Arrays.toString(actual(NameParser.parser(name, defaultProperties))));
+        }
+    }
+
+    @Test
+    public void scannerMatchesDefaultRegexpOnGeneratedNames() {
+        String[][] parts = {
+                {"ИГУЛ", "IGUL", "ИГУ", "igul", "ИГУЛЬ"},
+                {"", ".", ".."},
+                {"123456", "12345", "1234567", "12a456"},
+                {"", ".", "-"},
+                {"001", "01", "0012"},
+                {"", "-01", "-1", "-123", "-ab"},
+                {"", " ", "  ", "\t", "\u000B"},
+                {"", "_", "__"},
+                {"", "СБ", "sb", "МЭ1", "s", "ABC", "Сб12", "x123", "Ё"},
+                {"", "_1", "_12", "_123", "_a", "_"},
+                {"", " Деталь", " a.b", "Name", "  ", " ", " _1"},
+                {".dwg", ".xlsx", ".d", ".tddxyz", ".dw1", "", ".DWG"}
+        };
+        Random random = new Random(42);
+        StringBuilder name = new StringBuilder();
+        for(int i = 0; i < 50000; i++) {
+            name.setLength(0);
+            for(String[] part : parts) {
+                name.append(part[random.nextInt(part.length)]);
+            }
+            String fileName = name.toString();
+            assertEquals(fileName, Arrays.toString(expected(fileName)),
+                    Arrays.toString(actual(NameParser.parser(fileName, defaultProperties))));
+        }
+    }
+
+    @Test
+    public void lineTerminatorGoesThroughRegexp() {
+        String name = "ИГУЛ.123456.001 СБ Деталь\n.dwg";
+        assertArrayEquals(expected(name), actual(NameParser.parser(name, defaultProperties)));
+    }
+
+    @Test
+    public void overriddenRegexpIsUsed() throws IOException {
+        //То же выражение без ^ разбирает имена так же, но уже не сканером
+        FProperties sameGrammar = properties("same", FProperties.DEFAULT_NAME_REGEXP.substring(1), null);
+        assertFalse(sameGrammar.isDefaultNameGrammar());
+        for(String name : new String[]{"ИГУЛ.123456.001-01 СБ_3 Деталь.dwg", "IGUL123456001_sb.tdd", "ИГУЛ.12345.001.dwg"}) {
+            assertArrayEquals(name, actual(NameParser.parser(name, defaultProperties)),
+                    actual(NameParser.parser(name, sameGrammar)));
+        }
+
+        //Другое выражение с другими номерами блоков
+        FProperties custom = properties("custom", "^(\\S+) (ABCD)-(\\d{6})-(\\d{3})\\.(\\w+)$", new String[][]{
+                {"organizationCod", "2"}, {"characteristic", "3"}, {"registrationNumber", "4"}, {"species", "1"},
+                {"documentCode", "1"}, {"documentVersion", "1"}, {"documentName", "1"}, {"filenameExtension", "5"}});
+        assertFalse(custom.isDefaultNameGrammar());
+        NameParser parser = NameParser.parser("Деталь ABCD-123456-001.dwg", custom);
+        assertNotNull(parser);
+        assertEquals("ABCD", parser.getOrganizationCod());
+        assertEquals("123456", parser.getCharacteristic());
+        assertEquals("001", parser.getRegistrationNumber());
+        assertEquals("Деталь", parser.getDocumentName());
+        assertEquals("dwg", parser.getFilenameExtension());
+        assertNull(NameParser.parser("ИГУЛ.123456.001 СБ.dwg", custom));
+    }
+
+    private FProperties properties(String name, String nameRegexp, String[][] groups) throws IOException {
+        File source = folder.newFolder(name);
+        Properties properties = new Properties();
+        properties.setProperty("nameRegexp", nameRegexp);
+        if(groups != null) {
+            for(String[] group : groups) {
+                properties.setProperty(group[0], group[1]);
+            }
+        }
+        try (OutputStream out = new FileOutputStream(new File(source, "properties.ini"))) {
+            properties.store(out, null);
+        }
+        return new FProperties(source.getPath());
+    }
+
+    /**
+     * @return блоки имени по выражению по умолчанию в порядке actual или null если имя не подходит
+     */
+    private static String[] expected(String fileName) {
+        Matcher matcher = DEFAULT_PATTERN.matcher(fileName);
+        if(!matcher.matches()) return null;
+        return new String[]{matcher.group(1), matcher.group(2), matcher.group(3), matcher.group(5), matcher.group(6),
+                matcher.group(8), matcher.group(10) != null ? matcher.group(10) : "", matcher.group(11)};
+    }
+
+    private static String[] actual(NameParser parser) {
+        if(parser == null) return null;
+        return new String[]{parser.getOrganizationCod(), parser.getCharacteristic(), parser.getRegistrationNumber(),
+                parser.getSpecies(), parser.getDocumentCode(), parser.getDocumentVersion(), parser.getDocumentName(),
+                parser.getFilenameExtension()};
+    }
+}